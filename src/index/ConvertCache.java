@@ -0,0 +1,455 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import utilities.ProjectLogger;
+
+/**
+ * An on-disk cache of converted documents.
+ *
+ * <p>Entries are keyed by a hash of the document's content, the converter script and the commands
+ * of the config used to convert it, so renaming a file or indexing it again under a config that was
+ * already seen does not need Tangent. Each entry is one file holding a small header followed by the
+ * deflated UTF-8 tuple stream. Once the cache is larger than its bound the least recently used
+ * entries are removed.
+ *
+ * @author Dallas Fraser
+ * @see ConvertResult
+ * @since 2018-03-01
+ */
+public class ConvertCache {
+  /** The default location of the cache. */
+  public static final Path DEFAULT_DIRECTORY =
+      Paths.get(System.getProperty("user.dir"), "resources", "cache", "convert");
+
+  /** The default bound on the size of the cache (1 GiB). */
+  public static final long DEFAULT_MAX_BYTES = 1L << 30;
+
+  private static final int MAGIC = 0x544e4743;
+  private static final int VERSION = 1;
+  private static final String EXTENSION = ".tc";
+  private static final String HASH_ALGORITHM = "SHA-256";
+  private final Path directory;
+  private final long maxBytes;
+  private final Logger logger;
+  private final byte[] converterHash;
+  private final LinkedHashMap<String, Long> entries;
+  private long totalBytes;
+  private int hits;
+  private int misses;
+  private boolean superset;
+
+  /**
+   * Class constructor using the default location and size.
+   *
+   * @throws IOException - unable to create the cache directory
+   */
+  public ConvertCache() throws IOException {
+    this(ConvertCache.DEFAULT_DIRECTORY, ConvertCache.DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Class constructor with a specified location and size.
+   *
+   * @param directory the directory to hold the cache
+   * @param maxBytes the most bytes the cache may use on disk
+   * @throws IOException - unable to create the cache directory
+   */
+  public ConvertCache(Path directory, long maxBytes) throws IOException {
+    this(directory, maxBytes, ProjectLogger.getLogger());
+  }
+
+  /**
+   * Class constructor with a specified location, size and logger.
+   *
+   * <p>Entries already in the directory are loaded oldest first so the least recently used order
+   * carries over between runs.
+   *
+   * @param directory the directory to hold the cache
+   * @param maxBytes the most bytes the cache may use on disk
+   * @param logger the logger to use
+   * @throws IOException - unable to create the cache directory
+   */
+  public ConvertCache(Path directory, long maxBytes, Logger logger) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.logger = logger;
+    this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    this.totalBytes = 0;
+    Files.createDirectories(directory);
+    this.converterHash =
+        ConvertCache.converterHash(Paths.get(System.getProperty("user.dir"), "src", "tangent"));
+    final File[] listing = directory.toFile().listFiles();
+    if (listing != null) {
+      Arrays.sort(listing, Comparator.comparingLong(File::lastModified));
+      for (final File entry : listing) {
+        final String name = entry.getName();
+        if (entry.isFile() && name.endsWith(ConvertCache.EXTENSION)) {
+          final String key = name.substring(0, name.length() - ConvertCache.EXTENSION.length());
+          this.entries.put(key, entry.length());
+          this.totalBytes += entry.length();
+        }
+      }
+    }
+    this.evict();
+  }
+
+  /**
+   * Returns the key of a file converted with the config.
+   *
+   * @param file the file to be converted
+   * @param config the config used to convert the file
+   * @return String the key of the file in the cache
+   * @throws IOException - unable to read the file
+   */
+  public String key(Path file, ConvertConfig config) throws IOException {
+    return this.key(file, config.toCommands());
+  }
+
+  /**
+   * Returns the key of a file converted with the command line arguments.
+   *
+   * @param file the file to be converted
+   * @param commands the arguments passed to Tangent
+   * @return String the key of the file in the cache
+   * @throws IOException - unable to read the file
+   */
+  public String key(Path file, String[] commands) throws IOException {
+    final MessageDigest digest = ConvertCache.digest();
+    digest.update(this.converterHash);
+    for (final String command : commands) {
+      digest.update(command.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    final byte[] buffer = new byte[1 << 16];
+    try (InputStream in = Files.newInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    final StringBuilder key = new StringBuilder();
+    for (final byte b : digest.digest()) {
+      key.append(String.format("%02x", b));
+    }
+    return key.toString();
+  }
+
+  /**
+   * Returns the cached conversion of a key or null if it is not in the cache.
+   *
+   * @param key the key of the converted file
+   * @return ConvertResult the cached result or null
+   */
+  public ConvertResult get(String key) {
+    synchronized (this) {
+      if (this.entries.get(key) == null) {
+        this.misses += 1;
+        return null;
+      }
+    }
+    final Path entry = this.entryPath(key);
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+      if (in.readInt() != ConvertCache.MAGIC || in.readInt() != ConvertCache.VERSION) {
+        throw new IOException("Unrecongizable cache entry");
+      }
+      final byte[] text = new byte[in.readInt()];
+      new DataInputStream(new InflaterInputStream(in)).readFully(text);
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+      synchronized (this) {
+        this.hits += 1;
+      }
+      return new ConvertResult(new String(text, StandardCharsets.UTF_8));
+    } catch (final IOException e) {
+      this.logger.log(Level.WARNING, "Dropping unreadable cache entry " + key, e);
+      this.remove(key);
+      synchronized (this) {
+        this.misses += 1;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Adds the conversion of a key to the cache.
+   *
+   * @param key the key of the converted file
+   * @param result the result of converting the file
+   * @throws IOException - unable to write the entry
+   */
+  public void put(String key, ConvertResult result) throws IOException {
+    final byte[] text = result.getText().getBytes(StandardCharsets.UTF_8);
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream(text.length / 4 + 16);
+    final DataOutputStream header = new DataOutputStream(buffer);
+    header.writeInt(ConvertCache.MAGIC);
+    header.writeInt(ConvertCache.VERSION);
+    header.writeInt(text.length);
+    try (OutputStream body = new DeflaterOutputStream(buffer)) {
+      body.write(text);
+    }
+    // write to a temporary file first so readers never see half an entry
+    final Path temp = Files.createTempFile(this.directory, key, ".tmp");
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+      buffer.writeTo(out);
+    }
+    Files.move(temp, this.entryPath(key), StandardCopyOption.REPLACE_EXISTING);
+    synchronized (this) {
+      final Long previous = this.entries.put(key, (long) buffer.size());
+      if (previous != null) {
+        this.totalBytes -= previous;
+      }
+      this.totalBytes += buffer.size();
+      this.evict();
+    }
+  }
+
+  /**
+   * Converts a file, using the cached result when there is one.
+   *
+   * <p>When the cache holds superset conversions the tuples of the config are selected from the
+   * file's superset conversion, so each file is only converted once for every config.
+   *
+   * @param file the file to convert
+   * @param config the config to convert the file with
+   * @param pool the convert workers to use on a miss (null to start a process for the file)
+   * @return ConvertResult contains a reader and some stats about the document
+   * @throws IOException - issue when reading a file
+   * @throws InterruptedException - raised when the process has an interruption
+   * @see TupleSelector
+   */
+  public ConvertResult convert(Path file, ConvertConfig config, ConvertWorkerPool pool)
+      throws IOException, InterruptedException {
+    if (this.superset && TupleSelector.supports(config)) {
+      final ConvertResult superset = this.convert(file, TupleSelector.SUPERSET_COMMANDS, pool);
+      return new ConvertResult(
+          new TupleSelector(config).select(superset.getText()), superset.isComplete());
+    }
+    return this.convert(file, config.toCommands(), pool);
+  }
+
+  /**
+   * Converts a file with the command line arguments, using the cached result when there is one.
+   *
+   * @param file the file to convert
+   * @param commands the arguments to pass to Tangent
+   * @param pool the convert workers to use on a miss (null to start a process for the file)
+   * @return ConvertResult contains a reader and some stats about the document
+   * @throws IOException - issue when reading a file
+   * @throws InterruptedException - raised when the process has an interruption
+   */
+  private ConvertResult convert(Path file, String[] commands, ConvertWorkerPool pool)
+      throws IOException, InterruptedException {
+    final String key = this.key(file, commands);
+    ConvertResult result = this.get(key);
+    if (result == null) {
+      result =
+          pool == null ? new ConvertMathMl(file).convert(commands) : pool.convert(file, commands);
+      if (!result.isComplete()) {
+        // a failed or partial conversion would be returned again after the converter is fixed
+        this.logger.log(Level.WARNING, "Not caching the incomplete conversion of " + file);
+        return result;
+      }
+      try {
+        this.put(key, result);
+      } catch (final IOException e) {
+        this.logger.log(Level.WARNING, "Unable to cache " + file, e);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sets whether to cache one superset conversion per file instead of one conversion per config.
+   *
+   * @param superset True to cache superset conversions
+   */
+  public void setSuperset(boolean superset) {
+    this.superset = superset;
+  }
+
+  /**
+   * Returns whether the cache holds superset conversions.
+   *
+   * @return boolean True if superset conversions are cached
+   */
+  public boolean isSuperset() {
+    return this.superset;
+  }
+
+  /**
+   * Returns the number of lookups that were found in the cache.
+   *
+   * @return int the number of hits
+   */
+  public synchronized int getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Returns the number of lookups that were not found in the cache.
+   *
+   * @return int the number of misses
+   */
+  public synchronized int getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Returns the number of bytes the cache is using on disk.
+   *
+   * @return long the size of the cache
+   */
+  public synchronized long getSize() {
+    return this.totalBytes;
+  }
+
+  /** Removes every entry from the cache. */
+  public synchronized void clear() {
+    for (final String key : this.entries.keySet()) {
+      this.deleteEntry(key);
+    }
+    this.entries.clear();
+    this.totalBytes = 0;
+  }
+
+  /**
+   * Removes a key from the cache.
+   *
+   * @param key the key to remove
+   */
+  private synchronized void remove(String key) {
+    final Long size = this.entries.remove(key);
+    if (size != null) {
+      this.totalBytes -= size;
+    }
+    this.deleteEntry(key);
+  }
+
+  /** Removes the least recently used entries until the cache fits its bound. */
+  private synchronized void evict() {
+    final Iterator<Map.Entry<String, Long>> eldest = this.entries.entrySet().iterator();
+    while (this.totalBytes > this.maxBytes && eldest.hasNext()) {
+      final Map.Entry<String, Long> entry = eldest.next();
+      this.totalBytes -= entry.getValue();
+      this.deleteEntry(entry.getKey());
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Deletes the file of an entry.
+   *
+   * @param key the key of the entry
+   */
+  private void deleteEntry(String key) {
+    try {
+      Files.deleteIfExists(this.entryPath(key));
+    } catch (final IOException e) {
+      this.logger.log(Level.WARNING, "Unable to delete cache entry " + key, e);
+    }
+  }
+
+  /**
+   * Returns the path of the file holding an entry.
+   *
+   * @param key the key of the entry
+   * @return Path the file of the entry
+   */
+  private Path entryPath(String key) {
+    return this.directory.resolve(key + ConvertCache.EXTENSION);
+  }
+
+  /**
+   * Returns the hash of every python source of the converter.
+   *
+   * <p>convert.py imports the rest of Tangent, so a change to any module can change the tuples.
+   * The files are hashed in order of their path along with the path.
+   *
+   * @param tangent the directory of the converter
+   * @return byte[] the hash or an empty array if the converter is not there
+   * @throws IOException - unable to read a source file
+   */
+  public static byte[] converterHash(Path tangent) throws IOException {
+    if (!Files.isDirectory(tangent)) {
+      return new byte[0];
+    }
+    final List<Path> sources = new ArrayList<Path>();
+    try (Stream<Path> files = Files.walk(tangent)) {
+      files
+          .filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".py"))
+          .forEach(sources::add);
+    }
+    final List<String> names = new ArrayList<String>();
+    for (final Path source : sources) {
+      names.add(tangent.relativize(source).toString().replace(File.separatorChar, '/'));
+    }
+    Collections.sort(names);
+    final MessageDigest digest = ConvertCache.digest();
+    for (final String name : names) {
+      digest.update(name.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(Files.readAllBytes(tangent.resolve(name)));
+      digest.update((byte) 0);
+    }
+    return digest.digest();
+  }
+
+  /**
+   * Returns a new message digest for hashing keys.
+   *
+   * @return MessageDigest the digest to use
+   */
+  private static MessageDigest digest() {
+    try {
+      return MessageDigest.getInstance(ConvertCache.HASH_ALGORITHM);
+    } catch (final NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -59,6 +59,8 @@ public class ConvertConfig {
   private boolean proximity;
   private boolean payloads;
   private boolean mathbm25;
+  private int proximityWindow;
+  private boolean exactProximity;
   /*
    * The possible features that Tangent can use
    */
@@ -89,7 +91,9 @@ public class ConvertConfig {
   public static final String TERM_QUERY = "TERM_QUERY";
   public static final String TOMPA_QUERY = "BM25_TOMPA_QUERY";
   public static final String DIFFERENT_WEIGHTED_QUERY = "DIFFERENT_WEIGHT_FOR_MATH_AND_TEXT_QUERY";
+  public static final String IMPACT_QUERY = "IMPACT_ORDERED_QUERY";
 
+  public static final int DEFAULT_PROXIMITY_WINDOW = 16;
   private static final String DELIMINTER = "-";
   private static final String SEPERATOR = ":";
   private static final String WINDOW_SIZE = "WINDOW_SIZE";
@@ -123,6 +127,8 @@ public class ConvertConfig {
     this.proximity = false;
     this.payloads = false;
     this.mathbm25 = false;
+    this.proximityWindow = ConvertConfig.DEFAULT_PROXIMITY_WINDOW;
+    this.exactProximity = false;
   }
 
   /**
@@ -143,6 +149,44 @@ public class ConvertConfig {
     return this.mathbm25;
   }
 
+  /**
+   * Sets the largest distance between two term positions that BM25TP counts as a term pair.
+   *
+   * @param window the largest distance between the positions of a term pair
+   */
+  public void setProximityWindow(int window) {
+    if (window >= 0) {
+      this.proximityWindow = window;
+    }
+  }
+
+  /**
+   * Returns the largest distance between two term positions that BM25TP counts as a term pair.
+   *
+   * @return int the largest distance between the positions of a term pair
+   */
+  public int getProximityWindow() {
+    return this.proximityWindow;
+  }
+
+  /**
+   * Sets whether BM25TP should sum every term pair instead of only those within the window.
+   *
+   * @param exact True if to sum every term pair (the original scores)
+   */
+  public void setExactProximity(boolean exact) {
+    this.exactProximity = exact;
+  }
+
+  /**
+   * Returns whether BM25TP should sum every term pair instead of only those within the window.
+   *
+   * @return boolean whether to sum every term pair when querying
+   */
+  public boolean getExactProximity() {
+    return this.exactProximity;
+  }
+
   /**
    * Retursn a Config that can be used for searching.
    *
@@ -242,7 +286,8 @@ public class ConvertConfig {
         || queryType.equals(ConvertConfig.BM25_DISTANCE_QUERY)
         || queryType.equals(ConvertConfig.TERM_QUERY)
         || queryType.equals(ConvertConfig.TOMPA_QUERY)
-        || queryType.equals(ConvertConfig.DIFFERENT_WEIGHTED_QUERY)) {
+        || queryType.equals(ConvertConfig.DIFFERENT_WEIGHTED_QUERY)
+        || queryType.equals(ConvertConfig.IMPACT_QUERY)) {
       this.queryType = queryType;
     } else {
       throw new Exception("Query type was not recgonized");
@@ -454,6 +499,8 @@ public class ConvertConfig {
     config.setBooleanAttribute(ConvertConfig.PAYLOADS, this.payloads);
     config.setWindowSize(this.windowSize);
     config.setMathBM25(this.mathbm25);
+    config.setProximityWindow(this.proximityWindow);
+    config.setExactProximity(this.exactProximity);
     try {
       config.setQueryType(this.queryType);
     } catch (final Exception e) {
@@ -693,4 +740,64 @@ public class ConvertConfig {
     }
     return result;
   }
+
+  /**
+   * Returns every setting of the config, unlike toString which leaves out the ones that do not
+   * change the conversion.
+   *
+   * @return String the settings as one "ATTRIBUTE:value" line each
+   */
+  public String settings() {
+    final String[] attributes = {
+      ConvertConfig.SHORTENED,
+      ConvertConfig.EOL,
+      ConvertConfig.COMPOUND,
+      ConvertConfig.TERMINAL,
+      ConvertConfig.EDGE,
+      ConvertConfig.UNBOUNDED,
+      ConvertConfig.LOCATION,
+      ConvertConfig.SYNONYMS,
+      ConvertConfig.SYMBOLS,
+      ConvertConfig.BAGS_OF_WORDS,
+      ConvertConfig.BOOST_QUERIES,
+      ConvertConfig.BOOST_LOCATION,
+      ConvertConfig.SEPERATE_MATH_TEXT,
+      ConvertConfig.EXPAND_LOCATION,
+      ConvertConfig.PAYLOADS,
+      ConvertConfig.PROXIMITY
+    };
+    final StringBuilder result = new StringBuilder();
+    for (final String attribute : attributes) {
+      result
+          .append(attribute)
+          .append(ConvertConfig.SEPERATOR)
+          .append(this.getAttribute(attribute))
+          .append('\n');
+    }
+    result
+        .append(ConvertConfig.QUERY)
+        .append(ConvertConfig.SEPERATOR)
+        .append(this.query)
+        .append('\n')
+        .append(ConvertConfig.WINDOW_SIZE)
+        .append(ConvertConfig.SEPERATOR)
+        .append(this.windowSize)
+        .append('\n')
+        .append(ConvertConfig.MATH_BM25)
+        .append(ConvertConfig.SEPERATOR)
+        .append(this.mathbm25)
+        .append('\n')
+        .append("PROXIMITY_WINDOW")
+        .append(ConvertConfig.SEPERATOR)
+        .append(this.proximityWindow)
+        .append('\n')
+        .append("EXACT_PROXIMITY")
+        .append(ConvertConfig.SEPERATOR)
+        .append(this.exactProximity)
+        .append('\n')
+        .append("QUERY_TYPE")
+        .append(ConvertConfig.SEPERATOR)
+        .append(this.queryType);
+    return result.toString();
+  }
 }
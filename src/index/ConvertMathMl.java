@@ -19,9 +19,9 @@ package index;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.StringWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang3.ArrayUtils;
@@ -87,8 +87,18 @@ public class ConvertMathMl {
    * @see ConvertConfig
    */
   public ConvertResult convert(ConvertConfig config) throws IOException, InterruptedException {
-    // the output file
-    final String[] attributes = config.toCommands();
+    return this.convert(config.toCommands());
+  }
+
+  /**
+   * Converts the MathML file to Tuples using Tangent with the given command line arguments.
+   *
+   * @param attributes the arguments to pass to Tangent
+   * @return ConvertResult contains a reader and some stats about the document
+   * @throws IOException - issue when reading a file
+   * @throws InterruptedException - raised when the process has an interruption
+   */
+  public ConvertResult convert(String[] attributes) throws IOException, InterruptedException {
     final String[] program = {"python3", this.app.toString(), "-infile", this.file.toString()};
     String[] command = ArrayUtils.addAll(program, attributes);
     this.logger.log(Level.FINEST, "Command");
@@ -104,30 +114,50 @@ public class ConvertMathMl {
       command = ArrayUtils.addAll(program, attributes);
       proc = Runtime.getRuntime().exec(command);
     }
+    // log the errors on their own thread so neither pipe can fill up and block the process
+    final AtomicInteger errors = new AtomicInteger();
+    final Thread errorLogger = this.logErrors(proc, errors);
     final BufferedReader stdInput =
         new BufferedReader(new InputStreamReader(proc.getInputStream()));
-    final BufferedReader stdError =
-        new BufferedReader(new InputStreamReader(proc.getErrorStream()));
-    // read the output from the command
+    // read the output from the command, blocking until python writes more
     this.logger.log(Level.FINEST, "Here is the standard output of the command:\n");
     String s = null;
-    final StringWriter outBuffer = new StringWriter();
-    while (proc.isAlive() || stdInput.ready() || stdError.ready()) {
-      if (stdInput.ready()) {
-        if ((s = stdInput.readLine()) != null) {
-          outBuffer.write(s);
-          outBuffer.write("\n");
-        }
-      }
-      if (stdError.ready()) {
-        if ((s = stdError.readLine()) != null) {
-          this.logger.log(Level.SEVERE, this.file.toString() + ":" + s);
-        }
-      }
+    final StringBuilder outBuffer = new StringBuilder();
+    while ((s = stdInput.readLine()) != null) {
+      outBuffer.append(s);
+      outBuffer.append('\n');
     }
-    proc.waitFor();
-    final ConvertResult cr = new ConvertResult(outBuffer);
-    return cr;
+    final int exitValue = proc.waitFor();
+    errorLogger.join();
+    return new ConvertResult(outBuffer.toString(), exitValue == 0 && errors.get() == 0);
+  }
+
+  /**
+   * Starts a thread that logs everything the process writes to standard error.
+   *
+   * @param proc the process to log the errors of
+   * @param errors counts the lines of errors logged
+   * @return Thread the thread that finishes once the process closes standard error
+   */
+  private Thread logErrors(Process proc, AtomicInteger errors) {
+    final BufferedReader stdError =
+        new BufferedReader(new InputStreamReader(proc.getErrorStream()));
+    final Thread errorLogger =
+        new Thread(
+            () -> {
+              String s;
+              try {
+                while ((s = stdError.readLine()) != null) {
+                  errors.incrementAndGet();
+                  this.logger.log(Level.SEVERE, this.file.toString() + ":" + s);
+                }
+              } catch (final IOException e) {
+                this.logger.log(Level.WARNING, "Unable to read errors for " + this.file, e);
+              }
+            });
+    errorLogger.setDaemon(true);
+    errorLogger.start();
+    return errorLogger;
   }
 
   /**
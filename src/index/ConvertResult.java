@@ -19,6 +19,7 @@ package index;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import utilities.Constants;
 import utilities.Functions;
 
 /** Holds the result after converting MathML into Tangent Tuples. */
@@ -28,6 +29,7 @@ public class ConvertResult {
   private final int formulaCount;
   private final int wordCount;
   private final int docLength;
+  private final boolean complete;
 
   /**
    * Constructor.
@@ -35,13 +37,103 @@ public class ConvertResult {
    * @param outBuffer the buffer the holds the result of the conversion.
    */
   public ConvertResult(StringWriter outBuffer) {
-    this.text = outBuffer.toString();
-    this.reader = new StringReader(outBuffer.toString());
-    this.formulaCount = Functions.countTuples(outBuffer.toString());
-    this.docLength = outBuffer.toString().split(" ").length;
+    this(outBuffer.toString());
+  }
+
+  /**
+   * Constructor that counts the formulas and the length of the text in one pass.
+   *
+   * <p>The counts match {@link Functions#countTuples(String)} and splitting the text on spaces.
+   *
+   * @param text the result of the conversion
+   */
+  public ConvertResult(String text) {
+    this(text, true);
+  }
+
+  /**
+   * Constructor that also records whether the conversion finished without errors.
+   *
+   * @param text the result of the conversion
+   * @param complete False if the converter failed or reported errors, so the text may be partial
+   */
+  public ConvertResult(String text, boolean complete) {
+    this.complete = complete;
+    this.text = text;
+    this.reader = new StringReader(text);
+    int formulas = 0;
+    int terms = 0;
+    int lastTerm = 0;
+    boolean split = false;
+    int start = 0;
+    while (start <= text.length()) {
+      int end = text.indexOf(' ', start);
+      if (end < 0) {
+        end = text.length();
+      } else {
+        split = true;
+      }
+      terms += 1;
+      if (end > start) {
+        // trailing empty terms are dropped by String.split so only count up to the last term
+        lastTerm = terms;
+        if (ConvertResult.isTuple(text, start, end)) {
+          formulas += 1;
+        }
+      }
+      start = end + 1;
+    }
+    this.formulaCount = formulas;
+    this.docLength = split ? lastTerm : 1;
     this.wordCount = this.docLength - this.formulaCount;
   }
 
+  /**
+   * Returns whether the term between start and end is a tuple but not a formula tag.
+   *
+   * @param text the text holding the term
+   * @param start the index of the first character of the term
+   * @param end the index after the last character of the term
+   * @return boolean True if the term is a tuple
+   */
+  private static boolean isTuple(String text, int start, int end) {
+    final char first = text.charAt(start);
+    final char last = text.charAt(end - 1);
+    if (!((first == '#' && last == '#') || (first == '(' && last == ')'))) {
+      return false;
+    }
+    return !ConvertResult.contains(text, start, end, Constants.FORMULA_START_TAG)
+        && !ConvertResult.contains(text, start, end, Constants.FORMULA_END_TAG);
+  }
+
+  /**
+   * Returns whether the term between start and end contains the tag.
+   *
+   * @param text the text holding the term
+   * @param start the index of the first character of the term
+   * @param end the index after the last character of the term
+   * @param tag the tag to look for
+   * @return boolean True if the tag is in the term
+   */
+  private static boolean contains(String text, int start, int end, String tag) {
+    // only look inside the term so a long text is not searched past it
+    for (int i = start; i + tag.length() <= end; i++) {
+      if (text.startsWith(tag, i)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns whether the conversion finished without errors.
+   *
+   * @return boolean False if the text may be missing part of the file
+   */
+  public boolean isComplete() {
+    return this.complete;
+  }
+
   /**
    * Getter for the number of formulas in the result.
    *
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import utilities.ProjectLogger;
+
+/**
+ * A long running Tangent process that converts the documents sent to it.
+ *
+ * <p>The worker speaks a framed protocol with <code>convert.py -server</code>. Each request is one
+ * line of tab separated fields and each response is a header line (status and payload length)
+ * followed by the payload. The payload of a conversion is exactly what the one-shot process prints,
+ * and a conversion that raised an error is answered as incomplete.
+ *
+ * @author Dallas Fraser
+ * @see ConvertWorkerPool
+ * @since 2018-03-01
+ */
+public class ConvertWorker {
+  private static final String CONVERT = "CONVERT";
+  private static final String PING = "PING";
+  private static final String QUIT = "QUIT";
+  private static final String OK = "OK";
+  private static final String INCOMPLETE = "INCOMPLETE";
+  private static final String PONG = "PONG";
+  private static final String SEPERATOR = "\t";
+  private static final String SERVER = "-server";
+  private final Path app;
+  private final Logger logger;
+  private Process proc;
+  private OutputStream toWorker;
+  private InputStream fromWorker;
+  private int converted;
+
+  /**
+   * Class constructor that starts the worker process.
+   *
+   * @throws IOException - unable to start the python process
+   */
+  public ConvertWorker() throws IOException {
+    this(ProjectLogger.getLogger());
+  }
+
+  /**
+   * Class constructor with a specified logger that starts the worker process.
+   *
+   * @param logger the logger to use
+   * @throws IOException - unable to start the python process
+   */
+  public ConvertWorker(Logger logger) throws IOException {
+    this.app = Paths.get(System.getProperty("user.dir"), "src", "tangent", "convert.py");
+    this.logger = logger;
+    this.start();
+  }
+
+  /**
+   * Starts the python process and a thread that logs anything it writes to standard error.
+   *
+   * @throws IOException - unable to start the python process
+   */
+  private void start() throws IOException {
+    final String[] command = {"python3", this.app.toString(), ConvertWorker.SERVER};
+    try {
+      this.proc = Runtime.getRuntime().exec(command);
+    } catch (final IOException e) {
+      this.logger.log(Level.WARNING, "Unable to find python3 using python command");
+      command[0] = "python";
+      this.proc = Runtime.getRuntime().exec(command);
+    }
+    this.toWorker = new BufferedOutputStream(this.proc.getOutputStream());
+    this.fromWorker = new BufferedInputStream(this.proc.getInputStream());
+    this.converted = 0;
+    final BufferedReader stdError =
+        new BufferedReader(new InputStreamReader(this.proc.getErrorStream()));
+    final Thread errorLogger =
+        new Thread(
+            () -> {
+              String s;
+              try {
+                while ((s = stdError.readLine()) != null) {
+                  this.logger.log(Level.SEVERE, "Convert worker:" + s);
+                }
+              } catch (final IOException e) {
+                // the worker was closed
+              }
+            });
+    errorLogger.setDaemon(true);
+    errorLogger.start();
+  }
+
+  /**
+   * Converts a file using the specified config.
+   *
+   * @param file the path to the file to convert
+   * @param config the configuration of features to be used when converting
+   * @return ConvertResult contains a reader and some stats about the document
+   * @throws IOException - the worker died or sent back an unexpected response
+   */
+  public ConvertResult convert(Path file, ConvertConfig config) throws IOException {
+    return this.convert(file, config.toCommands());
+  }
+
+  /**
+   * Converts a file using the given command line arguments.
+   *
+   * @param file the path to the file to convert
+   * @param attributes the arguments to pass to Tangent
+   * @return ConvertResult contains a reader and some stats about the document (not complete if
+   *     the conversion raised an error)
+   * @throws IOException - the worker died or sent back an unexpected response
+   */
+  public ConvertResult convert(Path file, String[] attributes) throws IOException {
+    final StringBuilder request = new StringBuilder(ConvertWorker.CONVERT);
+    request.append(ConvertWorker.SEPERATOR).append("-infile");
+    request.append(ConvertWorker.SEPERATOR).append(file.toFile().getAbsolutePath());
+    for (final String attribute : attributes) {
+      request.append(ConvertWorker.SEPERATOR).append(attribute);
+    }
+    final Frame response =
+        this.send(request.toString(), ConvertWorker.OK, ConvertWorker.INCOMPLETE);
+    final String payload = response.body;
+    // keep the same line handling as reading the one-shot process output
+    final BufferedReader stdInput = new BufferedReader(new StringReader(payload));
+    final StringBuilder outBuffer = new StringBuilder(payload.length() + 1);
+    String s;
+    while ((s = stdInput.readLine()) != null) {
+      outBuffer.append(s);
+      outBuffer.append('\n');
+    }
+    this.converted += 1;
+    return new ConvertResult(outBuffer.toString(), ConvertWorker.OK.equals(response.status));
+  }
+
+  /**
+   * Checks the worker is still responding.
+   *
+   * @return boolean True if the worker answered the health check
+   */
+  public boolean ping() {
+    boolean healthy = false;
+    if (this.isAlive()) {
+      try {
+        this.send(ConvertWorker.PING, ConvertWorker.PONG);
+        healthy = true;
+      } catch (final IOException e) {
+        this.logger.log(Level.WARNING, "Convert worker failed health check: " + e.getMessage());
+      }
+    }
+    return healthy;
+  }
+
+  /**
+   * Returns whether the python process is still running.
+   *
+   * @return boolean True if the process is running
+   */
+  public boolean isAlive() {
+    return this.proc != null && this.proc.isAlive();
+  }
+
+  /**
+   * Returns the number of files converted since the worker was last started.
+   *
+   * @return int the number of files converted
+   */
+  public int getConverted() {
+    return this.converted;
+  }
+
+  /**
+   * Kills the current process and starts a new one.
+   *
+   * @throws IOException - unable to start the python process
+   */
+  public void restart() throws IOException {
+    this.logger.log(Level.WARNING, "Restarting convert worker");
+    this.proc.destroyForcibly();
+    this.start();
+  }
+
+  /** Asks the worker to stop and makes sure it has stopped. */
+  public void close() {
+    try {
+      if (this.isAlive()) {
+        this.toWorker.write((ConvertWorker.QUIT + "\n").getBytes(StandardCharsets.UTF_8));
+        this.toWorker.flush();
+      }
+      this.toWorker.close();
+    } catch (final IOException e) {
+      // the worker is already gone
+    }
+    this.proc.destroy();
+  }
+
+  /**
+   * Sends a request to the worker and returns the response.
+   *
+   * @param request the request line
+   * @param expected the statuses the response can have
+   * @return Frame the status and payload of the response
+   * @throws IOException - the worker died or sent back an unexpected response
+   */
+  private Frame send(String request, String... expected) throws IOException {
+    this.toWorker.write((request + "\n").getBytes(StandardCharsets.UTF_8));
+    this.toWorker.flush();
+    final String header = this.readHeader();
+    final String[] parts = header.split(" ");
+    if (parts.length != 2) {
+      throw new IOException("Unrecongizable response from convert worker: " + header);
+    }
+    final byte[] payload = new byte[Integer.parseInt(parts[1])];
+    int read = 0;
+    while (read < payload.length) {
+      final int count = this.fromWorker.read(payload, read, payload.length - read);
+      if (count < 0) {
+        throw new EOFException("Convert worker stopped part way through a response");
+      }
+      read += count;
+    }
+    final String body = new String(payload, StandardCharsets.UTF_8);
+    for (final String status : expected) {
+      if (parts[0].equals(status)) {
+        return new Frame(status, body);
+      }
+    }
+    throw new IOException("Convert worker responded with " + parts[0] + ": " + body);
+  }
+
+  /**
+   * Reads the header line of a response.
+   *
+   * @return String the header line without the new line
+   * @throws IOException - the worker stopped before sending a header
+   */
+  private String readHeader() throws IOException {
+    final ByteArrayOutputStream header = new ByteArrayOutputStream();
+    int b;
+    while ((b = this.fromWorker.read()) != '\n') {
+      if (b < 0) {
+        throw new EOFException("Convert worker stopped before responding");
+      }
+      header.write(b);
+    }
+    return new String(header.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /** The status and payload of a response. */
+  private static class Frame {
+    private final String status;
+    private final String body;
+
+    /**
+     * Class constructor.
+     *
+     * @param status the status of the response
+     * @param body the payload of the response
+     */
+    Frame(String status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+}
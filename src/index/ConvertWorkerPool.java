@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package index;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import utilities.ProjectLogger;
+
+/**
+ * A pool of long running Tangent workers that index threads borrow from when converting documents.
+ *
+ * @author Dallas Fraser
+ * @see ConvertWorker
+ * @since 2018-03-01
+ */
+public class ConvertWorkerPool {
+  private final BlockingQueue<ConvertWorker> idle;
+  private final List<ConvertWorker> workers;
+  private final Logger logger;
+
+  /**
+   * Class constructor with one worker per processor.
+   *
+   * @throws IOException - unable to start the python processes
+   */
+  public ConvertWorkerPool() throws IOException {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Class constructor with a specified number of workers.
+   *
+   * @param size the number of workers
+   * @throws IOException - unable to start the python processes
+   */
+  public ConvertWorkerPool(int size) throws IOException {
+    this(size, ProjectLogger.getLogger());
+  }
+
+  /**
+   * Class constructor with a specified number of workers and logger.
+   *
+   * @param size the number of workers
+   * @param logger the logger to use
+   * @throws IOException - unable to start the python processes
+   */
+  public ConvertWorkerPool(int size, Logger logger) throws IOException {
+    if (size < 1) {
+      throw new IllegalArgumentException("Pool size must be positive: " + size);
+    }
+    this.logger = logger;
+    this.idle = new LinkedBlockingQueue<ConvertWorker>();
+    this.workers = new ArrayList<ConvertWorker>();
+    try {
+      for (int i = 0; i < size; i++) {
+        final ConvertWorker worker = new ConvertWorker(logger);
+        this.workers.add(worker);
+        this.idle.add(worker);
+      }
+    } catch (final IOException e) {
+      this.close();
+      throw e;
+    }
+    if (!this.workers.get(0).ping()) {
+      this.close();
+      throw new IOException("Convert worker did not respond to health check");
+    }
+  }
+
+  /**
+   * Converts a file using the specified config with one of the pool's workers.
+   *
+   * <p>If the worker crashes while converting it is restarted and the file is tried once more.
+   *
+   * @param file the path to the file to convert
+   * @param config the configuration of features to be used when converting
+   * @return ConvertResult contains a reader and some stats about the document
+   * @throws IOException - the file could not be converted
+   * @throws InterruptedException - interrupted while waiting for a worker
+   */
+  public ConvertResult convert(Path file, ConvertConfig config)
+      throws IOException, InterruptedException {
+    return this.convert(file, config.toCommands());
+  }
+
+  /**
+   * Converts a file using the given command line arguments with one of the pool's workers.
+   *
+   * @param file the path to the file to convert
+   * @param attributes the arguments to pass to Tangent
+   * @return ConvertResult contains a reader and some stats about the document
+   * @throws IOException - the file could not be converted
+   * @throws InterruptedException - interrupted while waiting for a worker
+   */
+  public ConvertResult convert(Path file, String[] attributes)
+      throws IOException, InterruptedException {
+    final String name = file.toString();
+    if (name.contains("\t") || name.contains("\n")) {
+      // the path cannot be framed in a request so convert it with its own process
+      return new ConvertMathMl(file, this.logger).convert(attributes);
+    }
+    final ConvertWorker worker = this.borrow();
+    try {
+      try {
+        return worker.convert(file, attributes);
+      } catch (final IOException e) {
+        this.logger.log(Level.WARNING, "Convert worker failed on " + name + ": " + e.getMessage());
+        worker.restart();
+        return worker.convert(file, attributes);
+      }
+    } finally {
+      this.giveBack(worker);
+    }
+  }
+
+  /**
+   * Borrows a worker, restarting it first if its process has died.
+   *
+   * @return ConvertWorker a running worker
+   * @throws IOException - unable to restart the worker
+   * @throws InterruptedException - interrupted while waiting for a worker
+   */
+  public ConvertWorker borrow() throws IOException, InterruptedException {
+    final ConvertWorker worker = this.idle.take();
+    if (!worker.isAlive()) {
+      try {
+        worker.restart();
+      } catch (final IOException e) {
+        this.idle.add(worker);
+        throw e;
+      }
+    }
+    return worker;
+  }
+
+  /**
+   * Returns a borrowed worker to the pool.
+   *
+   * @param worker the worker to return
+   */
+  public void giveBack(ConvertWorker worker) {
+    this.idle.add(worker);
+  }
+
+  /**
+   * Pings every idle worker and restarts the ones that do not respond.
+   *
+   * @return int the number of workers restarted
+   */
+  public int healthCheck() {
+    final List<ConvertWorker> checking = new ArrayList<ConvertWorker>();
+    this.idle.drainTo(checking);
+    int restarted = 0;
+    for (final ConvertWorker worker : checking) {
+      if (!worker.ping()) {
+        try {
+          worker.restart();
+          restarted += 1;
+        } catch (final IOException e) {
+          this.logger.log(Level.SEVERE, "Unable to restart convert worker: " + e.getMessage());
+        }
+      }
+      this.idle.add(worker);
+    }
+    return restarted;
+  }
+
+  /**
+   * Returns the number of workers in the pool.
+   *
+   * @return int the size of the pool
+   */
+  public int size() {
+    return this.workers.size();
+  }
+
+  /** Stops all the workers. */
+  public void close() {
+    for (final ConvertWorker worker : this.workers) {
+      worker.close();
+    }
+    this.idle.clear();
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package index;
+
+import java.io.IOException;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import utilities.Constants;
+
+/**
+ * The size of each formula in a document, keyed by the position its tuples share when using bags of
+ * words.
+ *
+ * <p>The sizes are counted once while indexing and kept as a binary doc value of variable length
+ * ints: the gap from the previous formula position followed by the size of the formula. The size of
+ * a formula is the number of tokens at its position that are not wildcards, the same as counting
+ * them in the term vector of the document.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class FormulaSizes {
+  private static final String WILDCARD = "'" + Constants.WILDCARD + "'";
+  private final ByteArrayDataInput input = new ByteArrayDataInput();
+  private int[] positions = new int[16];
+  private int[] sizes = new int[16];
+  private int count;
+
+  /**
+   * Counts the formula sizes of the tokens in the stream.
+   *
+   * <p>The stream is reset and consumed but not closed, so a caching stream can still be indexed
+   * afterwards.
+   *
+   * @param stream the analyzed tokens of the document
+   * @return BytesRef the encoded formula sizes
+   * @throws IOException - issue with reading the tokens
+   */
+  public static BytesRef collect(TokenStream stream) throws IOException {
+    final CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+    final PositionIncrementAttribute posIncrAtt =
+        stream.addAttribute(PositionIncrementAttribute.class);
+    final BytesRefBuilder bytes = new BytesRefBuilder();
+    final char prefix = Constants.FORMULA_PREFIX.charAt(0);
+    final char suffix = Constants.FORMULA_SUFFIX.charAt(0);
+    int position = -1;
+    int previous = 0;
+    int size = 0;
+    boolean formula = false;
+    stream.reset();
+    while (stream.incrementToken()) {
+      final int increment = posIncrAtt.getPositionIncrement();
+      if (increment > 0) {
+        if (formula) {
+          FormulaSizes.writeVInt(bytes, position - previous);
+          FormulaSizes.writeVInt(bytes, size);
+          previous = position;
+        }
+        position += increment;
+        size = 0;
+        formula = false;
+      }
+      if (TermBuffer.indexOf(termAtt, FormulaSizes.WILDCARD, 0) < 0) {
+        size += 1;
+      }
+      if (TermBuffer.isWrapped(termAtt, prefix, suffix)) {
+        formula = true;
+      }
+    }
+    stream.end();
+    if (formula) {
+      FormulaSizes.writeVInt(bytes, position - previous);
+      FormulaSizes.writeVInt(bytes, size);
+    }
+    return bytes.toBytesRef();
+  }
+
+  /**
+   * Appends a variable length int.
+   *
+   * @param bytes the bytes to append to
+   * @param value the non-negative value
+   */
+  private static void writeVInt(BytesRefBuilder bytes, int value) {
+    while ((value & ~0x7F) != 0) {
+      bytes.append((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    bytes.append((byte) value);
+  }
+
+  /**
+   * Reads the formula sizes of a document, replacing the ones read before.
+   *
+   * @param bytes the encoded formula sizes
+   */
+  public void read(BytesRef bytes) {
+    this.count = 0;
+    this.input.reset(bytes.bytes, bytes.offset, bytes.length);
+    int position = 0;
+    while (!this.input.eof()) {
+      if (this.count == this.positions.length) {
+        this.positions = ArrayUtil.grow(this.positions);
+        this.sizes = ArrayUtil.grow(this.sizes, this.positions.length);
+      }
+      position += this.input.readVInt();
+      this.positions[this.count] = position;
+      this.sizes[this.count] = this.input.readVInt();
+      this.count += 1;
+    }
+  }
+
+  /**
+   * Returns the size of the formula at a position.
+   *
+   * @param position the position of the formula
+   * @return int the size of the formula or 1 if the position holds a word
+   */
+  public int getSize(int position) {
+    int low = 0;
+    int high = this.count - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      if (this.positions[middle] < position) {
+        low = middle + 1;
+      } else if (this.positions[middle] > position) {
+        high = middle - 1;
+      } else {
+        return this.sizes[middle];
+      }
+    }
+    return 1;
+  }
+
+  /**
+   * Returns the number of formulas read.
+   *
+   * @return int the number of formulas
+   */
+  public int size() {
+    return this.count;
+  }
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.similarities.PerFieldSimilarityWrapper;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.search.similarities.Similarity.SimScorer;
+import org.apache.lucene.search.similarities.Similarity.SimWeight;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import query.BatchSimScorer;
+import utilities.Constants;
+
+/**
+ * A secondary index of the math tuples' postings ordered by their impact on the score.
+ *
+ * <p>The score of each document for a tuple is quantized to one of {@link #LEVELS} levels of the
+ * tuple's highest score, and the postings are stored in segments of one level each from the
+ * highest level to the lowest with the documents of a segment in order. A query can then read the
+ * postings that matter most first and stop once the rest can no longer change its top documents.
+ *
+ * <p>The index is a single file next to the Lucene index and is only valid for the commit and
+ * similarity it was built with, so it records both and needs to be built again whenever the index
+ * or the scoring changes.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class ImpactIndex implements Closeable {
+  /** The name of the file in the index directory. */
+  public static final String FILE_NAME = "impacts";
+
+  /** The number of levels the scores are quantized to. */
+  public static final int LEVELS = 255;
+
+  private static final String CODEC = "TangentImpacts";
+  private static final int VERSION = 2;
+  private static final String[] FIELDS = {Constants.FIELD, Constants.MATHFIELD};
+  private final Directory directory;
+  private final IndexInput input;
+  private final Map<Term, Long> pointers;
+  private final int maxDoc;
+  private final long generation;
+  private final byte[] commitId;
+  private final String similarity;
+
+  /**
+   * Class constructor.
+   *
+   * @param directory the directory of the index
+   * @throws IOException - issue reading the impact file
+   */
+  private ImpactIndex(Directory directory) throws IOException {
+    this.directory = directory;
+    this.input = directory.openInput(ImpactIndex.FILE_NAME, IOContext.READ);
+    boolean success = false;
+    try {
+      CodecUtil.checkHeader(
+          this.input, ImpactIndex.CODEC, ImpactIndex.VERSION, ImpactIndex.VERSION);
+      this.generation = this.input.readLong();
+      this.commitId = new byte[this.input.readVInt()];
+      this.input.readBytes(this.commitId, 0, this.commitId.length);
+      this.similarity = this.input.readString();
+      CodecUtil.retrieveChecksum(this.input);
+      this.input.seek(this.input.length() - CodecUtil.footerLength() - Long.BYTES - Integer.BYTES);
+      final long dictionary = this.input.readLong();
+      this.maxDoc = this.input.readInt();
+      this.input.seek(dictionary);
+      this.pointers = new HashMap<Term, Long>();
+      final int fields = this.input.readVInt();
+      for (int f = 0; f < fields; f++) {
+        final String field = this.input.readString();
+        final int terms = this.input.readVInt();
+        long pointer = 0;
+        for (int t = 0; t < terms; t++) {
+          final byte[] bytes = new byte[this.input.readVInt()];
+          this.input.readBytes(bytes, 0, bytes.length);
+          pointer += this.input.readVLong();
+          this.pointers.put(new Term(field, new BytesRef(bytes)), pointer);
+        }
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        this.input.close();
+      }
+    }
+  }
+
+  /**
+   * Opens the impact index of a Lucene index.
+   *
+   * @param indexPath the path to the index
+   * @return ImpactIndex the impact index or null if one was not built
+   * @throws IOException - issue reading the impact file
+   */
+  public static ImpactIndex open(Path indexPath) throws IOException {
+    if (!Files.exists(indexPath.resolve(ImpactIndex.FILE_NAME))) {
+      return null;
+    }
+    final Directory directory = FSDirectory.open(indexPath);
+    try {
+      return new ImpactIndex(directory);
+    } catch (final IOException e) {
+      directory.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Builds the impact index of every math tuple in the index, replacing any older one.
+   *
+   * @param directory the directory of the index
+   * @param reader a reader of the index's latest commit
+   * @param similarity the similarity to score the postings with
+   * @throws IOException - issue reading the index or writing the impact file
+   */
+  public static void write(Directory directory, DirectoryReader reader, Similarity similarity)
+      throws IOException {
+    final IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setSimilarity(similarity);
+    for (final String file : directory.listAll()) {
+      if (file.equals(ImpactIndex.FILE_NAME)) {
+        directory.deleteFile(file);
+      }
+    }
+    try (IndexOutput output = directory.createOutput(ImpactIndex.FILE_NAME, IOContext.DEFAULT)) {
+      CodecUtil.writeHeader(output, ImpactIndex.CODEC, ImpactIndex.VERSION);
+      final SegmentInfos commit = ImpactIndex.commit(reader);
+      // indexes older than Lucene 5 have no id so only their generation is checked
+      final byte[] commitId = commit.getId() == null ? new byte[0] : commit.getId();
+      output.writeLong(commit.getGeneration());
+      output.writeVInt(commitId.length);
+      output.writeBytes(commitId, commitId.length);
+      output.writeString(ImpactIndex.describe(similarity));
+      final List<String> fields = new ArrayList<String>();
+      final List<List<BytesRef>> fieldTerms = new ArrayList<List<BytesRef>>();
+      final List<long[]> fieldPointers = new ArrayList<long[]>();
+      for (final String field : ImpactIndex.FIELDS) {
+        final Terms terms = MultiFields.getTerms(reader, field);
+        if (terms == null) {
+          continue;
+        }
+        final List<BytesRef> tuples = new ArrayList<BytesRef>();
+        long[] pointers = new long[16];
+        final TermsEnum termsEnum = terms.iterator();
+        BytesRef text;
+        while ((text = termsEnum.next()) != null) {
+          if (text.length == 0 || text.bytes[text.offset] != Constants.FORMULA_PREFIX.charAt(0)) {
+            continue;
+          }
+          if (tuples.size() == pointers.length) {
+            pointers = ArrayUtil.grow(pointers);
+          }
+          pointers[tuples.size()] = output.getFilePointer();
+          final BytesRef tuple = BytesRef.deepCopyOf(text);
+          tuples.add(tuple);
+          ImpactIndex.encode(searcher, new Term(field, tuple), Integer.MAX_VALUE, output);
+        }
+        fields.add(field);
+        fieldTerms.add(tuples);
+        fieldPointers.add(pointers);
+      }
+      final long dictionary = output.getFilePointer();
+      output.writeVInt(fields.size());
+      for (int f = 0; f < fields.size(); f++) {
+        final List<BytesRef> tuples = fieldTerms.get(f);
+        final long[] pointers = fieldPointers.get(f);
+        output.writeString(fields.get(f));
+        output.writeVInt(tuples.size());
+        long previous = 0;
+        for (int t = 0; t < tuples.size(); t++) {
+          final BytesRef tuple = tuples.get(t);
+          output.writeVInt(tuple.length);
+          output.writeBytes(tuple.bytes, tuple.offset, tuple.length);
+          output.writeVLong(pointers[t] - previous);
+          previous = pointers[t];
+        }
+      }
+      output.writeLong(dictionary);
+      output.writeInt(reader.maxDoc());
+      CodecUtil.writeFooter(output);
+    }
+  }
+
+  /**
+   * Returns the commit a reader was opened from.
+   *
+   * @param reader the reader of the index
+   * @return SegmentInfos the segments of the commit
+   * @throws IOException - issue reading the segments file
+   */
+  private static SegmentInfos commit(DirectoryReader reader) throws IOException {
+    return SegmentInfos.readCommit(
+        reader.directory(), reader.getIndexCommit().getSegmentsFileName());
+  }
+
+  /**
+   * Returns a description of how a similarity scores the fields of the impact index.
+   *
+   * @param similarity the similarity
+   * @return String the class and parameters of the similarity used for each field
+   */
+  public static String describe(Similarity similarity) {
+    final StringBuilder description = new StringBuilder();
+    for (final String field : ImpactIndex.FIELDS) {
+      Similarity fieldSimilarity = similarity;
+      if (similarity instanceof PerFieldSimilarityWrapper) {
+        fieldSimilarity = ((PerFieldSimilarityWrapper) similarity).get(field);
+      }
+      description
+          .append(field)
+          .append('=')
+          .append(fieldSimilarity.getClass().getName())
+          .append(':')
+          .append(fieldSimilarity)
+          .append('\n');
+    }
+    return description.toString();
+  }
+
+  /**
+   * Returns the impact ordered postings of a term straight from the index.
+   *
+   * <p>Used for the terms the impact index does not store, such as the words of a query.
+   *
+   * @param searcher the searcher of the index with the similarity to score with
+   * @param term the term
+   * @return Postings the postings of the term ordered by impact
+   * @throws IOException - issue reading the index
+   */
+  public static Postings postings(IndexSearcher searcher, Term term) throws IOException {
+    return ImpactIndex.postings(searcher, term, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the impact ordered postings of a term straight from the index, scoring each document
+   * with its frequency capped the way {@link query.MathTermQuery} caps it.
+   *
+   * @param searcher the searcher of the index with the similarity to score with
+   * @param term the term
+   * @param maxFreq the largest frequency a document is scored with
+   * @return Postings the postings of the term ordered by impact
+   * @throws IOException - issue reading the index
+   */
+  public static Postings postings(IndexSearcher searcher, Term term, int maxFreq)
+      throws IOException {
+    final BytesRefBuilder bytes = new BytesRefBuilder();
+    ImpactIndex.encode(
+        searcher,
+        term,
+        maxFreq,
+        new DataOutput() {
+          @Override
+          public void writeByte(byte b) {
+            bytes.append(b);
+          }
+
+          @Override
+          public void writeBytes(byte[] b, int offset, int length) {
+            bytes.append(b, offset, length);
+          }
+        });
+    return new Postings(new ByteArrayDataInput(bytes.bytes(), 0, bytes.length()));
+  }
+
+  /**
+   * Writes the postings of a term ordered by impact.
+   *
+   * <p>The largest frequency of the term and the scale of the levels are written first, then the
+   * level and number of documents of each segment from the highest level down, then the documents
+   * of each segment as gaps.
+   *
+   * @param searcher the searcher of the index with the similarity to score with
+   * @param term the term
+   * @param maxFreq the largest frequency a document is scored with
+   * @param output where to write the postings
+   * @throws IOException - issue reading the index or writing the postings
+   */
+  private static void encode(IndexSearcher searcher, Term term, int maxFreq, DataOutput output)
+      throws IOException {
+    final TermContext context = TermContext.build(searcher.getTopReaderContext(), term);
+    final int[] docs = new int[context.docFreq()];
+    final float[] scores = new float[docs.length];
+    int count = 0;
+    int largestFreq = 0;
+    float max = 0f;
+    if (context.docFreq() > 0) {
+      final Similarity similarity = searcher.getSimilarity(true);
+      final SimWeight weight =
+          similarity.computeWeight(
+              searcher.collectionStatistics(term.field()),
+              searcher.termStatistics(term, context));
+      weight.normalize(1f, 1f);
+      // a leaf's postings are scored together
+      final int[] leafDocs = new int[docs.length];
+      final int[] leafFreqs = new int[docs.length];
+      final float[] leafScores = new float[docs.length];
+      for (final LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+        final TermState state = context.get(leaf.ord);
+        if (state == null) {
+          continue;
+        }
+        final TermsEnum termsEnum = leaf.reader().terms(term.field()).iterator();
+        termsEnum.seekExact(term.bytes(), state);
+        final PostingsEnum postings = termsEnum.postings(null, PostingsEnum.FREQS);
+        final SimScorer scorer = similarity.simScorer(weight, leaf);
+        final Bits live = leaf.reader().getLiveDocs();
+        int matched = 0;
+        for (int doc = postings.nextDoc();
+            doc != DocIdSetIterator.NO_MORE_DOCS;
+            doc = postings.nextDoc()) {
+          if (live == null || live.get(doc)) {
+            leafDocs[matched] = doc;
+            leafFreqs[matched] = Math.min(postings.freq(), maxFreq);
+            largestFreq = Math.max(largestFreq, postings.freq());
+            matched += 1;
+          }
+        }
+        if (scorer instanceof BatchSimScorer) {
+          ((BatchSimScorer) scorer).score(leafDocs, leafFreqs, matched, leafScores);
+        } else {
+          for (int i = 0; i < matched; i++) {
+            leafScores[i] = scorer.score(leafDocs[i], leafFreqs[i]);
+          }
+        }
+        for (int i = 0; i < matched; i++) {
+          if (leafScores[i] > 0f) {
+            docs[count] = leaf.docBase + leafDocs[i];
+            scores[count] = leafScores[i];
+            max = Math.max(max, leafScores[i]);
+            count += 1;
+          }
+        }
+      }
+    }
+    // a document's level never understates its score and the highest level has rank 0
+    final int[] levels = new int[count];
+    final int[] sizes = new int[ImpactIndex.LEVELS];
+    int segments = 0;
+    for (int i = 0; i < count; i++) {
+      levels[i] =
+          Math.min(ImpactIndex.LEVELS, (int) Math.ceil(scores[i] / max * ImpactIndex.LEVELS));
+      final int rank = ImpactIndex.LEVELS - levels[i];
+      if (sizes[rank] == 0) {
+        segments += 1;
+      }
+      sizes[rank] += 1;
+    }
+    output.writeVInt(largestFreq);
+    output.writeInt(Float.floatToIntBits(max / ImpactIndex.LEVELS));
+    output.writeVInt(segments);
+    final int[] starts = new int[ImpactIndex.LEVELS + 1];
+    for (int rank = 0; rank < ImpactIndex.LEVELS; rank++) {
+      if (sizes[rank] > 0) {
+        output.writeVInt(ImpactIndex.LEVELS - rank);
+        output.writeVInt(sizes[rank]);
+      }
+      starts[rank + 1] = starts[rank] + sizes[rank];
+    }
+    final int[] next = Arrays.copyOf(starts, ImpactIndex.LEVELS);
+    final int[] ordered = new int[count];
+    for (int i = 0; i < count; i++) {
+      ordered[next[ImpactIndex.LEVELS - levels[i]]++] = docs[i];
+    }
+    for (int rank = 0; rank < ImpactIndex.LEVELS; rank++) {
+      int previous = -1;
+      for (int i = starts[rank]; i < starts[rank + 1]; i++) {
+        output.writeVInt(ordered[i] - previous);
+        previous = ordered[i];
+      }
+    }
+  }
+
+  /**
+   * Returns the impact ordered postings of a term.
+   *
+   * @param term the term
+   * @return Postings the postings or null if the term is not in the impact index
+   * @throws IOException - issue reading the impact file
+   */
+  public Postings postings(Term term) throws IOException {
+    final Long pointer = this.pointers.get(term);
+    if (pointer == null) {
+      return null;
+    }
+    final IndexInput clone = this.input.clone();
+    clone.seek(pointer.longValue());
+    return new Postings(clone);
+  }
+
+  /**
+   * Returns whether a term is in the impact index.
+   *
+   * @param term the term
+   * @return boolean True if the impact index has the term's postings
+   */
+  public boolean contains(Term term) {
+    return this.pointers.containsKey(term);
+  }
+
+  /**
+   * Returns whether the impact index was built from the commit a reader was opened from.
+   *
+   * @param reader the reader of the index
+   * @return boolean True if the impact index is up to date with the reader
+   * @throws IOException - issue reading the segments file
+   */
+  public boolean isCurrent(DirectoryReader reader) throws IOException {
+    if (reader.maxDoc() != this.maxDoc) {
+      return false;
+    }
+    final SegmentInfos commit = ImpactIndex.commit(reader);
+    final byte[] commitId = commit.getId() == null ? new byte[0] : commit.getId();
+    return commit.getGeneration() == this.generation && Arrays.equals(commitId, this.commitId);
+  }
+
+  /**
+   * Returns whether the impact index was scored the same way as a similarity scores.
+   *
+   * @param similarity the similarity searching the index
+   * @return boolean True if the impact index was built with an equivalent similarity
+   */
+  public boolean isScoredWith(Similarity similarity) {
+    return this.similarity.equals(ImpactIndex.describe(similarity));
+  }
+
+  /**
+   * Returns the number of documents in the index when the impact index was built.
+   *
+   * @return int the max doc of the index
+   */
+  public int maxDoc() {
+    return this.maxDoc;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      this.input.close();
+    } finally {
+      this.directory.close();
+    }
+  }
+
+  /**
+   * The postings of a term read one segment at a time from the highest impact to the lowest.
+   *
+   * @author Dallas Fraser
+   * @since 2018-03-01
+   */
+  public static class Postings {
+    private final DataInput input;
+    private final int maxFreq;
+    private final float scale;
+    private final int[] levels;
+    private final int[] counts;
+    private int segment;
+    private int[] docs;
+
+    /**
+     * Class constructor.
+     *
+     * @param input the input positioned at the postings
+     * @throws IOException - issue reading the postings
+     */
+    public Postings(DataInput input) throws IOException {
+      this.input = input;
+      this.maxFreq = input.readVInt();
+      this.scale = Float.intBitsToFloat(input.readInt());
+      final int segments = input.readVInt();
+      this.levels = new int[segments];
+      this.counts = new int[segments];
+      int largest = 0;
+      for (int i = 0; i < segments; i++) {
+        this.levels[i] = input.readVInt();
+        this.counts[i] = input.readVInt();
+        largest = Math.max(largest, this.counts[i]);
+      }
+      this.docs = new int[Math.min(largest, 1024)];
+      this.segment = 0;
+    }
+
+    /**
+     * Returns the largest frequency of the term in a document.
+     *
+     * @return int the largest frequency
+     */
+    public int maxFreq() {
+      return this.maxFreq;
+    }
+
+    /**
+     * Returns the number of segments.
+     *
+     * @return int the number of segments
+     */
+    public int segments() {
+      return this.levels.length;
+    }
+
+    /**
+     * Returns the score every document of a segment is given.
+     *
+     * @param segment the segment
+     * @return float the quantized score of the segment
+     */
+    public float impact(int segment) {
+      return this.scale * this.levels[segment];
+    }
+
+    /**
+     * Returns the number of documents in a segment.
+     *
+     * @param segment the segment
+     * @return int the number of documents
+     */
+    public int count(int segment) {
+      return this.counts[segment];
+    }
+
+    /**
+     * Reads the documents of the next segment.
+     *
+     * @return int the number of documents read into {@link #getDocs()}
+     * @throws IOException - issue reading the postings
+     */
+    public int nextSegment() throws IOException {
+      final int count = this.counts[this.segment];
+      if (this.docs.length < count) {
+        this.docs = new int[ArrayUtil.oversize(count, Integer.BYTES)];
+      }
+      int doc = -1;
+      for (int i = 0; i < count; i++) {
+        doc += this.input.readVInt();
+        this.docs[i] = doc;
+      }
+      this.segment += 1;
+      return count;
+    }
+
+    /**
+     * Returns the documents of the last segment read.
+     *
+     * @return int[] the documents in order (the buffer may be longer than the segment)
+     */
+    public int[] getDocs() {
+      return this.docs;
+    }
+  }
+}
@@ -24,30 +24,47 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CachingTokenFilter;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
 import search.MathSimilarityWrapper;
 import utilities.Constants;
 import utilities.ProjectLogger;
@@ -69,6 +86,33 @@ public class IndexFiles {
   /** Whether to use multiple threads when indexing. */
   private final boolean multiThreaded;
 
+  /** The number of convert workers to keep running (0 starts a process per file). */
+  private int converterPoolSize;
+
+  /** The cache of converted files to check before converting (null to always convert). */
+  private ConvertCache cache;
+
+  /** The IndexWriter settings to index with. */
+  private IndexProfile profile;
+
+  /** The progress of the last call to index a directory. */
+  private IndexProgress progress;
+
+  /** The number of separate writers the index threads are split across (1 shares one writer). */
+  private int subIndexes;
+
+  /** Whether appending skips unchanged files and removes the documents of deleted files. */
+  private boolean incremental;
+
+  /** Whether to build the impact ordered postings of the math tuples after indexing. */
+  private boolean impactOrdered;
+
+  /** The number of files queued per indexing thread before the producer waits. */
+  private static final int QUEUED_PER_THREAD = 64;
+
+  /** How often to report the progress of indexing. */
+  private static final long REPORT_SECONDS = 30;
+
   /** Class constructor Defaults logger to projectLogger, and is multi-threaded. */
   public IndexFiles() {
     this(ProjectLogger.getLogger(), true);
@@ -101,6 +145,157 @@ public class IndexFiles {
   public IndexFiles(Logger logger, boolean multiThreaded) {
     this.logger = logger;
     this.multiThreaded = multiThreaded;
+    this.converterPoolSize = Runtime.getRuntime().availableProcessors();
+    this.profile = IndexProfile.DEFAULT;
+    this.subIndexes = 1;
+  }
+
+  /**
+   * Sets the IndexWriter settings to index with.
+   *
+   * @param profile the profile to use
+   * @see IndexProfile
+   */
+  public void setProfile(IndexProfile profile) {
+    this.profile = profile;
+  }
+
+  /**
+   * Returns the IndexWriter settings used when indexing.
+   *
+   * @return IndexProfile the profile
+   */
+  public IndexProfile getProfile() {
+    return this.profile;
+  }
+
+  /**
+   * Sets the number of sub-indexes to build in parallel when indexing with multiple threads.
+   *
+   * <p>Each sub-index has its own writer and directory so the index threads do not contend on one
+   * writer; the sub-indexes are added to the index once every document is indexed.
+   *
+   * @param subIndexes the number of sub-indexes (1 for every thread to share the one writer)
+   */
+  public void setSubIndexes(int subIndexes) {
+    this.subIndexes = Math.max(1, subIndexes);
+  }
+
+  /**
+   * Returns the number of sub-indexes built in parallel when indexing.
+   *
+   * @return int the number of sub-indexes
+   */
+  public int getSubIndexes() {
+    return this.subIndexes;
+  }
+
+  /**
+   * Sets whether appending to an index only indexes the files that changed.
+   *
+   * <p>An incremental update skips files whose last modified time matches the index's manifest,
+   * converts and indexes new or changed files, and deletes the documents of files that no longer
+   * exist under the documents directory.
+   *
+   * @param incremental True to only index the changes
+   * @see IndexManifest
+   */
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  /**
+   * Returns whether appending to an index only indexes the files that changed.
+   *
+   * @return boolean True if updates are incremental
+   */
+  public boolean isIncremental() {
+    return this.incremental;
+  }
+
+  /**
+   * Sets whether to build the impact ordered postings of the math tuples after indexing.
+   *
+   * <p>The impact index is also built whenever the config's query type is {@link
+   * ConvertConfig#IMPACT_QUERY}.
+   *
+   * @param impactOrdered True to build the impact index
+   * @see ImpactIndex
+   */
+  public void setImpactOrdered(boolean impactOrdered) {
+    this.impactOrdered = impactOrdered;
+  }
+
+  /**
+   * Returns whether the impact ordered postings of the math tuples are built after indexing.
+   *
+   * @return boolean True if the impact index is built
+   */
+  public boolean isImpactOrdered() {
+    return this.impactOrdered;
+  }
+
+  /**
+   * Sets the number of long running convert workers used when indexing.
+   *
+   * @param size the number of workers (0 to start a new process for every file)
+   */
+  public void setConverterPoolSize(int size) {
+    this.converterPoolSize = Math.max(0, size);
+  }
+
+  /**
+   * Returns the number of long running convert workers used when indexing.
+   *
+   * @return int the number of workers
+   */
+  public int getConverterPoolSize() {
+    return this.converterPoolSize;
+  }
+
+  /**
+   * Sets the cache of converted files to check before converting a file.
+   *
+   * @param cache the cache to use (null to always convert)
+   */
+  public void setConvertCache(ConvertCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Returns the cache of converted files used when indexing.
+   *
+   * @return ConvertCache the cache or null if there is not one
+   */
+  public ConvertCache getConvertCache() {
+    return this.cache;
+  }
+
+  /**
+   * Returns the progress of the last call to index a directory.
+   *
+   * @return IndexProgress the documents indexed and failed or null if nothing has been indexed
+   */
+  public IndexProgress getProgress() {
+    return this.progress;
+  }
+
+  /**
+   * Starts the pool of convert workers or returns null if it is disabled or unable to start.
+   *
+   * @return ConvertWorkerPool the pool to use or null
+   */
+  private ConvertWorkerPool startConverterPool() {
+    ConvertWorkerPool pool = null;
+    if (this.converterPoolSize > 0) {
+      try {
+        pool = new ConvertWorkerPool(this.converterPoolSize, this.logger);
+      } catch (final IOException e) {
+        this.logger.log(
+            Level.WARNING, "Unable to start convert workers, converting one file at a time", e);
+      }
+    }
+    return pool;
   }
 
   /**
@@ -135,66 +330,234 @@ public class IndexFiles {
       throw new IOException("File does not exist");
     }
     final Date start = new Date();
+    ConvertWorkerPool pool = null;
     try {
       this.logger.log(Level.FINE, "Indexing to directory: '" + indexPath.toString() + "'...");
+      final IndexManifest manifest = create ? new IndexManifest() : IndexManifest.load(indexPath);
       final Directory dir = FSDirectory.open(indexPath);
-      final Analyzer analyzer = new MathAnalyzer(config);
-      final Map<String, Analyzer> analyzerPerField = new HashMap<String, Analyzer>();
-      analyzerPerField.put(Constants.MATHFIELD, new JustMathAnalyzer());
-      analyzerPerField.put(Constants.TEXTFIELD, new JustTextAnalyzer());
-      final PerFieldAnalyzerWrapper wrapper =
-          new PerFieldAnalyzerWrapper(analyzer, analyzerPerField);
-      final IndexWriterConfig iwc = new IndexWriterConfig(wrapper);
-      iwc.setSimilarity(simlarity);
+      final IndexWriter writer;
       if (create) {
         // Create a new index in the directory, removing any
         // previously indexed documents:
-        iwc.setOpenMode(OpenMode.CREATE);
+        writer = new IndexWriter(dir, this.writerConfig(config, simlarity, OpenMode.CREATE));
       } else {
         // Add new documents to an existing index:
-        iwc.setOpenMode(OpenMode.CREATE_OR_APPEND);
+        writer =
+            new IndexWriter(dir, this.writerConfig(config, simlarity, OpenMode.CREATE_OR_APPEND));
       }
-      // Optional: for better indexing performance, if you
-      // are indexing many documents, increase the RAM
-      // buffer.  But if you do this, increase the max heap
-      // size to the JVM (eg add -Xmx512m or -Xmx1g):
-      //
-      // iwc.setRAMBufferSizeMB(256.0);
-      final IndexWriter writer = new IndexWriter(dir, iwc);
+      pool = this.startConverterPool();
       final int processors = Runtime.getRuntime().availableProcessors();
-      if (this.multiThreaded && processors > 1) {
-        final BlockingQueue<IndexThreadObject> bq = new LinkedBlockingQueue<IndexThreadObject>();
-        System.out.println("Number of processors:" + processors);
-
-        for (int i = 0; i < (processors); i++) {
-          new Thread(new IndexThreadConsumer(bq, writer, config)).start();
-        }
-        this.run(docsPath, processors, bq);
-        while (!bq.isEmpty()) {
-          System.out.println("Number of files left: " + bq.size());
+      final IndexProgress progress = new IndexProgress();
+      this.progress = progress;
+      final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+      reporter.scheduleAtFixedRate(
+          () -> this.logger.log(Level.INFO, progress.toString()),
+          IndexFiles.REPORT_SECONDS,
+          IndexFiles.REPORT_SECONDS,
+          TimeUnit.SECONDS);
+      try {
+        if (this.multiThreaded && processors > 1) {
+          // bounded so walking a huge corpus waits on the consumers instead of queueing every path
+          final BlockingQueue<IndexThreadObject> bq =
+              new LinkedBlockingQueue<IndexThreadObject>(IndexFiles.QUEUED_PER_THREAD * processors);
+          System.out.println("Number of processors:" + processors);
+          final List<IndexWriter> parts = new ArrayList<IndexWriter>();
           try {
-            TimeUnit.MINUTES.sleep(1);
-          } catch (final InterruptedException e) {
-            e.printStackTrace();
+            final int subIndexes = Math.min(this.subIndexes, processors);
+            if (subIndexes > 1) {
+              this.logger.log(Level.INFO, "Indexing into " + subIndexes + " sub-indexes");
+              for (int i = 0; i < subIndexes; i++) {
+                final Path part =
+                    Files.createTempDirectory(
+                        indexPath.toAbsolutePath().getParent(), indexPath.getFileName() + "-part");
+                parts.add(
+                    new IndexWriter(
+                        FSDirectory.open(part),
+                        this.writerConfig(config, simlarity, OpenMode.CREATE)));
+              }
+            }
+            final ExecutorService executor = Executors.newFixedThreadPool(processors);
+            final List<Future<?>> consumers = new ArrayList<Future<?>>();
+            for (int i = 0; i < (processors); i++) {
+              final IndexWriter target = parts.isEmpty() ? writer : parts.get(i % parts.size());
+              consumers.add(
+                  executor.submit(
+                      new IndexThreadConsumer(bq, target, config, pool, this.cache, progress)));
+            }
+            executor.shutdown();
+            this.run(docsPath, processors, bq, manifest, progress);
+            // wait for every consumer to finish its last document before merging
+            for (final Future<?> consumer : consumers) {
+              try {
+                consumer.get();
+              } catch (final ExecutionException e) {
+                this.logger.log(Level.SEVERE, "Index thread failed", e.getCause());
+              } catch (final InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while indexing", e);
+              }
+            }
+            if (!parts.isEmpty()) {
+              IndexFiles.addSubIndexes(writer, parts);
+            }
+          } finally {
+            IndexFiles.removeSubIndexes(parts);
           }
+        } else {
+          indexDocs(
+              writer, docsPath, config, pool, this.cache, progress, manifest, this.incremental);
         }
-      } else {
-        indexDocs(writer, docsPath, config);
+      } finally {
+        reporter.shutdownNow();
+      }
+      this.logger.log(Level.INFO, progress.toString());
+      for (final Path failure : progress.getFailures()) {
+        this.logger.log(Level.WARNING, "Unable to index file: " + failure);
+        manifest.failed(failure);
+      }
+      if (this.incremental && !create) {
+        final List<String> removed = manifest.removeUnvisited(docsPath);
+        for (final String path : removed) {
+          writer.deleteDocuments(new Term("path", path));
+        }
+        this.logger.log(Level.INFO, "Removed " + removed.size() + " deleted documents");
       }
-      // NOTE: if you want to maximize search performance,
-      // you can optionally call forceMerge here.  This can be
-      // a terribly costly operation, so generally it's only
-      // worth it when your index is relatively static (ie
-      // you're done adding documents to it):
-      writer.forceMerge(4);
+      // NOTE: force merging maximizes search performance but can be
+      // a terribly costly operation, so the profile decides whether
+      // it is worth it (ie the index is relatively static)
+      this.profile.forceMerge(writer);
       final Date end = new Date();
       this.logger.log(Level.INFO, end.getTime() - start.getTime() + " total milliseconds");
+      if (this.cache != null) {
+        this.logger.log(
+            Level.INFO,
+            "Convert cache hits: " + this.cache.getHits() + " misses: " + this.cache.getMisses());
+      }
       config.saveConfig(indexPath);
+      this.profile.save(indexPath);
       writer.close();
+      if (this.impactOrdered || ConvertConfig.IMPACT_QUERY.equals(config.getQueryType())) {
+        // built from the committed index so its documents match what is searched
+        final Date impactStart = new Date();
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+          ImpactIndex.write(dir, reader, simlarity);
+        }
+        this.logger.log(
+            Level.INFO,
+            "Impact index built in " + (new Date().getTime() - impactStart.getTime()) + " ms");
+      }
       dir.close();
+      // only saved once the documents it lists are committed
+      manifest.save(indexPath);
     } catch (final IOException e) {
       this.logger.log(
           Level.WARNING, " caught a " + e.getClass() + "\n with message: " + e.getMessage());
+    } finally {
+      if (pool != null) {
+        pool.close();
+      }
+    }
+  }
+
+  /**
+   * Returns the settings for a writer of the index.
+   *
+   * @param config the config file to use when indexing
+   * @param similarity the similarity to be used when indexing
+   * @param mode whether to create the index versus appending to one
+   * @return IndexWriterConfig the settings for the writer
+   */
+  private IndexWriterConfig writerConfig(
+      ConvertConfig config, Similarity similarity, OpenMode mode) {
+    final Analyzer analyzer = new MathAnalyzer(config);
+    final Map<String, Analyzer> analyzerPerField = new HashMap<String, Analyzer>();
+    analyzerPerField.put(Constants.MATHFIELD, new JustMathAnalyzer());
+    analyzerPerField.put(Constants.TEXTFIELD, new JustTextAnalyzer());
+    final PerFieldAnalyzerWrapper wrapper = new PerFieldAnalyzerWrapper(analyzer, analyzerPerField);
+    final IndexWriterConfig iwc = new IndexWriterConfig(wrapper);
+    iwc.setSimilarity(similarity);
+    iwc.setOpenMode(mode);
+    // the RAM buffer, merging and compound files come from the profile;
+    // a bigger RAM buffer needs a bigger max heap for the JVM (eg -Xmx1g)
+    this.profile.apply(iwc);
+    return iwc;
+  }
+
+  /**
+   * Closes the writers of the sub-indexes and adds their documents to the index.
+   *
+   * <p>When appending to an index, any older copy of a document in a sub-index is deleted first
+   * the same as updating the document would have.
+   *
+   * @param writer the writer of the index
+   * @param parts the writers of the sub-indexes
+   * @throws IOException - raised when there is an issue reading a sub-index
+   */
+  private static void addSubIndexes(IndexWriter writer, List<IndexWriter> parts)
+      throws IOException {
+    final Directory[] directories = new Directory[parts.size()];
+    for (int i = 0; i < parts.size(); i++) {
+      directories[i] = parts.get(i).getDirectory();
+      parts.get(i).close();
+    }
+    if (writer.getConfig().getOpenMode() != OpenMode.CREATE) {
+      for (final Directory directory : directories) {
+        final DirectoryReader reader = DirectoryReader.open(directory);
+        try {
+          final Terms paths = MultiFields.getTerms(reader, "path");
+          if (paths != null) {
+            final TermsEnum iter = paths.iterator();
+            BytesRef path;
+            while ((path = iter.next()) != null) {
+              writer.deleteDocuments(new Term("path", BytesRef.deepCopyOf(path)));
+            }
+          }
+        } finally {
+          reader.close();
+        }
+      }
+    }
+    // deletes only apply to documents already in the index, not the ones being added
+    writer.addIndexes(directories);
+  }
+
+  /**
+   * Closes the writers of the sub-indexes and removes their directories.
+   *
+   * @param parts the writers of the sub-indexes
+   */
+  private static void removeSubIndexes(List<IndexWriter> parts) {
+    for (final IndexWriter part : parts) {
+      final Directory directory = part.getDirectory();
+      try {
+        part.close();
+        if (directory instanceof FSDirectory) {
+          final Path path = ((FSDirectory) directory).getDirectory();
+          directory.close();
+          Files.walkFileTree(
+              path,
+              new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+                  Files.delete(file);
+                  return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e)
+                    throws IOException {
+                  Files.delete(dir);
+                  return FileVisitResult.CONTINUE;
+                }
+              });
+        } else {
+          directory.close();
+        }
+      } catch (final IOException e) {
+        ProjectLogger.getLogger().log(Level.WARNING, "Unable to remove sub-index", e);
+      }
     }
   }
 
@@ -206,11 +569,35 @@ public class IndexFiles {
    * @param queue the queue to add the files to
    */
   public void run(Path documents, int consumers, BlockingQueue<IndexThreadObject> queue) {
+    this.run(documents, consumers, queue, null, new IndexProgress());
+  }
+
+  /**
+   * Index the documents that are new or changed since they were last indexed.
+   *
+   * @param documents path to the documents folder
+   * @param consumers the number of consumer threads
+   * @param queue the queue to add the files to
+   * @param manifest the manifest of the index to record the files in (null to index every file)
+   * @param progress the tracker of the skipped documents
+   */
+  public void run(
+      Path documents,
+      int consumers,
+      BlockingQueue<IndexThreadObject> queue,
+      IndexManifest manifest,
+      IndexProgress progress) {
     // add all the documents to the thread
-    this.indexDocs(documents, queue);
+    this.indexDocs(documents, queue, manifest, progress);
     // add signals to the consumers they are done
     for (int i = 0; i < consumers; i++) {
-      queue.add(new IndexThreadObject(IndexThreadObject.COMPLETE, 0L));
+      try {
+        queue.put(new IndexThreadObject(IndexThreadObject.COMPLETE, 0L));
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.logger.log(Level.WARNING, "Interrupted while signalling the index threads");
+        return;
+      }
     }
   }
 
@@ -221,6 +608,22 @@ public class IndexFiles {
    * @param queue the queue to adds for the consumer threads
    */
   public void indexDocs(Path path, BlockingQueue<IndexThreadObject> queue) {
+    this.indexDocs(path, queue, null, new IndexProgress());
+  }
+
+  /**
+   * indexDocs using multiple threads skipping the files that have not changed.
+   *
+   * @param path the path to main folder
+   * @param queue the queue to adds for the consumer threads
+   * @param manifest the manifest of the index to record the files in (null to index every file)
+   * @param progress the tracker of the skipped documents
+   */
+  public void indexDocs(
+      Path path,
+      BlockingQueue<IndexThreadObject> queue,
+      IndexManifest manifest,
+      IndexProgress progress) {
     if (Files.isDirectory(path)) {
       try {
         Files.walkFileTree(
@@ -229,9 +632,13 @@ public class IndexFiles {
               @Override
               public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
                   throws IOException {
+                final long lastModified = attrs.lastModifiedTime().toMillis();
+                if (!IndexFiles.changed(
+                    manifest, IndexFiles.this.incremental, progress, file, lastModified)) {
+                  return FileVisitResult.CONTINUE;
+                }
                 try {
-                  queue.put(
-                      new IndexThreadObject(file.toString(), attrs.lastModifiedTime().toMillis()));
+                  queue.put(new IndexThreadObject(file.toString(), lastModified));
                 } catch (final InterruptedException e) {
                   e.printStackTrace();
                   System.out.println("Unable to add file: " + file.toString());
@@ -244,8 +651,10 @@ public class IndexFiles {
       }
     } else {
       try {
-        queue.put(
-            new IndexThreadObject(path.toString(), Files.getLastModifiedTime(path).toMillis()));
+        final long lastModified = Files.getLastModifiedTime(path).toMillis();
+        if (IndexFiles.changed(manifest, this.incremental, progress, path, lastModified)) {
+          queue.put(new IndexThreadObject(path.toString(), lastModified));
+        }
       } catch (final InterruptedException e) {
         System.out.println("Unable to add file: " + path.toString());
         e.printStackTrace();
@@ -268,9 +677,45 @@ public class IndexFiles {
    *
    * @param writer Writer to the index where the given file/dir info will be stored
    * @param path The file to index, or the directory to recurse into to find files to index
+   * @param config the config file to use when indexing
+   * @param pool the convert workers to use (null to start a process per file)
+   * @param cache the cache of converted files to check first (null to always convert)
+   * @param progress the tracker of indexed and failed documents
    * @throws IOException If there is a low-level I/O error
    */
-  static void indexDocs(final IndexWriter writer, Path path, ConvertConfig config)
+  static void indexDocs(
+      final IndexWriter writer,
+      Path path,
+      ConvertConfig config,
+      ConvertWorkerPool pool,
+      ConvertCache cache,
+      IndexProgress progress)
+      throws IOException {
+    indexDocs(writer, path, config, pool, cache, progress, null, false);
+  }
+
+  /**
+   * Indexes the given file or the files under the given directory that are new or changed.
+   *
+   * @param writer Writer to the index where the given file/dir info will be stored
+   * @param path The file to index, or the directory to recurse into to find files to index
+   * @param config the config file to use when indexing
+   * @param pool the convert workers to use (null to start a process per file)
+   * @param cache the cache of converted files to check first (null to always convert)
+   * @param progress the tracker of indexed, failed and skipped documents
+   * @param manifest the manifest of the index to record the files in (null to index every file)
+   * @param incremental True to skip the files that have not changed
+   * @throws IOException If there is a low-level I/O error
+   */
+  static void indexDocs(
+      final IndexWriter writer,
+      Path path,
+      ConvertConfig config,
+      ConvertWorkerPool pool,
+      ConvertCache cache,
+      IndexProgress progress,
+      IndexManifest manifest,
+      boolean incremental)
       throws IOException {
     final Logger logger = ProjectLogger.getLogger();
     if (Files.isDirectory(path)) {
@@ -280,14 +725,21 @@ public class IndexFiles {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
                 throws IOException {
+              final long lastModified = attrs.lastModifiedTime().toMillis();
+              if (!IndexFiles.changed(manifest, incremental, progress, file, lastModified)) {
+                return FileVisitResult.CONTINUE;
+              }
               try {
                 logger.log(Level.FINE, "Indexing file:" + file.toString());
-                indexDoc(writer, file, attrs.lastModifiedTime().toMillis(), config);
+                indexDoc(writer, file, lastModified, config, pool, cache);
+                progress.documentIndexed();
               } catch (final IOException ignore) {
                 // don't index files that can't be read.
                 ignore.printStackTrace();
+                progress.documentFailed(file);
                 logger.log(Level.WARNING, "Unable to index file");
               } catch (final InterruptedException e) {
+                progress.documentFailed(file);
                 logger.log(Level.WARNING, "Unable to index file");
                 e.printStackTrace();
               }
@@ -296,14 +748,45 @@ public class IndexFiles {
           });
     } else {
       try {
-        indexDoc(writer, path, Files.getLastModifiedTime(path).toMillis(), config);
+        final long lastModified = Files.getLastModifiedTime(path).toMillis();
+        if (IndexFiles.changed(manifest, incremental, progress, path, lastModified)) {
+          indexDoc(writer, path, lastModified, config, pool, cache);
+          progress.documentIndexed();
+        }
       } catch (final InterruptedException e) {
+        progress.documentFailed(path);
         logger.log(Level.WARNING, "Unable to index file");
         e.printStackTrace();
       }
     }
   }
 
+  /**
+   * Records a file in the manifest and returns whether it has to be indexed.
+   *
+   * @param manifest the manifest of the index (null to index every file)
+   * @param incremental True to skip the file if it has not changed
+   * @param progress the tracker of the skipped documents
+   * @param file the path to the file
+   * @param lastModified the time the file was last modified
+   * @return boolean True if the file should be indexed
+   */
+  private static boolean changed(
+      IndexManifest manifest,
+      boolean incremental,
+      IndexProgress progress,
+      Path file,
+      long lastModified) {
+    boolean changed = true;
+    if (manifest != null) {
+      changed = manifest.visit(file, lastModified) || !incremental;
+      if (!changed) {
+        progress.documentSkipped();
+      }
+    }
+    return changed;
+  }
+
   /**
    * Indexes a single document.
    *
@@ -311,7 +794,48 @@ public class IndexFiles {
    */
   static void indexDoc(IndexWriter writer, Path file, long lastModified, ConvertConfig config)
       throws IOException, InterruptedException {
-    final ConvertResult cr = new ConvertMathMl(file).convert(config);
+    indexDoc(writer, file, lastModified, config, null);
+  }
+
+  /**
+   * Indexes a single document converting it with a pool of workers.
+   *
+   * @param pool the convert workers to use (null to start a process for the file)
+   * @throws InterruptedException - issue when dealing with a file
+   */
+  static void indexDoc(
+      IndexWriter writer,
+      Path file,
+      long lastModified,
+      ConvertConfig config,
+      ConvertWorkerPool pool)
+      throws IOException, InterruptedException {
+    indexDoc(writer, file, lastModified, config, pool, null);
+  }
+
+  /**
+   * Indexes a single document using the cached conversion of it when there is one.
+   *
+   * @param pool the convert workers to use (null to start a process for the file)
+   * @param cache the cache of converted files to check first (null to always convert)
+   * @throws InterruptedException - issue when dealing with a file
+   */
+  static void indexDoc(
+      IndexWriter writer,
+      Path file,
+      long lastModified,
+      ConvertConfig config,
+      ConvertWorkerPool pool,
+      ConvertCache cache)
+      throws IOException, InterruptedException {
+    final ConvertResult cr;
+    if (cache != null) {
+      cr = cache.convert(file, config, pool);
+    } else if (pool != null) {
+      cr = pool.convert(file, config);
+    } else {
+      cr = new ConvertMathMl(file).convert(config);
+    }
     final Reader reader = cr.getReader();
     // make a new, empty document
     final Document doc = new Document();
@@ -320,12 +844,17 @@ public class IndexFiles {
       // a field to keep track of the doc length and formula length
       doc.add(new StoredField(Constants.FORMULA_COUNT, cr.getFormulaCount()));
       doc.add(new StoredField(Constants.DOCUMENT_LENGTH, cr.getDocLength()));
+      // and as doc values so scoring does not have to load the stored fields
+      doc.add(new NumericDocValuesField(Constants.FORMULA_COUNT, cr.getFormulaCount()));
+      doc.add(new NumericDocValuesField(Constants.DOCUMENT_LENGTH, cr.getDocLength()));
     }
     // Add the path of the file as a field named "path".  Use a
     final Field pathField = new StringField("path", file.toString(), Field.Store.YES);
     doc.add(pathField);
     // Add the last modified date of the file a field named "modified".
     doc.add(new LongPoint("modified", lastModified));
+    // and store it so the manifest of an incremental update can be rebuilt from the index
+    doc.add(new StoredField("modified", lastModified));
     // Add the contents of the file to a field named "contents".  Specify a Reader,
     // so that the text of the file is tokenized and indexed, but not stored.
     final FieldType storeField = new FieldType();
@@ -349,6 +878,19 @@ public class IndexFiles {
     if (config.getAttribute(ConvertConfig.SEPERATE_MATH_TEXT)) {
       doc.add(new Field(Constants.TEXTFIELD, cr.getText(), freqType));
       doc.add(new Field(Constants.MATHFIELD, cr.getText(), freqType));
+    } else if (config.getAttribute(ConvertConfig.PROXIMITY)
+        && config.getAttribute(ConvertConfig.BAGS_OF_WORDS)) {
+      // count the size of each formula while analyzing so Dice does not have to at query time
+      final TokenStream stream =
+          new CachingTokenFilter(writer.getAnalyzer().tokenStream(Constants.FIELD, reader));
+      try {
+        doc.add(new BinaryDocValuesField(Constants.FORMULA_SIZES, FormulaSizes.collect(stream)));
+      } catch (final IOException e) {
+        IOUtils.closeWhileHandlingException(stream);
+        throw e;
+      }
+      // the cached tokens are indexed without analyzing the text again
+      doc.add(new Field(Constants.FIELD, stream, storeField));
     } else {
       doc.add(new Field(Constants.FIELD, reader, storeField));
     }
@@ -367,7 +909,9 @@ public class IndexFiles {
   public static void main(String[] args) {
     final String usage =
         "java index.IndexFiles"
-            + " [-index INDEX_PATH] [-docs DOCS_PATH] [-logfile file] [-update]\n\n"
+            + " [-index INDEX_PATH] [-docs DOCS_PATH] [-logfile file] [-update]"
+            + " [-profile DEFAULT|BULK_LOAD|INCREMENTAL|LOW_MEMORY] [-subindexes N]"
+            + " [-incremental] [-impacts]\n\n"
             + "This indexes the documents in DOCS_PATH, creating a Lucene index"
             + "in INDEX_PATH that can be searched with SearchFiles";
     Path indexPath =
@@ -387,6 +931,10 @@ public class IndexFiles {
             "NTCIR12_MathIR_WikiCorpusFormulas");
     Path logFile = Paths.get(System.getProperty("user.dir"), "resources", "logs", "NTCIRFull.log");
     boolean create = false;
+    IndexProfile profile = IndexProfile.DEFAULT;
+    int subIndexes = 1;
+    boolean incremental = false;
+    boolean impactOrdered = false;
     for (int i = 0; i < args.length; i++) {
       if ("-index".equals(args[i])) {
         indexPath = Paths.get(args[i + 1]);
@@ -396,6 +944,17 @@ public class IndexFiles {
         i++;
       } else if ("-update".equals(args[i])) {
         create = false;
+      } else if ("-profile".equals(args[i])) {
+        profile = IndexProfile.forName(args[i + 1]);
+        i++;
+      } else if ("-incremental".equals(args[i])) {
+        create = false;
+        incremental = true;
+      } else if ("-subindexes".equals(args[i])) {
+        subIndexes = Integer.parseInt(args[i + 1]);
+        i++;
+      } else if ("-impacts".equals(args[i])) {
+        impactOrdered = true;
       } else if ("-logfile".equals(args[i])) {
         logFile = Paths.get(args[i + 1]);
       }
@@ -425,6 +984,10 @@ public class IndexFiles {
       // -BAG_OF_WORDS
       config.optimalConfig();
       final IndexFiles idf = new IndexFiles();
+      idf.setProfile(profile);
+      idf.setSubIndexes(subIndexes);
+      idf.setIncremental(incremental);
+      idf.setImpactOrdered(impactOrdered);
       idf.indexDirectory(indexPath, docsPath, create, config);
     } catch (final IOException e) {
       e.printStackTrace();
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package index;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+
+/**
+ * The last modified time of every document in an index, keyed by the document's path.
+ *
+ * <p>The manifest is saved next to the index so re-indexing a directory only has to convert the
+ * files that are new or changed since the last time it was indexed. When an index has no saved
+ * manifest it is rebuilt from the stored <code>path</code> and <code>modified</code> fields.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class IndexManifest {
+  /** The modified time of a document whose file has to be indexed again. */
+  public static final long UNKNOWN = -1L;
+
+  /** The name of the file in the index directory. */
+  public static final String FILENAME = "index.manifest";
+  private static final String PATH = "path";
+  private static final String MODIFIED = "modified";
+  private static final String SEPERATOR = "\t";
+  private static final Set<String> FIELDS =
+      new HashSet<String>(Arrays.asList(IndexManifest.PATH, IndexManifest.MODIFIED));
+  private final Map<String, Long> modified;
+  private final Set<String> visited;
+
+  /** Class constructor for an empty index. */
+  public IndexManifest() {
+    this.modified = new HashMap<String, Long>();
+    this.visited = new HashSet<String>();
+  }
+
+  /**
+   * Records a file was found when walking the documents and returns whether it has to be indexed.
+   *
+   * @param file the path to the file
+   * @param lastModified the time the file was last modified
+   * @return boolean True if the file is new or changed since it was indexed
+   */
+  public synchronized boolean visit(Path file, long lastModified) {
+    final String path = file.toString();
+    this.visited.add(path);
+    final Long previous = this.modified.put(path, lastModified);
+    return previous == null || previous.longValue() != lastModified;
+  }
+
+  /**
+   * Records a file could not be indexed so it is tried again the next time.
+   *
+   * @param file the path to the file
+   */
+  public synchronized void failed(Path file) {
+    this.modified.put(file.toString(), IndexManifest.UNKNOWN);
+  }
+
+  /**
+   * Returns the last modified time of an indexed file.
+   *
+   * @param file the path to the file
+   * @return Long the last modified time or null if the file is not indexed
+   */
+  public synchronized Long getModified(Path file) {
+    return this.modified.get(file.toString());
+  }
+
+  /**
+   * Removes the files under a directory that were not visited and returns them.
+   *
+   * <p>Files outside the directory are kept since they were not walked.
+   *
+   * @param directory the directory of documents that was walked
+   * @return List the paths of the files that no longer exist
+   */
+  public synchronized List<String> removeUnvisited(Path directory) {
+    final List<String> removed = new ArrayList<String>();
+    for (final String path : this.modified.keySet()) {
+      if (!this.visited.contains(path) && Paths.get(path).startsWith(directory)) {
+        removed.add(path);
+      }
+    }
+    for (final String path : removed) {
+      this.modified.remove(path);
+    }
+    return removed;
+  }
+
+  /**
+   * Returns the number of files in the manifest.
+   *
+   * @return int the number of files
+   */
+  public synchronized int size() {
+    return this.modified.size();
+  }
+
+  /**
+   * Saves the manifest in an index directory.
+   *
+   * @param directory the directory of the index
+   * @throws IOException - raised when the file can not be written
+   */
+  public synchronized void save(Path directory) throws IOException {
+    final Path file = Paths.get(directory.toString(), IndexManifest.FILENAME);
+    final Path temp = Files.createTempFile(directory, IndexManifest.FILENAME, ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      for (final Map.Entry<String, Long> entry : this.modified.entrySet()) {
+        writer.write(entry.getValue() + IndexManifest.SEPERATOR + entry.getKey());
+        writer.newLine();
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Loads the manifest of an index directory.
+   *
+   * <p>Uses the saved manifest when there is one, otherwise it is read from the index. A new index
+   * has an empty manifest.
+   *
+   * @param directory the directory of the index
+   * @return IndexManifest the manifest of the index
+   * @throws IOException - raised when the manifest or index can not be read
+   */
+  public static IndexManifest load(Path directory) throws IOException {
+    final IndexManifest manifest = new IndexManifest();
+    final Path file = Paths.get(directory.toString(), IndexManifest.FILENAME);
+    if (Files.exists(file)) {
+      try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          final int split = line.indexOf(IndexManifest.SEPERATOR);
+          if (split < 0) {
+            throw new IOException("Unrecongizable manifest file");
+          }
+          manifest.modified.put(
+              line.substring(split + 1), Long.parseLong(line.substring(0, split)));
+        }
+      } catch (final NumberFormatException e) {
+        throw new IOException("Unrecongizable manifest file", e);
+      }
+    } else if (Files.isDirectory(directory)) {
+      try (Directory dir = FSDirectory.open(directory)) {
+        if (DirectoryReader.indexExists(dir)) {
+          IndexManifest.read(dir, manifest);
+        }
+      }
+    }
+    return manifest;
+  }
+
+  /**
+   * Reads the path and modified time of every document in an index.
+   *
+   * @param dir the directory of the index
+   * @param manifest the manifest to add the documents to
+   * @throws IOException - raised when the index can not be read
+   */
+  private static void read(Directory dir, IndexManifest manifest) throws IOException {
+    try (DirectoryReader reader = DirectoryReader.open(dir)) {
+      for (final LeafReaderContext context : reader.leaves()) {
+        final LeafReader leaf = context.reader();
+        final Bits live = leaf.getLiveDocs();
+        for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+          if (live != null && !live.get(doc)) {
+            continue;
+          }
+          final Document document = leaf.document(doc, IndexManifest.FIELDS);
+          final String path = document.get(IndexManifest.PATH);
+          if (path != null) {
+            // documents indexed before the time was stored get indexed again
+            final IndexableField time = document.getField(IndexManifest.MODIFIED);
+            manifest.modified.put(
+                path, time != null ? time.numericValue().longValue() : IndexManifest.UNKNOWN);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package index;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+
+/**
+ * A named set of IndexWriter settings used when indexing.
+ *
+ * <p>The profile controls the RAM buffer, flushing by document count, the merge threads, the
+ * segment budget of the merge policy, compound files and how far to force merge once done. It is
+ * saved next to the index's config so the throughput of a build can be reproduced.
+ *
+ * @author Dallas Fraser
+ * @see IndexFiles
+ * @since 2018-03-01
+ */
+public class IndexProfile {
+  /** The settings the indexer has always used: Lucene's defaults and a force merge to 4. */
+  public static final IndexProfile DEFAULT =
+      new IndexProfile(
+          "DEFAULT",
+          IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB,
+          IndexWriterConfig.DISABLE_AUTO_FLUSH,
+          ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS,
+          10,
+          5 * 1024,
+          true,
+          4);
+
+  /** Build a large index once: big buffer, few merges, no compound files and no force merge. */
+  public static final IndexProfile BULK_LOAD =
+      new IndexProfile(
+          "BULK_LOAD", 512, IndexWriterConfig.DISABLE_AUTO_FLUSH, 4, 20, 5 * 1024, false, 0);
+
+  /** Add to an existing index: a modest buffer and merging left to the merge policy. */
+  public static final IndexProfile INCREMENTAL =
+      new IndexProfile(
+          "INCREMENTAL",
+          64,
+          IndexWriterConfig.DISABLE_AUTO_FLUSH,
+          ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS,
+          10,
+          5 * 1024,
+          true,
+          0);
+
+  /** Index with a small heap: a small buffer, flushing every 1000 documents and one merge thread. */
+  public static final IndexProfile LOW_MEMORY =
+      new IndexProfile("LOW_MEMORY", 8, 1000, 1, 10, 1024, true, 0);
+
+  /** The name of the file in the index directory. */
+  public static final String FILENAME = "index.profile";
+  private static final String SEPERATOR = ":";
+  private static final String NAME = "PROFILE";
+  private static final String RAM_BUFFER = "RAM_BUFFER_MB";
+  private static final String BUFFERED_DOCS = "MAX_BUFFERED_DOCS";
+  private static final String MERGE_THREADS = "MERGE_THREADS";
+  private static final String SEGMENTS_PER_TIER = "SEGMENTS_PER_TIER";
+  private static final String MAX_MERGED_SEGMENT = "MAX_MERGED_SEGMENT_MB";
+  private static final String COMPOUND_FILES = "COMPOUND_FILES";
+  private static final String FORCE_MERGE = "FORCE_MERGE_SEGMENTS";
+  private final String name;
+  private final double ramBufferMB;
+  private final int maxBufferedDocs;
+  private final int mergeThreads;
+  private final double segmentsPerTier;
+  private final double maxMergedSegmentMB;
+  private final boolean compoundFiles;
+  private final int forceMergeSegments;
+
+  /**
+   * Class constructor for a custom profile.
+   *
+   * @param name the name of the profile
+   * @param ramBufferMB the size of the RAM buffer before flushing
+   * @param maxBufferedDocs the documents to buffer before flushing (-1 to only flush by RAM)
+   * @param mergeThreads the number of merge threads (-1 to let Lucene decide)
+   * @param segmentsPerTier the segments allowed per tier of the merge policy
+   * @param maxMergedSegmentMB the largest segment the merge policy will create
+   * @param compoundFiles True to write segments as compound files
+   * @param forceMergeSegments the segments to force merge down to once done (0 to not force merge)
+   */
+  public IndexProfile(
+      String name,
+      double ramBufferMB,
+      int maxBufferedDocs,
+      int mergeThreads,
+      double segmentsPerTier,
+      double maxMergedSegmentMB,
+      boolean compoundFiles,
+      int forceMergeSegments) {
+    this.name = name;
+    this.ramBufferMB = ramBufferMB;
+    this.maxBufferedDocs = maxBufferedDocs;
+    this.mergeThreads = mergeThreads;
+    this.segmentsPerTier = segmentsPerTier;
+    this.maxMergedSegmentMB = maxMergedSegmentMB;
+    this.compoundFiles = compoundFiles;
+    this.forceMergeSegments = forceMergeSegments;
+  }
+
+  /**
+   * Returns the named profile.
+   *
+   * @param name the name of the profile (DEFAULT, BULK_LOAD, INCREMENTAL or LOW_MEMORY)
+   * @return IndexProfile the profile
+   * @throws IllegalArgumentException - no profile has the name
+   */
+  public static IndexProfile forName(String name) {
+    for (final IndexProfile profile :
+        new IndexProfile[] {
+          IndexProfile.DEFAULT,
+          IndexProfile.BULK_LOAD,
+          IndexProfile.INCREMENTAL,
+          IndexProfile.LOW_MEMORY
+        }) {
+      if (profile.getName().equalsIgnoreCase(name)) {
+        return profile;
+      }
+    }
+    throw new IllegalArgumentException("Unknown index profile: " + name);
+  }
+
+  /**
+   * Applies the profile to the config of a writer.
+   *
+   * @param iwc the config of the writer
+   */
+  public void apply(IndexWriterConfig iwc) {
+    iwc.setRAMBufferSizeMB(this.ramBufferMB);
+    iwc.setMaxBufferedDocs(this.maxBufferedDocs);
+    iwc.setUseCompoundFile(this.compoundFiles);
+    final ConcurrentMergeScheduler scheduler = new ConcurrentMergeScheduler();
+    if (this.mergeThreads != ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS) {
+      // let a few merges queue up behind the running ones before indexing threads stall
+      scheduler.setMaxMergesAndThreads(this.mergeThreads + 2, this.mergeThreads);
+    }
+    iwc.setMergeScheduler(scheduler);
+    final TieredMergePolicy policy = new TieredMergePolicy();
+    policy.setSegmentsPerTier(this.segmentsPerTier);
+    policy.setMaxMergeAtOnce((int) Math.max(2, Math.min(this.segmentsPerTier, 30)));
+    policy.setMaxMergedSegmentMB(this.maxMergedSegmentMB);
+    policy.setNoCFSRatio(this.compoundFiles ? TieredMergePolicy.DEFAULT_NO_CFS_RATIO : 0.0);
+    iwc.setMergePolicy(policy);
+  }
+
+  /**
+   * Force merges the index if the profile asks for it.
+   *
+   * @param writer the writer of the index
+   * @throws IOException - issue when merging
+   */
+  public void forceMerge(IndexWriter writer) throws IOException {
+    if (this.forceMergeSegments > 0) {
+      writer.forceMerge(this.forceMergeSegments);
+    }
+  }
+
+  /**
+   * Saves the profile in the index directory.
+   *
+   * @param directory the directory of the index
+   * @throws IOException - issue writing the file
+   */
+  public void save(Path directory) throws IOException {
+    try (BufferedWriter writer =
+        Files.newBufferedWriter(
+            Paths.get(directory.toString(), IndexProfile.FILENAME), StandardCharsets.UTF_8)) {
+      IndexProfile.write(writer, IndexProfile.NAME, this.name);
+      IndexProfile.write(writer, IndexProfile.RAM_BUFFER, this.ramBufferMB);
+      IndexProfile.write(writer, IndexProfile.BUFFERED_DOCS, this.maxBufferedDocs);
+      IndexProfile.write(writer, IndexProfile.MERGE_THREADS, this.mergeThreads);
+      IndexProfile.write(writer, IndexProfile.SEGMENTS_PER_TIER, this.segmentsPerTier);
+      IndexProfile.write(writer, IndexProfile.MAX_MERGED_SEGMENT, this.maxMergedSegmentMB);
+      IndexProfile.write(writer, IndexProfile.COMPOUND_FILES, this.compoundFiles);
+      IndexProfile.write(writer, IndexProfile.FORCE_MERGE, this.forceMergeSegments);
+    }
+  }
+
+  /**
+   * Loads the profile saved in an index directory.
+   *
+   * @param directory the directory of the index
+   * @return IndexProfile the saved profile
+   * @throws IOException - the index does not have a profile or it is unrecognizable
+   */
+  public static IndexProfile load(Path directory) throws IOException {
+    final IndexProfile defaults = IndexProfile.DEFAULT;
+    String name = defaults.name;
+    double ramBufferMB = defaults.ramBufferMB;
+    int maxBufferedDocs = defaults.maxBufferedDocs;
+    int mergeThreads = defaults.mergeThreads;
+    double segmentsPerTier = defaults.segmentsPerTier;
+    double maxMergedSegmentMB = defaults.maxMergedSegmentMB;
+    boolean compoundFiles = defaults.compoundFiles;
+    int forceMergeSegments = defaults.forceMergeSegments;
+    try (BufferedReader reader =
+        Files.newBufferedReader(
+            Paths.get(directory.toString(), IndexProfile.FILENAME), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null && !line.trim().equals("")) {
+        final String[] parts = line.split(IndexProfile.SEPERATOR);
+        if (parts.length != 2) {
+          throw new IOException("Unrecongizable profile file");
+        }
+        final String attribute = parts[0].trim();
+        final String value = parts[1].trim();
+        if (attribute.equals(IndexProfile.NAME)) {
+          name = value;
+        } else if (attribute.equals(IndexProfile.RAM_BUFFER)) {
+          ramBufferMB = Double.parseDouble(value);
+        } else if (attribute.equals(IndexProfile.BUFFERED_DOCS)) {
+          maxBufferedDocs = Integer.parseInt(value);
+        } else if (attribute.equals(IndexProfile.MERGE_THREADS)) {
+          mergeThreads = Integer.parseInt(value);
+        } else if (attribute.equals(IndexProfile.SEGMENTS_PER_TIER)) {
+          segmentsPerTier = Double.parseDouble(value);
+        } else if (attribute.equals(IndexProfile.MAX_MERGED_SEGMENT)) {
+          maxMergedSegmentMB = Double.parseDouble(value);
+        } else if (attribute.equals(IndexProfile.COMPOUND_FILES)) {
+          compoundFiles = Boolean.parseBoolean(value);
+        } else if (attribute.equals(IndexProfile.FORCE_MERGE)) {
+          forceMergeSegments = Integer.parseInt(value);
+        }
+      }
+    } catch (final NumberFormatException e) {
+      throw new IOException("Unrecongizable profile file", e);
+    }
+    return new IndexProfile(
+        name,
+        ramBufferMB,
+        maxBufferedDocs,
+        mergeThreads,
+        segmentsPerTier,
+        maxMergedSegmentMB,
+        compoundFiles,
+        forceMergeSegments);
+  }
+
+  /**
+   * Writes one attribute of the profile.
+   *
+   * @param writer the writer of the profile file
+   * @param attribute the name of the attribute
+   * @param value the value of the attribute
+   * @throws IOException - issue writing the file
+   */
+  private static void write(BufferedWriter writer, String attribute, Object value)
+      throws IOException {
+    writer.write(attribute + IndexProfile.SEPERATOR + value);
+    writer.newLine();
+  }
+
+  /**
+   * Returns the name of the profile.
+   *
+   * @return String the name
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Returns the size of the RAM buffer.
+   *
+   * @return double the size in MB
+   */
+  public double getRamBufferMB() {
+    return this.ramBufferMB;
+  }
+
+  /**
+   * Returns the documents buffered before flushing.
+   *
+   * @return int the number of documents (-1 if only flushing by RAM)
+   */
+  public int getMaxBufferedDocs() {
+    return this.maxBufferedDocs;
+  }
+
+  /**
+   * Returns the number of merge threads.
+   *
+   * @return int the number of threads (-1 if Lucene decides)
+   */
+  public int getMergeThreads() {
+    return this.mergeThreads;
+  }
+
+  /**
+   * Returns the segments allowed per tier.
+   *
+   * @return double the segments per tier
+   */
+  public double getSegmentsPerTier() {
+    return this.segmentsPerTier;
+  }
+
+  /**
+   * Returns the largest segment the merge policy will create.
+   *
+   * @return double the size in MB
+   */
+  public double getMaxMergedSegmentMB() {
+    return this.maxMergedSegmentMB;
+  }
+
+  /**
+   * Returns whether segments are written as compound files.
+   *
+   * @return boolean True if using compound files
+   */
+  public boolean getCompoundFiles() {
+    return this.compoundFiles;
+  }
+
+  /**
+   * Returns the segments to force merge down to once done.
+   *
+   * @return int the number of segments (0 if not force merging)
+   */
+  public int getForceMergeSegments() {
+    return this.forceMergeSegments;
+  }
+
+  @Override
+  public String toString() {
+    return this.name;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package index;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of how many documents have been indexed and which ones failed.
+ *
+ * <p>The counts are shared by all the indexing threads.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class IndexProgress {
+  private final AtomicInteger indexed;
+  private final AtomicInteger failed;
+  private final AtomicInteger skipped;
+  private final List<Path> failures;
+  private final long start;
+
+  /** Class constructor that starts the clock. */
+  public IndexProgress() {
+    this.indexed = new AtomicInteger();
+    this.failed = new AtomicInteger();
+    this.skipped = new AtomicInteger();
+    this.failures = Collections.synchronizedList(new ArrayList<Path>());
+    this.start = System.nanoTime();
+  }
+
+  /** Records a document was indexed. */
+  public void documentIndexed() {
+    this.indexed.incrementAndGet();
+  }
+
+  /**
+   * Records a document could not be indexed.
+   *
+   * @param file the path to the document
+   */
+  public void documentFailed(Path file) {
+    this.failed.incrementAndGet();
+    this.failures.add(file);
+  }
+
+  /** Records a document was skipped since it has not changed since it was indexed. */
+  public void documentSkipped() {
+    this.skipped.incrementAndGet();
+  }
+
+  /**
+   * Returns the number of documents indexed.
+   *
+   * @return int the number of documents indexed
+   */
+  public int getIndexed() {
+    return this.indexed.get();
+  }
+
+  /**
+   * Returns the number of documents that could not be indexed.
+   *
+   * @return int the number of failed documents
+   */
+  public int getFailed() {
+    return this.failed.get();
+  }
+
+  /**
+   * Returns the number of unchanged documents that were skipped.
+   *
+   * @return int the number of skipped documents
+   */
+  public int getSkipped() {
+    return this.skipped.get();
+  }
+
+  /**
+   * Returns the documents that could not be indexed.
+   *
+   * @return List the paths of the failed documents
+   */
+  public List<Path> getFailures() {
+    synchronized (this.failures) {
+      return new ArrayList<Path>(this.failures);
+    }
+  }
+
+  /**
+   * Returns the number of documents indexed per second since the clock started.
+   *
+   * @return double the documents per second
+   */
+  public double documentsPerSecond() {
+    final double seconds = (System.nanoTime() - this.start) / 1e9;
+    return seconds > 0 ? this.getIndexed() / seconds : 0;
+  }
+
+  /**
+   * Returns a one line summary of the progress.
+   *
+   * @return String the summary
+   */
+  @Override
+  public String toString() {
+    return String.format(
+        "Indexed %d documents (%d failed) at %.1f docs/sec, %d unchanged",
+        this.getIndexed(), this.getFailed(), this.documentsPerSecond(), this.getSkipped());
+  }
+}
@@ -30,6 +30,9 @@ public class IndexThreadConsumer implements Runnable {
   private final BlockingQueue<IndexThreadObject> queue;
   private final IndexWriter writer;
   private final ConvertConfig config;
+  private final ConvertWorkerPool pool;
+  private final ConvertCache cache;
+  private final IndexProgress progress;
 
   /**
    * Constructor.
@@ -40,15 +43,71 @@ public class IndexThreadConsumer implements Runnable {
    */
   public IndexThreadConsumer(
       BlockingQueue<IndexThreadObject> queue, IndexWriter writer, ConvertConfig config) {
+    this(queue, writer, config, null);
+  }
+
+  /**
+   * Constructor with a pool of convert workers.
+   *
+   * @param queue a queue holds the files to index
+   * @param writer the index to write to
+   * @param config the config with the features to use
+   * @param pool the convert workers to borrow from (null to start a process per file)
+   */
+  public IndexThreadConsumer(
+      BlockingQueue<IndexThreadObject> queue,
+      IndexWriter writer,
+      ConvertConfig config,
+      ConvertWorkerPool pool) {
+    this(queue, writer, config, pool, null);
+  }
+
+  /**
+   * Constructor with a pool of convert workers and a cache of converted files.
+   *
+   * @param queue a queue holds the files to index
+   * @param writer the index to write to
+   * @param config the config with the features to use
+   * @param pool the convert workers to borrow from (null to start a process per file)
+   * @param cache the cache of converted files to check first (null to always convert)
+   */
+  public IndexThreadConsumer(
+      BlockingQueue<IndexThreadObject> queue,
+      IndexWriter writer,
+      ConvertConfig config,
+      ConvertWorkerPool pool,
+      ConvertCache cache) {
+    this(queue, writer, config, pool, cache, new IndexProgress());
+  }
+
+  /**
+   * Constructor that records its progress in a shared tracker.
+   *
+   * @param queue a queue holds the files to index
+   * @param writer the index to write to
+   * @param config the config with the features to use
+   * @param pool the convert workers to borrow from (null to start a process per file)
+   * @param cache the cache of converted files to check first (null to always convert)
+   * @param progress the tracker of indexed and failed documents
+   */
+  public IndexThreadConsumer(
+      BlockingQueue<IndexThreadObject> queue,
+      IndexWriter writer,
+      ConvertConfig config,
+      ConvertWorkerPool pool,
+      ConvertCache cache,
+      IndexProgress progress) {
     this.queue = queue;
     this.writer = writer;
     this.config = config;
+    this.pool = pool;
+    this.cache = cache;
+    this.progress = progress;
   }
 
   /** The functions called when running the thread. */
   @Override
   public void run() {
-    // TODO Auto-generated method stub
     try {
       IndexThreadObject task;
       boolean run = true;
@@ -60,8 +119,16 @@ public class IndexThreadConsumer implements Runnable {
         } else {
           try {
             IndexFiles.indexDoc(
-                this.writer, task.getFilePath(), task.getLastModified(), this.config);
-          } catch (final IOException ex) {
+                this.writer,
+                task.getFilePath(),
+                task.getLastModified(),
+                this.config,
+                this.pool,
+                this.cache);
+            this.progress.documentIndexed();
+          } catch (final IOException | RuntimeException ex) {
+            // keep consuming so the producer is never left blocked on a full queue
+            this.progress.documentFailed(task.getFilePath());
             System.out.println("Unable to index file:" + task.getFilePath());
             ex.printStackTrace();
           }
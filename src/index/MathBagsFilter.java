@@ -17,7 +17,6 @@
 package index;
 
 import java.io.IOException;
-import java.util.Arrays;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
@@ -51,12 +50,9 @@ public class MathBagsFilter extends TokenFilter {
     if (!this.input.incrementToken()) {
       return false;
     }
-    // get the current token
-    final char[] token = Arrays.copyOfRange(this.termAtt.buffer(), 0, this.termAtt.length());
-    final String stoken = String.valueOf(token);
-    if (stoken.equals(Constants.FORMULA_START_TAG)) {
+    if (TermBuffer.equals(this.termAtt, Constants.FORMULA_START_TAG)) {
       this.openTag = true;
-    } else if (stoken.equals(Constants.FORMULA_END_TAG)) {
+    } else if (TermBuffer.equals(this.termAtt, Constants.FORMULA_END_TAG)) {
       this.openTag = false;
     } else if (this.openTag) {
       // just put them in all the same bag
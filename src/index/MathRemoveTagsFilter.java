@@ -17,7 +17,6 @@
 package index;
 
 import java.io.IOException;
-import java.util.Arrays;
 import org.apache.lucene.analysis.FilteringTokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
@@ -44,11 +43,9 @@ public class MathRemoveTagsFilter extends FilteringTokenFilter {
   @Override
   protected boolean accept() throws IOException {
     // TODO Auto-generated method stub
-    // get the current token
-    final char[] token = Arrays.copyOfRange(this.termAtt.buffer(), 0, this.termAtt.length());
-    final String stoken = String.valueOf(token);
     boolean keep = true;
-    if (stoken.equals(Constants.FORMULA_START_TAG) || stoken.equals(Constants.FORMULA_END_TAG)) {
+    if (TermBuffer.equals(this.termAtt, Constants.FORMULA_START_TAG)
+        || TermBuffer.equals(this.termAtt, Constants.FORMULA_END_TAG)) {
       keep = false;
     }
     return keep;
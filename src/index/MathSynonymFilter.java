@@ -17,7 +17,6 @@
 package index;
 
 import java.io.IOException;
-import java.util.Arrays;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
@@ -51,10 +50,8 @@ public class MathSynonymFilter extends TokenFilter {
     if (!this.input.incrementToken()) {
       return false;
     }
-    // get the current token
-    final char[] token = Arrays.copyOfRange(this.termAtt.buffer(), 0, this.termAtt.length());
-    final String stoken = String.valueOf(token);
-    if (stoken.contains(Constants.WILDCARD) && !stoken.contains(Constants.ESCAPED_WILDCARD)) {
+    if (TermBuffer.indexOf(this.termAtt, Constants.WILDCARD, 0) >= 0
+        && TermBuffer.indexOf(this.termAtt, Constants.ESCAPED_WILDCARD, 0) < 0) {
       this.posIncrAtt.setPositionIncrement(0);
     }
     return this.mathTag;
@@ -16,62 +16,181 @@
 
 package index;
 
+import java.io.IOException;
+import org.apache.lucene.analysis.CharacterUtils;
+import org.apache.lucene.analysis.CharacterUtils.CharacterBuffer;
 import org.apache.lucene.analysis.Tokenizer;
-import org.apache.lucene.analysis.util.CharTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.util.AttributeFactory;
 
 /**
- * A tokenizer that divides text at whitespace characters as defined by {@link
- * Character#isWhitespace(int)}. Note: That definition explicitly excludes the non-breaking space.
- * Adjacent sequences of non-Whitespace characters form tokens.
+ * A tokenizer that splits text into words and math tuples.
+ *
+ * <p>A math tuple is everything between two number signs (<code>#...#</code>) up to any whitespace.
+ * Outside of a math tuple a token is a run of letters, digits, apostrophes and hyphens; everything
+ * else is a delimiter. Tokens are limited to {@link #MAX_TOKEN_LENGTH} characters the same as
+ * Lucene's CharTokenizer.
+ *
+ * <p>Characters are classified using a table of the Basic Multilingual Plane built once, so
+ * scanning a character is a single array lookup.
  *
  * @author Dallas Fraser
  * @since 2017-09-06
  */
-public final class MathTokenizer extends CharTokenizer {
+public final class MathTokenizer extends Tokenizer {
+  /** The longest token before it is split. */
+  public static final int MAX_TOKEN_LENGTH = 255;
+
+  private static final int IO_BUFFER_SIZE = 4096;
+  private static final byte SPACE = 0;
+  private static final byte SYMBOL = 1;
+  private static final byte WORD = 2;
+  private static final byte POUND = 3;
+  private static final byte[] TYPES = MathTokenizer.buildTypes();
+  private final CharTermAttribute termAtt = this.addAttribute(CharTermAttribute.class);
+  private final OffsetAttribute offsetAtt = this.addAttribute(OffsetAttribute.class);
+  private final CharacterBuffer ioBuffer = CharacterUtils.newCharacterBuffer(IO_BUFFER_SIZE);
+  private int offset;
+  private int bufferIndex;
+  private int dataLen;
+  private int finalOffset;
   private boolean mathToken;
 
-  /** Construct a new WhitespaceTokenizer. */
+  /** Construct a new MathTokenizer. */
   public MathTokenizer() {
-    this.mathToken = false;
+    super();
   }
 
   /**
-   * Construct a new WhitespaceTokenizer using a given {@link
-   * org.apache.lucene.util.AttributeFactory}.
+   * Construct a new MathTokenizer using a given {@link org.apache.lucene.util.AttributeFactory}.
    *
    * @param factory the attribute factory to use for this {@link Tokenizer}
    */
   public MathTokenizer(AttributeFactory factory) {
     super(factory);
-    this.mathToken = false;
   }
 
   /**
-   * Collects only characters which do not satisfy
+   * Builds the type of every character in the Basic Multilingual Plane.
    *
-   * <p>{@link Character#isWhitespace(int)}.
+   * @return byte[] the type of each character
    */
-  @Override
-  protected boolean isTokenChar(int c) {
-    final String s = Character.getName(c);
-    if (s != null && s.equals("NUMBER SIGN")) {
-      // reached a math start or end
-      this.mathToken = !this.mathToken;
-      // do not want it part of the token
-      return false;
+  private static byte[] buildTypes() {
+    final byte[] types = new byte[Character.MAX_VALUE + 1];
+    for (int c = 0; c <= Character.MAX_VALUE; c++) {
+      types[c] = MathTokenizer.classify(c);
     }
-    if (this.mathToken) {
-      // in math mode so want to break on next pound
-      // if somehow get to a white space then know it is not our math tuple
-      this.mathToken = !Character.isWhitespace(c);
-      return !Character.isWhitespace(c);
+    return types;
+  }
+
+  /**
+   * Returns the type of a code point.
+   *
+   * @param c the code point
+   * @return byte the type of the code point
+   */
+  private static byte classify(int c) {
+    final byte type;
+    if (c == '#') {
+      // starts or ends a math tuple
+      type = MathTokenizer.POUND;
+    } else if (Character.isWhitespace(c)) {
+      type = MathTokenizer.SPACE;
+    } else if (c == '\'' || c == '-' || Character.isLetterOrDigit(c)) {
+      type = MathTokenizer.WORD;
     } else {
-      // want to break anything that not a character ' or -
-      final boolean special =
-          (s != null && (s.equals("APOSTROPHE") || s.equals("HYPHEN-MINUS"))
-              || Character.isLetterOrDigit(c));
-      return !Character.isWhitespace(c) && special;
+      // only part of a token inside a math tuple
+      type = MathTokenizer.SYMBOL;
     }
+    return type;
+  }
+
+  @Override
+  public boolean incrementToken() throws IOException {
+    this.clearAttributes();
+    int length = 0;
+    int start = -1;
+    int end = -1;
+    char[] buffer = this.termAtt.buffer();
+    while (true) {
+      if (this.bufferIndex >= this.dataLen) {
+        this.offset += this.dataLen;
+        CharacterUtils.fill(this.ioBuffer, this.input);
+        if (this.ioBuffer.getLength() == 0) {
+          // so the next offset += dataLen does not move the offset
+          this.dataLen = 0;
+          if (length > 0) {
+            break;
+          } else {
+            this.finalOffset = this.correctOffset(this.offset);
+            return false;
+          }
+        }
+        this.dataLen = this.ioBuffer.getLength();
+        this.bufferIndex = 0;
+      }
+      final char[] chars = this.ioBuffer.getBuffer();
+      int c = chars[this.bufferIndex];
+      int charCount = 1;
+      byte type;
+      if (Character.isHighSurrogate((char) c)) {
+        c = Character.codePointAt(chars, this.bufferIndex, this.dataLen);
+        charCount = Character.charCount(c);
+        type = MathTokenizer.classify(c);
+      } else {
+        type = MathTokenizer.TYPES[c];
+      }
+      this.bufferIndex += charCount;
+      final boolean tokenChar;
+      if (type == MathTokenizer.POUND) {
+        // the pound is never part of the token
+        this.mathToken = !this.mathToken;
+        tokenChar = false;
+      } else if (this.mathToken) {
+        // whitespace means it was not a math tuple after all
+        tokenChar = type != MathTokenizer.SPACE;
+        this.mathToken = tokenChar;
+      } else {
+        tokenChar = type == MathTokenizer.WORD;
+      }
+      if (tokenChar) {
+        if (length == 0) {
+          start = this.offset + this.bufferIndex - charCount;
+          end = start;
+        } else if (length >= buffer.length - 1) {
+          // make sure a supplementary character fits in the buffer
+          buffer = this.termAtt.resizeBuffer(2 + length);
+        }
+        end += charCount;
+        length += Character.toChars(c, buffer, length);
+        if (length >= MathTokenizer.MAX_TOKEN_LENGTH) {
+          break;
+        }
+      } else if (length > 0) {
+        break;
+      }
+    }
+    this.termAtt.setLength(length);
+    this.finalOffset = this.correctOffset(end);
+    this.offsetAtt.setOffset(this.correctOffset(start), this.finalOffset);
+    return true;
+  }
+
+  @Override
+  public void end() throws IOException {
+    super.end();
+    this.offsetAtt.setOffset(this.finalOffset, this.finalOffset);
+  }
+
+  @Override
+  public void reset() throws IOException {
+    super.reset();
+    this.bufferIndex = 0;
+    this.offset = 0;
+    this.dataLen = 0;
+    this.finalOffset = 0;
+    this.mathToken = false;
+    this.ioBuffer.reset();
   }
 }
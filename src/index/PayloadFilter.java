@@ -17,23 +17,31 @@
 package index;
 
 import java.io.IOException;
-import java.util.Arrays;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
-import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 import utilities.Constants;
+import utilities.Payload;
 
 /**
  * Filter adds a payload to appropriate terms.
  *
+ * <p>The payload is encoded into a buffer reused for every token, so it is only valid until the
+ * next token. A payload of a location and formula size is encoded in the binary form of {@link
+ * Payload}, anything else is kept as text.
+ *
  * @author Dallas Fraser
  * @since 2017-11-06
  */
 public class PayloadFilter extends TokenFilter {
+  // the shared delimiter is a regex, so its escapes are dropped to find it in the term
+  private static final String DELIMITER = Constants.PAYLOAD_DELIMITER.replace("\\", "");
   private final PayloadAttribute payloadAtt;
   private final CharTermAttribute termAtt = this.addAttribute(CharTermAttribute.class);
+  private final BytesRefBuilder payload = new BytesRefBuilder();
+  private final BytesRefBuilder location = new BytesRefBuilder();
 
   /**
    * Class Constructor.
@@ -50,16 +58,44 @@ public class PayloadFilter extends TokenFilter {
     if (!this.input.incrementToken()) {
       return false;
     }
-    // get the current token
-    final char[] token = Arrays.copyOfRange(this.termAtt.buffer(), 0, this.termAtt.length());
-    final String stoken = String.valueOf(token);
-    final String[] parts = stoken.split(Constants.PAYLOAD_DELIMITER);
-    if (parts.length > 1 && parts.length == 2) {
-      this.termAtt.setLength(parts[0].length());
+    final int length = this.termAtt.length();
+    int match = TermBuffer.indexOf(this.termAtt, PayloadFilter.DELIMITER, 0);
+    final int term = match;
+    // split the token on the delimiter, ignoring any trailing empty parts
+    int parts = 0;
+    int kept = 0;
+    int payloadStart = 0;
+    int payloadEnd = 0;
+    int start = 0;
+    while (match >= 0 && kept <= 2) {
+      parts += 1;
+      if (match > start) {
+        kept = parts;
+      }
+      if (parts == 2) {
+        payloadStart = start;
+        payloadEnd = match;
+      }
+      start = match + PayloadFilter.DELIMITER.length();
+      match = TermBuffer.indexOf(this.termAtt, PayloadFilter.DELIMITER, start);
+    }
+    if (term >= 0 && kept <= 2) {
+      // the part after the last delimiter
+      parts += 1;
+      if (length > start) {
+        kept = parts;
+      }
+      if (parts == 2) {
+        payloadStart = start;
+        payloadEnd = length;
+      }
+    }
+    if (kept == 2) {
       // the rest is the payload
-      final BytesRef br = new BytesRef(parts[1]);
-      this.payloadAtt.setPayload(br);
-    } else if (parts.length > 1) {
+      this.encodePayload(payloadStart, payloadEnd);
+      this.payloadAtt.setPayload(this.payload.get());
+      this.termAtt.setLength(term);
+    } else if (kept > 2) {
       // skip
     } else {
       // no payload here
@@ -67,4 +103,45 @@ public class PayloadFilter extends TokenFilter {
     }
     return true;
   }
+
+  /**
+   * Encodes the payload text in the term buffer.
+   *
+   * <p>Text that {@link Payload} can parse as a location and formula size is encoded in its binary
+   * form.
+   *
+   * @param start the index of the first character of the payload
+   * @param end the index after the last character of the payload
+   */
+  private void encodePayload(int start, int end) {
+    final char[] buffer = this.termAtt.buffer();
+    final char separator = Constants.PAYLOAD_SEPARATOR.charAt(0);
+    // like splitting the text, trailing separators are ignored and there must be two parts
+    int last = end;
+    while (last > start && buffer[last - 1] == separator) {
+      last--;
+    }
+    int split = -1;
+    boolean binary = true;
+    for (int i = start; i < last && binary; i++) {
+      if (buffer[i] == separator) {
+        binary = split < 0;
+        split = i;
+      }
+    }
+    // the size has to fit in an int
+    binary = binary && split >= 0 && last - split - 1 <= 9;
+    int size = 0;
+    for (int i = split + 1; i < last && binary; i++) {
+      final char digit = buffer[i];
+      binary = digit >= '0' && digit <= '9';
+      size = size * 10 + (digit - '0');
+    }
+    if (binary) {
+      this.location.copyChars(buffer, start, split - start);
+      Payload.encode(this.payload, this.location.get(), size);
+    } else {
+      this.payload.copyChars(buffer, start, end - start);
+    }
+  }
 }
@@ -17,7 +17,6 @@
 package index;
 
 import java.io.IOException;
-import java.util.Arrays;
 import org.apache.lucene.analysis.FilteringTokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
@@ -43,11 +42,8 @@ public class RemoveMathFilter extends FilteringTokenFilter {
   @Override
   protected boolean accept() throws IOException {
     // TODO Auto-generated method stub
-    // get the current token
-    final char[] token = Arrays.copyOfRange(this.termAtt.buffer(), 0, this.termAtt.length());
-    final String stoken = String.valueOf(token);
     boolean keep = true;
-    if (stoken.startsWith("(") && stoken.endsWith(")")) {
+    if (TermBuffer.isWrapped(this.termAtt, '(', ')')) {
       keep = false;
     }
     return keep;
@@ -17,7 +17,6 @@
 package index;
 
 import java.io.IOException;
-import java.util.Arrays;
 import org.apache.lucene.analysis.FilteringTokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
@@ -42,11 +41,8 @@ public class RemoveTextFilter extends FilteringTokenFilter {
 
   @Override
   protected boolean accept() throws IOException {
-    // get the current token
-    final char[] token = Arrays.copyOfRange(this.termAtt.buffer(), 0, this.termAtt.length());
-    final String stoken = String.valueOf(token);
     boolean keep = false;
-    if (stoken.startsWith("(") && stoken.endsWith(")")) {
+    if (TermBuffer.isWrapped(this.termAtt, '(', ')')) {
       keep = true;
     }
     return keep;
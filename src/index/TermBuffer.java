@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package index;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * Checks the text of a token directly in its term buffer so filters do not copy it to a String.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+final class TermBuffer {
+  private TermBuffer() {}
+
+  /**
+   * Returns whether the token is the given text.
+   *
+   * @param termAtt the term of the token
+   * @param text the text to compare to
+   * @return boolean True if the token equals the text
+   */
+  static boolean equals(CharTermAttribute termAtt, String text) {
+    final int length = termAtt.length();
+    if (length != text.length()) {
+      return false;
+    }
+    final char[] buffer = termAtt.buffer();
+    for (int i = 0; i < length; i++) {
+      if (buffer[i] != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns whether the token is wrapped by the given characters.
+   *
+   * @param termAtt the term of the token
+   * @param prefix the first character
+   * @param suffix the last character
+   * @return boolean True if the token starts with the prefix and ends with the suffix
+   */
+  static boolean isWrapped(CharTermAttribute termAtt, char prefix, char suffix) {
+    final int length = termAtt.length();
+    final char[] buffer = termAtt.buffer();
+    return length > 0 && buffer[0] == prefix && buffer[length - 1] == suffix;
+  }
+
+  /**
+   * Returns the index of the first occurrence of the text in the token at or after an index.
+   *
+   * @param termAtt the term of the token
+   * @param text the text to find
+   * @param from the index to start searching at
+   * @return int the index of the text or -1 if the token does not contain it
+   */
+  static int indexOf(CharTermAttribute termAtt, String text, int from) {
+    final char[] buffer = termAtt.buffer();
+    final int last = termAtt.length() - text.length();
+    for (int i = Math.max(from, 0); i <= last; i++) {
+      int j = 0;
+      while (j < text.length() && buffer[i + j] == text.charAt(j)) {
+        j++;
+      }
+      if (j == text.length()) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package index;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import utilities.Constants;
+
+/**
+ * Selects the tuples of a configuration from a superset conversion.
+ *
+ * <p>A superset conversion (<code>convert.py -superset</code>) outputs every tuple family of each
+ * formula once, tagged by its family. This class turns that output into exactly what converting
+ * the document with the configuration's features would have output, so a document only needs to be
+ * converted once to be indexed under any number of configurations.
+ *
+ * @author Dallas Fraser
+ * @see ConvertCache
+ * @since 2018-03-01
+ */
+public class TupleSelector {
+  /** The commands that ask Tangent for a superset conversion. */
+  public static final String[] SUPERSET_COMMANDS = {"-superset"};
+
+  private static final char SUPERSET_TAG = '\u001e';
+  private static final String SUPERSET_LINE = "\\x1e";
+  private static final String START_TAG = "#(start)#";
+  private static final String END_TAG = "#(end)#";
+  // the shared delimiter is a regex, so its escapes are dropped to write it out
+  private static final String PAYLOAD_DELIMITER = Constants.PAYLOAD_DELIMITER.replace("\\", "");
+  private static final String HEX = "0123456789abcdef";
+  private final boolean compoundSymbols;
+  private final boolean symbolPairs;
+  private final boolean unbounded;
+  private final boolean shortened;
+  private final boolean terminalSymbols;
+  private final boolean eol;
+  private final boolean edgePairs;
+  private final boolean synonyms;
+  private final boolean location;
+  private final boolean expandLocation;
+
+  /**
+   * Class constructor.
+   *
+   * @param config the config with the features to select
+   */
+  public TupleSelector(ConvertConfig config) {
+    this.compoundSymbols = config.getAttribute(ConvertConfig.COMPOUND);
+    this.symbolPairs = config.getAttribute(ConvertConfig.SYMBOLS);
+    this.unbounded = config.getAttribute(ConvertConfig.UNBOUNDED);
+    this.shortened = config.getAttribute(ConvertConfig.SHORTENED);
+    this.terminalSymbols = config.getAttribute(ConvertConfig.TERMINAL);
+    this.eol = config.getAttribute(ConvertConfig.EOL);
+    this.edgePairs = config.getAttribute(ConvertConfig.EDGE);
+    this.synonyms = config.getAttribute(ConvertConfig.SYNONYMS);
+    this.location = config.getAttribute(ConvertConfig.LOCATION);
+    this.expandLocation = config.getAttribute(ConvertConfig.EXPAND_LOCATION);
+  }
+
+  /**
+   * Returns whether a superset conversion can be used for the config.
+   *
+   * @param config the config to check
+   * @return boolean True if the tuples of the config can be selected from a superset conversion
+   */
+  public static boolean supports(ConvertConfig config) {
+    // queries keep their tags so they cannot share a document's conversion
+    return !Arrays.asList(config.toCommands()).contains("-query");
+  }
+
+  /**
+   * Selects the tuples of the config from the output of a superset conversion.
+   *
+   * @param superset the output of the superset conversion
+   * @return String the output of converting with the config
+   */
+  public String select(String superset) {
+    final StringBuilder result = new StringBuilder(superset.length());
+    int start = 0;
+    while (start < superset.length()) {
+      int end = superset.indexOf('\n', start);
+      if (end < 0) {
+        end = superset.length();
+      }
+      final String line = superset.substring(start, end);
+      if (TupleSelector.isSuperset(line)) {
+        result.append(this.selectFormula(line));
+      } else {
+        result.append(line);
+      }
+      if (end < superset.length()) {
+        result.append('\n');
+      }
+      start = end + 1;
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns whether a line of output holds the tagged tuples of a formula.
+   *
+   * @param line the line of output
+   * @return boolean True if the line is a superset formula
+   */
+  private static boolean isSuperset(String line) {
+    return line.length() > 2
+        && line.charAt(0) == 'b'
+        && line.startsWith(TupleSelector.SUPERSET_LINE, 2);
+  }
+
+  /**
+   * Selects the tuples of one formula.
+   *
+   * @param line the line of output holding the tagged tuples
+   * @return String the line of output Tangent would print for the formula
+   */
+  private String selectFormula(String line) {
+    final String tagged = new String(TupleSelector.decode(line), StandardCharsets.UTF_8);
+    final String[] groups = tagged.split(" ");
+    if (groups[0].length() != 1 || groups[0].charAt(0) != TupleSelector.SUPERSET_TAG) {
+      throw new IllegalArgumentException("Not a superset formula: " + line);
+    }
+    final List<String> nodes = new ArrayList<String>();
+    final List<String> locations = new ArrayList<String>();
+    int i = 1;
+    while (i < groups.length) {
+      final char family = groups[i].charAt(0);
+      final String loc = groups[i + 1];
+      i += 2;
+      final int shapes = family == 'u' ? 2 : 1;
+      for (int shape = 0; shape < shapes; shape++) {
+        final int count = Integer.parseInt(groups[i]);
+        i += 1;
+        if (this.keep(family, shape)) {
+          final int kept = this.synonyms ? count : Math.min(count, 1);
+          for (int node = 0; node < kept; node++) {
+            nodes.add(groups[i + node]);
+            locations.add(loc);
+          }
+        }
+        i += count;
+      }
+    }
+    final String formulaSize = Integer.toString(nodes.size());
+    final StringBuilder formula = new StringBuilder(TupleSelector.START_TAG);
+    for (int node = 0; node < nodes.size(); node++) {
+      final String withLocation = nodes.get(node);
+      final String payload =
+          TupleSelector.PAYLOAD_DELIMITER
+              + locations.get(node)
+              + Constants.PAYLOAD_SEPARATOR
+              + formulaSize;
+      if (this.expandLocation) {
+        TupleSelector.appendNode(formula, withLocation, payload);
+        TupleSelector.appendNode(
+            formula, TupleSelector.removeLocation(withLocation, locations.get(node)), payload);
+      } else if (this.location) {
+        TupleSelector.appendNode(formula, withLocation, payload);
+      } else {
+        TupleSelector.appendNode(
+            formula, TupleSelector.removeLocation(withLocation, locations.get(node)), payload);
+      }
+    }
+    formula.append(' ').append(TupleSelector.END_TAG);
+    return TupleSelector.encode(formula.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns whether a shape of a tuple family is used by the config.
+   *
+   * @param family the family of the tuple
+   * @param shape the index of the shape
+   * @return boolean True if the config uses the shape
+   */
+  private boolean keep(char family, int shape) {
+    boolean keep;
+    switch (family) {
+      case 'c':
+        keep = this.compoundSymbols;
+        break;
+      case 's':
+        keep = this.symbolPairs;
+        break;
+      case 'u':
+        keep = this.symbolPairs && this.unbounded && (shape == 0) == this.shortened;
+        break;
+      case 't':
+        keep = this.terminalSymbols;
+        break;
+      case 'e':
+        // a terminal symbol takes the place of the eol symbol
+        keep = this.eol && !this.terminalSymbols;
+        break;
+      case 'p':
+        keep = this.edgePairs;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown tuple family: " + family);
+    }
+    return keep;
+  }
+
+  /**
+   * Appends a formatted node with its payload.
+   *
+   * @param formula the formula being built
+   * @param node the formatted node
+   * @param payload the payload of the node
+   */
+  private static void appendNode(StringBuilder formula, String node, String payload) {
+    formula.append(" #").append(node).append(payload).append('#');
+  }
+
+  /**
+   * Removes the location, the last element, from a formatted node.
+   *
+   * @param node the formatted node
+   * @param loc the location of the node
+   * @return String the formatted node without its location
+   */
+  private static String removeLocation(String node, String loc) {
+    final String suffix = ",'" + loc + "')";
+    if (!node.endsWith(suffix)) {
+      throw new IllegalArgumentException("Node does not end with its location: " + node);
+    }
+    return node.substring(0, node.length() - suffix.length()) + ")";
+  }
+
+  /**
+   * Decodes a line Python printed as a bytes literal.
+   *
+   * @param line the printed line (b'...')
+   * @return byte[] the bytes of the literal
+   */
+  static byte[] decode(String line) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(line.length());
+    for (int i = 2; i < line.length() - 1; i++) {
+      char c = line.charAt(i);
+      if (c == '\\') {
+        i += 1;
+        c = line.charAt(i);
+        if (c == 'x') {
+          bytes.write(Integer.parseInt(line.substring(i + 1, i + 3), 16));
+          i += 2;
+        } else if (c == 't') {
+          bytes.write('\t');
+        } else if (c == 'n') {
+          bytes.write('\n');
+        } else if (c == 'r') {
+          bytes.write('\r');
+        } else {
+          bytes.write(c);
+        }
+      } else {
+        bytes.write(c);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Encodes bytes the same way Python prints a bytes literal.
+   *
+   * @param bytes the bytes to encode
+   * @return String the printed literal (b'...')
+   */
+  static String encode(byte[] bytes) {
+    boolean single = false;
+    boolean dbl = false;
+    for (final byte b : bytes) {
+      single |= b == '\'';
+      dbl |= b == '"';
+    }
+    final char quote = single && !dbl ? '"' : '\'';
+    final StringBuilder literal = new StringBuilder(bytes.length + 3);
+    literal.append('b').append(quote);
+    for (final byte b : bytes) {
+      final int c = b & 0xff;
+      if (c == quote || c == '\\') {
+        literal.append('\\').append((char) c);
+      } else if (c == '\t') {
+        literal.append("\\t");
+      } else if (c == '\n') {
+        literal.append("\\n");
+      } else if (c == '\r') {
+        literal.append("\\r");
+      } else if (c < ' ' || c >= 0x7f) {
+        literal.append("\\x");
+        literal.append(TupleSelector.HEX.charAt(c >> 4)).append(TupleSelector.HEX.charAt(c & 0xf));
+      } else {
+        literal.append((char) c);
+      }
+    }
+    literal.append(quote);
+    return literal.toString();
+  }
+}
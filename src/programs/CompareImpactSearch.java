@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package programs;
+
+import index.ConvertConfig;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import query.MathQuery;
+import query.ParseQueries;
+import search.Search;
+import search.SearchResult;
+import utilities.ProjectLogger;
+
+/**
+ * A program to compare the latency of searching the impact index against searching in document
+ * order.
+ *
+ * <p>Both searches score each term like a term query; the document order search is the term query
+ * with and without pruning and the impact search is the impact ordered query. The index needs to
+ * have been built with its impact index (IndexFiles -impacts).
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class CompareImpactSearch {
+  private static final int WARMUP = 2;
+  private final List<MathQuery> queries;
+  private final int size;
+  private final int rounds;
+
+  /**
+   * Class constructor.
+   *
+   * @param queries the queries to time
+   * @param size the number of documents to return for each query
+   * @param rounds the number of times to run each query
+   */
+  public CompareImpactSearch(List<MathQuery> queries, int size, int rounds) {
+    this.queries = queries;
+    this.size = size;
+    this.rounds = rounds;
+  }
+
+  /**
+   * Times a searcher on every query and prints the latencies.
+   *
+   * @param name the name of the search
+   * @param searcher the searcher to time
+   * @param expected the top documents of each query to compare with (null to not compare)
+   * @return TopDocs[] the top documents of each query
+   * @throws Exception - issue with searching
+   */
+  public TopDocs[] time(String name, Search searcher, TopDocs[] expected) throws Exception {
+    final TopDocs[] results = new TopDocs[this.queries.size()];
+    final long[] times = new long[this.queries.size() * this.rounds];
+    int timed = 0;
+    for (int round = 0; round < CompareImpactSearch.WARMUP + this.rounds; round++) {
+      for (int q = 0; q < this.queries.size(); q++) {
+        final long start = System.nanoTime();
+        final SearchResult result = searcher.searchQuery(this.queries.get(q), this.size);
+        final long end = System.nanoTime();
+        results[q] = result.getResults();
+        if (round >= CompareImpactSearch.WARMUP) {
+          times[timed] = end - start;
+          timed += 1;
+        }
+      }
+    }
+    Arrays.sort(times);
+    long total = 0;
+    for (final long time : times) {
+      total += time;
+    }
+    String overlap = "";
+    if (expected != null) {
+      overlap = String.format(" overlap@%d:%6.3f", this.size, this.overlap(expected, results));
+    }
+    System.out.println(
+        String.format(
+            "%-16s mean:%8.2f ms median:%8.2f ms p95:%8.2f ms%s",
+            name,
+            total / (double) Math.max(1, times.length) / 1e6,
+            CompareImpactSearch.percentile(times, 0.5) / 1e6,
+            CompareImpactSearch.percentile(times, 0.95) / 1e6,
+            overlap));
+    return results;
+  }
+
+  /**
+   * Returns the mean fraction of the expected top documents that were also returned.
+   *
+   * @param expected the expected top documents of each query
+   * @param actual the returned top documents of each query
+   * @return double the mean overlap
+   */
+  public double overlap(TopDocs[] expected, TopDocs[] actual) {
+    double total = 0;
+    int counted = 0;
+    for (int q = 0; q < expected.length; q++) {
+      if (expected[q] == null || actual[q] == null || expected[q].scoreDocs.length == 0) {
+        continue;
+      }
+      final Set<Integer> docs = new HashSet<Integer>();
+      for (final ScoreDoc hit : expected[q].scoreDocs) {
+        docs.add(hit.doc);
+      }
+      int found = 0;
+      for (final ScoreDoc hit : actual[q].scoreDocs) {
+        if (docs.contains(hit.doc)) {
+          found += 1;
+        }
+      }
+      total += found / (double) docs.size();
+      counted += 1;
+    }
+    return counted == 0 ? 1.0 : total / counted;
+  }
+
+  /**
+   * Returns a percentile of sorted times.
+   *
+   * @param times the sorted times
+   * @param percentile the percentile between 0 and 1
+   * @return long the time at the percentile
+   */
+  private static long percentile(long[] times, double percentile) {
+    if (times.length == 0) {
+      return 0;
+    }
+    return times[(int) Math.min(times.length - 1, Math.floor(percentile * times.length))];
+  }
+
+  /**
+   * Returns a copy of the config that uses a query type.
+   *
+   * @param config the config to copy
+   * @param queryType the query type to use
+   * @return ConvertConfig the copy
+   * @throws Exception - the query type is not recognized
+   */
+  private static ConvertConfig withQueryType(ConvertConfig config, String queryType)
+      throws Exception {
+    final ConvertConfig copy = config.copy();
+    copy.setQueryType(queryType);
+    return copy;
+  }
+
+  /**
+   * The main entry to the program.
+   *
+   * @param args - see usage
+   */
+  public static void main(String[] args) {
+    final String usage =
+        "Usage:\tjava programs.CompareImpactSearch [-index dir] [-queries file]"
+            + " [-precision precision] [-rounds rounds] [-log logFile]";
+    if (args.length > 0 && ("-h".equals(args[0]) || "-help".equals(args[0]))) {
+      System.out.println(usage);
+      System.exit(0);
+    }
+    int precision = 100;
+    int rounds = 5;
+    Path index = Paths.get(System.getProperty("user.dir"), "resources", "index", "current");
+    Path queries =
+        Paths.get(
+            System.getProperty("user.dir"), "resources", "query", "NTCIR11-Math-Wikipedia.xml");
+    Path logFile =
+        Paths.get(System.getProperty("user.dir"), "resources", "output", "compareImpacts.log");
+    for (int i = 0; i < args.length; i++) {
+      if ("-index".equals(args[i])) {
+        index = Paths.get(args[i + 1]);
+        i++;
+      } else if ("-queries".equals(args[i])) {
+        queries = Paths.get(args[i + 1]);
+        i++;
+      } else if ("-log".equals(args[i])) {
+        logFile = Paths.get(args[i + 1]);
+        i++;
+      } else if ("-precision".equals(args[i])) {
+        precision = Integer.parseInt(args[i + 1]);
+        i++;
+      } else if ("-rounds".equals(args[i])) {
+        rounds = Integer.parseInt(args[i + 1]);
+        i++;
+      }
+    }
+    try {
+      ProjectLogger.setLevel(Level.OFF);
+      ProjectLogger.setLogFile(logFile);
+      final ConvertConfig config = new ConvertConfig();
+      config.loadConfig(index);
+      final ParseQueries queryLoader = new ParseQueries(queries.toFile(), config);
+      final List<MathQuery> mathQueries = queryLoader.getQueries();
+      queryLoader.deleteFile();
+      final CompareImpactSearch compare = new CompareImpactSearch(mathQueries, precision, rounds);
+      final Search docOrder =
+          new Search(index, CompareImpactSearch.withQueryType(config, ConvertConfig.TERM_QUERY));
+      final Search impactOrder =
+          new Search(index, CompareImpactSearch.withQueryType(config, ConvertConfig.IMPACT_QUERY));
+      if (impactOrder.getImpactSearch() == null) {
+        System.err.println("The index does not have an impact index, index it with -impacts");
+        System.exit(1);
+      }
+      docOrder.setPruning(false);
+      final TopDocs[] exhaustive = compare.time("document order", docOrder, null);
+      docOrder.setPruning(true);
+      compare.time("pruned", docOrder, exhaustive);
+      compare.time("impact order", impactOrder, exhaustive);
+      docOrder.close();
+      impactOrder.close();
+    } catch (final Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -16,6 +16,7 @@
 
 package programs;
 
+import index.ConvertCache;
 import index.ConvertConfig;
 import index.ConvertConfig.ConvertConfigException;
 import index.IndexFiles;
@@ -69,6 +70,7 @@ public class FindOptimal {
   protected Logger logger;
   private final boolean greedy;
   private boolean formulaLevel;
+  private ConvertCache cache;
 
   /**
    * Class Constructor.
@@ -148,6 +150,15 @@ public class FindOptimal {
     this.formulaLevel = true;
   }
 
+  /**
+   * Sets the cache of converted documents shared by the indexes that are created.
+   *
+   * @param cache the cache to use
+   */
+  public void setConvertCache(ConvertCache cache) {
+    this.cache = cache;
+  }
+
   /** Set to evaluate query results at the Document Level and ignore formula number. */
   public void evaulateAtDocumentLevel() {
     this.formulaLevel = false;
@@ -474,6 +485,12 @@ public class FindOptimal {
     }
     // now create directory just like normal
     final IndexFiles idf = new IndexFiles();
+    if (this.cache == null) {
+      // the documents never change between configs so convert them once for every config
+      this.cache = new ConvertCache();
+      this.cache.setSuperset(true);
+    }
+    idf.setConvertCache(this.cache);
     this.logger.log(Level.INFO, "Creating Index: " + name);
     idf.indexDirectory(directoryPath, this.documents, true, config);
     this.logger.log(Level.INFO, "Directory: " + directoryPath);
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package programs;
+
+import java.io.IOException;
+import java.util.Random;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.search.similarities.Similarity.SimScorer;
+import org.apache.lucene.search.similarities.Similarity.SimWeight;
+import org.apache.lucene.store.RAMDirectory;
+import query.AdjustedBM25Similarity;
+import query.BM25PlusSimilarity;
+import query.BatchSimScorer;
+import query.MathBM25Similarity;
+
+/**
+ * A program to time the per hit cost of scoring with the BM25 similarities.
+ *
+ * <p>Scores every posting of a common term in a generated index one call at a time and as one
+ * batch, and prints the nanoseconds per hit of each. Lucene's BM25Similarity is timed as a
+ * reference.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class TimeBatchScoring {
+  private static final String FIELD = "contents";
+  private static final int WARMUP = 20;
+  private static final int ROUNDS = 50;
+  private final DirectoryReader reader;
+  private final Term term;
+  private final int[][] docs;
+  private final int[][] freqs;
+  private final int[] counts;
+
+  /**
+   * Class constructor.
+   *
+   * @param documents the number of documents to generate
+   * @param seed the seed for generating documents
+   * @throws IOException - issue with the generated index
+   */
+  public TimeBatchScoring(int documents, long seed) throws IOException {
+    final RAMDirectory directory = new RAMDirectory();
+    final IndexWriter writer =
+        new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()));
+    final Random random = new Random(seed);
+    for (int i = 0; i < documents; i++) {
+      final StringBuilder text = new StringBuilder();
+      // lengths and frequencies like the tuples of a formula in a Wikipedia page
+      final int length = 1 + random.nextInt(400);
+      for (int j = 0; j < length; j++) {
+        text.append(random.nextInt(8) == 0 ? "a " : "w" + random.nextInt(50) + " ");
+      }
+      final Document doc = new Document();
+      doc.add(new TextField(TimeBatchScoring.FIELD, text.toString(), Field.Store.NO));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    this.reader = DirectoryReader.open(directory);
+    this.term = new Term(TimeBatchScoring.FIELD, "a");
+    final int leaves = this.reader.leaves().size();
+    this.docs = new int[leaves][];
+    this.freqs = new int[leaves][];
+    this.counts = new int[leaves];
+    for (final LeafReaderContext leaf : this.reader.leaves()) {
+      final PostingsEnum postings = leaf.reader().postings(this.term, PostingsEnum.FREQS);
+      this.docs[leaf.ord] = new int[leaf.reader().maxDoc()];
+      this.freqs[leaf.ord] = new int[leaf.reader().maxDoc()];
+      while (postings != null && postings.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+        this.docs[leaf.ord][this.counts[leaf.ord]] = postings.docID();
+        this.freqs[leaf.ord][this.counts[leaf.ord]] = postings.freq();
+        this.counts[leaf.ord] += 1;
+      }
+    }
+  }
+
+  /**
+   * Times a similarity and prints the nanoseconds per hit.
+   *
+   * @param name the name of the similarity
+   * @param similarity the similarity to time
+   * @throws IOException - issue reading the norms
+   */
+  public void time(String name, Similarity similarity) throws IOException {
+    final IndexSearcher searcher = new IndexSearcher(this.reader);
+    final SimWeight weight =
+        similarity.computeWeight(
+            searcher.collectionStatistics(TimeBatchScoring.FIELD),
+            searcher.termStatistics(
+                this.term, TermContext.build(this.reader.getContext(), this.term)));
+    weight.normalize(1f, 1f);
+    long single = 0;
+    long batch = 0;
+    long hits = 0;
+    double check = 0;
+    for (int round = 0; round < TimeBatchScoring.WARMUP + TimeBatchScoring.ROUNDS; round++) {
+      for (final LeafReaderContext leaf : this.reader.leaves()) {
+        final SimScorer scorer = similarity.simScorer(weight, leaf);
+        final int[] leafDocs = this.docs[leaf.ord];
+        final int[] leafFreqs = this.freqs[leaf.ord];
+        final int count = this.counts[leaf.ord];
+        final float[] scores = new float[count];
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+          scores[i] = scorer.score(leafDocs[i], leafFreqs[i]);
+        }
+        final long singleTime = System.nanoTime() - start;
+        check += scores[count / 2];
+        long batchTime = 0;
+        if (scorer instanceof BatchSimScorer) {
+          start = System.nanoTime();
+          ((BatchSimScorer) scorer).score(leafDocs, leafFreqs, count, scores);
+          batchTime = System.nanoTime() - start;
+          check -= scores[count / 2];
+        }
+        if (round >= TimeBatchScoring.WARMUP) {
+          single += singleTime;
+          batch += batchTime;
+          hits += count;
+        }
+      }
+    }
+    System.out.println(
+        String.format(
+            "%-10s single:%6.2f ns/hit batch:%s (check %.1f)",
+            name,
+            single / (double) hits,
+            batch == 0 ? "   n/a" : String.format("%6.2f ns/hit", batch / (double) hits),
+            check));
+  }
+
+  /**
+   * The main entry to the program.
+   *
+   * @param args - see usage
+   */
+  public static void main(String[] args) {
+    final String usage = "Usage:\tjava programs.TimeBatchScoring [-documents N] [-seed seed]";
+    int documents = 200000;
+    long seed = 42;
+    for (int i = 0; i < args.length; i++) {
+      if ("-h".equals(args[i]) || "-help".equals(args[i])) {
+        System.out.println(usage);
+        System.exit(0);
+      } else if ("-documents".equals(args[i])) {
+        documents = Integer.parseInt(args[i + 1]);
+        i++;
+      } else if ("-seed".equals(args[i])) {
+        seed = Long.parseLong(args[i + 1]);
+        i++;
+      }
+    }
+    try {
+      final TimeBatchScoring timer = new TimeBatchScoring(documents, seed);
+      timer.time("BM25", new BM25Similarity());
+      timer.time("Math BM25", new MathBM25Similarity());
+      timer.time("BM25+", new BM25PlusSimilarity());
+      timer.time("Adjusted", new AdjustedBM25Similarity());
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+}
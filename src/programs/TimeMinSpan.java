@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package programs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import query.MathScoreQueryProvider;
+
+/**
+ * A program to time the min span calculation used by the BM25 distance query.
+ *
+ * <p>Compares the original list based algorithm with the heap based one on a few synthetic
+ * distributions of term positions: uniform, clustered (the tuples of a formula share nearby
+ * positions) and skewed (one common term and a few rare ones, like a long Wikipedia page).
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class TimeMinSpan {
+  private static final int WARMUP = 5;
+  private static final int ROUNDS = 10;
+  private final MathScoreQueryProvider provider;
+  private final Random random;
+
+  /**
+   * Class constructor.
+   *
+   * @param seed the seed for generating positions
+   */
+  public TimeMinSpan(long seed) {
+    this.provider = new MathScoreQueryProvider(null, null, null, null, 0, 0);
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Returns the min span using the original algorithm that removes from the front of lists.
+   *
+   * @param positions a list of position lists
+   * @return int the min span
+   */
+  public int listMinSpan(List<List<Integer>> positions) {
+    int start = 0;
+    final int end = this.provider.maxValue(positions);
+    int spanStart;
+    int spanEnd;
+    final List<Integer> spans = new ArrayList<Integer>();
+    if (start == end) {
+      spans.add(Integer.valueOf(0));
+    }
+    while (start < end) {
+      spanStart = this.provider.minMinValue(positions);
+      spanEnd = this.provider.maxMinValue(positions);
+      spans.add(Integer.valueOf(Math.abs(spanEnd - spanStart)));
+      start = spanStart + 1;
+      try {
+        this.provider.removeLowerPositions(positions, start);
+      } catch (final IndexOutOfBoundsException e) {
+        start = end;
+      }
+    }
+    return Collections.min(spans).intValue();
+  }
+
+  /**
+   * Generates the positions of some terms in a document.
+   *
+   * @param distribution uniform, clustered or skewed
+   * @param terms the number of terms
+   * @param length the length of the document
+   * @return int[][] the sorted positions of each term
+   */
+  public int[][] generate(String distribution, int terms, int length) {
+    final int[][] positions = new int[terms][];
+    for (int t = 0; t < terms; t++) {
+      int count;
+      if (distribution.equals("skewed")) {
+        count = t == 0 ? length / 4 : 1 + this.random.nextInt(4);
+      } else {
+        count = 1 + this.random.nextInt(Math.max(1, length / (4 * terms)));
+      }
+      final int[] values = new int[count];
+      for (int i = 0; i < count; i++) {
+        if (distribution.equals("clustered")) {
+          // formulas are a few hundred positions apart and their tuples are close together
+          final int formula = this.random.nextInt(Math.max(1, length / 200));
+          values[i] = Math.min(length - 1, formula * 200 + this.random.nextInt(20));
+        } else {
+          values[i] = this.random.nextInt(length);
+        }
+      }
+      Arrays.sort(values);
+      positions[t] = values;
+    }
+    return positions;
+  }
+
+  /**
+   * Times both algorithms on documents of a distribution and prints the results.
+   *
+   * @param distribution uniform, clustered or skewed
+   * @param terms the number of query terms
+   * @param length the length of the documents
+   * @param documents the number of documents
+   */
+  public void time(String distribution, int terms, int length, int documents) {
+    final int[][][] docs = new int[documents][][];
+    final int[][] lengths = new int[documents][];
+    for (int d = 0; d < documents; d++) {
+      docs[d] = this.generate(distribution, terms, length);
+      lengths[d] = new int[terms];
+      for (int t = 0; t < terms; t++) {
+        lengths[d][t] = docs[d][t].length;
+      }
+    }
+    long listTime = 0;
+    long heapTime = 0;
+    long check = 0;
+    for (int round = 0; round < TimeMinSpan.WARMUP + TimeMinSpan.ROUNDS; round++) {
+      // the list algorithm consumes its lists so they are built outside the timing
+      final List<List<List<Integer>>> lists = new ArrayList<List<List<Integer>>>();
+      for (int d = 0; d < documents; d++) {
+        lists.add(TimeMinSpan.toLists(docs[d]));
+      }
+      long start = System.nanoTime();
+      for (int d = 0; d < documents; d++) {
+        check += this.listMinSpan(lists.get(d));
+      }
+      final long listRound = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int d = 0; d < documents; d++) {
+        check -= this.provider.minSpanCalc(docs[d], lengths[d]);
+      }
+      final long heapRound = System.nanoTime() - start;
+      if (round >= TimeMinSpan.WARMUP) {
+        listTime += listRound;
+        heapTime += heapRound;
+      }
+    }
+    if (check != 0) {
+      throw new IllegalStateException("The algorithms gave different spans");
+    }
+    final double calls = (double) documents * TimeMinSpan.ROUNDS;
+    System.out.println(
+        String.format(
+            "%-9s terms:%3d length:%6d list:%10.0f ns/doc heap:%8.0f ns/doc speedup:%6.1fx",
+            distribution,
+            terms,
+            length,
+            listTime / calls,
+            heapTime / calls,
+            (double) listTime / heapTime));
+  }
+
+  /**
+   * Returns the positions as lists for the original algorithm.
+   *
+   * @param positions the sorted positions of each term
+   * @return List the position lists
+   */
+  private static List<List<Integer>> toLists(int[][] positions) {
+    final List<List<Integer>> lists = new ArrayList<List<Integer>>();
+    for (final int[] values : positions) {
+      final List<Integer> list = new ArrayList<Integer>();
+      for (final int value : values) {
+        list.add(Integer.valueOf(value));
+      }
+      lists.add(list);
+    }
+    return lists;
+  }
+
+  /**
+   * The main entry to the program.
+   *
+   * @param args - see usage
+   */
+  public static void main(String[] args) {
+    final String usage = "Usage:\tjava programs.TimeMinSpan [-documents N] [-seed seed]";
+    int documents = 2000;
+    long seed = 42;
+    for (int i = 0; i < args.length; i++) {
+      if ("-h".equals(args[i]) || "-help".equals(args[i])) {
+        System.out.println(usage);
+        System.exit(0);
+      } else if ("-documents".equals(args[i])) {
+        documents = Integer.parseInt(args[i + 1]);
+        i++;
+      } else if ("-seed".equals(args[i])) {
+        seed = Long.parseLong(args[i + 1]);
+        i++;
+      }
+    }
+    final TimeMinSpan timer = new TimeMinSpan(seed);
+    for (final String distribution : new String[] {"uniform", "clustered", "skewed"}) {
+      for (final int terms : new int[] {4, 16, 64}) {
+        for (final int length : new int[] {500, 5000, 20000}) {
+          timer.time(distribution, terms, length, Math.max(1, documents * 500 / length));
+        }
+      }
+    }
+  }
+}
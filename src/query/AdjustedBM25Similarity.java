@@ -238,11 +238,12 @@ public class AdjustedBM25Similarity extends Similarity {
     return new BM25DocScorer(bm25stats, context.reader().getNormValues(bm25stats.field));
   }
 
-  private class BM25DocScorer extends SimScorer {
+  private class BM25DocScorer extends BatchSimScorer {
     private final BM25Stats stats;
     private final float weightValue; // boost * idf * (k1 + 1)
     private final NumericDocValues norms;
     private final float[] cache;
+    private float[] table; // the score of each norm, made on the first batch
 
     BM25DocScorer(BM25Stats stats, NumericDocValues norms) throws IOException {
       this.stats = stats;
@@ -261,6 +262,28 @@ public class AdjustedBM25Similarity extends Similarity {
       return this.weightValue * 1 / (1 + norm);
     }
 
+    @Override
+    public void score(int[] docs, int[] freqs, int count, float[] scores) {
+      final int[] norms = this.loadNorms(this.norms, docs, count);
+      if (norms == null) {
+        // the frequency does not change the score
+        final float score = this.score(-1, 1f);
+        for (int i = 0; i < count; i++) {
+          scores[i] = score;
+        }
+        return;
+      }
+      if (this.table == null) {
+        this.table = new float[BatchSimScorer.NORMS];
+        for (int norm = 0; norm < BatchSimScorer.NORMS; norm++) {
+          this.table[norm] = this.weightValue * 1 / (1 + this.cache[norm]);
+        }
+      }
+      for (int i = 0; i < count; i++) {
+        scores[i] = this.table[norms[i]];
+      }
+    }
+
     @Override
     public Explanation explain(int doc, Explanation freq) {
       return AdjustedBM25Similarity.this.explainScore(doc, freq, this.stats, this.norms);
@@ -20,6 +20,8 @@ package query;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.lucene.index.FieldInvertState;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NumericDocValues;
@@ -36,9 +38,16 @@ import org.apache.lucene.util.SmallFloat;
  * <b>RE</b>trieval <b>C</b>onference (TREC 1994). Gaithersburg, USA, November 1994.
  */
 public class BM25PlusSimilarity extends Similarity {
+  /** The frequencies below this are scored from a table of every norm value. */
+  public static final int TABLE_FREQS = 32;
+
+  /** The number of tables kept before they are all dropped (one per average field length). */
+  private static final int MAX_TABLES = 64;
+
   private final float k1;
   private final float bvalue;
   private final float delta;
+  private final Map<Float, float[]> tables = new ConcurrentHashMap<Float, float[]>();
 
   /**
    * BM25 with the supplied parameter values.
@@ -49,6 +58,23 @@ public class BM25PlusSimilarity extends Similarity {
    *     within the range {@code [0..1]}
    */
   public BM25PlusSimilarity(float k1, float b) {
+    this(k1, b, 1f);
+  }
+
+  /**
+   * BM25+ with the supplied parameter values.
+   *
+   * @param k1 Controls non-linear term frequency normalization (saturation).
+   * @param b Controls to what degree document length normalizes tf values.
+   * @param delta the lower bound added to the term frequency normalization (0 for plain BM25)
+   * @throws IllegalArgumentException if {@code k1} or {@code delta} is infinite or negative, or if
+   *     {@code b} is not within the range {@code [0..1]}
+   */
+  public BM25PlusSimilarity(float k1, float b, float delta) {
+    if (Float.isFinite(delta) == false || delta < 0) {
+      throw new IllegalArgumentException(
+          "illegal delta value: " + delta + ", must be a non-negative finite value");
+    }
     if (Float.isFinite(k1) == false || k1 < 0) {
       throw new IllegalArgumentException(
           "illegal k1 value: " + k1 + ", must be a non-negative finite value");
@@ -58,7 +84,7 @@ public class BM25PlusSimilarity extends Similarity {
     }
     this.k1 = k1;
     this.bvalue = b;
-    this.delta = 1f;
+    this.delta = delta;
   }
 
   /**
@@ -232,7 +258,49 @@ public class BM25PlusSimilarity extends Similarity {
       cache[i] =
           this.k1 * ((1 - this.bvalue) + this.bvalue * this.decodeNormValue((byte) i) / avgdl);
     }
-    return new BM25Stats(collectionStats.field(), idf, avgdl, cache);
+    // plain BM25 is scored in Lucene's order of operations instead of from the table
+    final float[] table = this.delta == 0f ? null : this.tfNormTable(avgdl, cache);
+    return new BM25Stats(collectionStats.field(), idf, avgdl, cache, table);
+  }
+
+  /**
+   * Returns the table of the term frequency normalization plus delta for the small frequencies.
+   *
+   * <p>Entry {@code freq * 256 + norm} is the value for the frequency and norm value. The table
+   * only depends on the average field length, so it is shared by every term of a field.
+   *
+   * @param avgdl the average field length
+   * @param cache the freq-independent part of each norm value
+   * @return float[] the table
+   */
+  private float[] tfNormTable(float avgdl, float[] cache) {
+    final Float key = Float.valueOf(avgdl);
+    float[] table = this.tables.get(key);
+    if (table == null) {
+      table = new float[BM25PlusSimilarity.TABLE_FREQS * BatchSimScorer.NORMS];
+      for (int freq = 0; freq < BM25PlusSimilarity.TABLE_FREQS; freq++) {
+        for (int norm = 0; norm < BatchSimScorer.NORMS; norm++) {
+          table[freq * BatchSimScorer.NORMS + norm] = this.tfNorm(freq, cache[norm]);
+        }
+      }
+      if (this.tables.size() >= BM25PlusSimilarity.MAX_TABLES) {
+        // the average length changes as documents are added so old tables are not needed
+        this.tables.clear();
+      }
+      this.tables.put(key, table);
+    }
+    return table;
+  }
+
+  /**
+   * Returns the term frequency normalization plus delta.
+   *
+   * @param freq the frequency of the term
+   * @param norm the freq-independent part of the document's norm
+   * @return float the normalized frequency
+   */
+  private float tfNorm(float freq, float norm) {
+    return (freq * (this.k1 + 1)) / (freq + norm) + this.delta;
   }
 
   @Override
@@ -241,29 +309,67 @@ public class BM25PlusSimilarity extends Similarity {
     return new BM25DocScorer(bm25stats, context.reader().getNormValues(bm25stats.field));
   }
 
-  private class BM25DocScorer extends SimScorer {
+  private class BM25DocScorer extends BatchSimScorer {
     private final BM25Stats stats;
-    private final float weightValue; // boost * idf * (k1 + 1)
+    private final float weightValue; // boost * idf
+    private final float bm25Weight; // boost * idf * (k1 + 1)
     private final NumericDocValues norms;
     private final float[] cache;
+    private final float[] table;
 
     BM25DocScorer(BM25Stats stats, NumericDocValues norms) throws IOException {
       this.stats = stats;
       this.weightValue = stats.weight;
+      this.bm25Weight = stats.weight * (BM25PlusSimilarity.this.k1 + 1);
       this.cache = stats.cache;
+      this.table = stats.table;
       this.norms = norms;
     }
 
     @Override
     public float score(int doc, float freq) {
+      if (this.table == null) {
+        // the same operations as Lucene's BM25Similarity so the scores are exactly the same
+        final float norm =
+            this.norms == null
+                ? BM25PlusSimilarity.this.k1
+                : this.cache[(byte) this.norms.get(doc) & 0xFF];
+        return this.bm25Weight * freq / (freq + norm);
+      }
       // if there are no norms, we act as if b=0
-      final float norm =
-          this.norms == null
-              ? BM25PlusSimilarity.this.k1
-              : this.cache[(byte) this.norms.get(doc) & 0xFF];
-      return this.weightValue
-          * ((freq * (BM25PlusSimilarity.this.k1 + 1)) / (freq + norm)
-              + BM25PlusSimilarity.this.delta);
+      if (this.norms == null) {
+        return this.weightValue * BM25PlusSimilarity.this.tfNorm(freq, BM25PlusSimilarity.this.k1);
+      }
+      final int norm = (byte) this.norms.get(doc) & 0xFF;
+      if (freq < BM25PlusSimilarity.TABLE_FREQS && freq == (int) freq) {
+        return this.weightValue * this.table[(int) freq * BatchSimScorer.NORMS + norm];
+      }
+      return this.weightValue * BM25PlusSimilarity.this.tfNorm(freq, this.cache[norm]);
+    }
+
+    @Override
+    public void score(int[] docs, int[] freqs, int count, float[] scores) {
+      final int[] norms = this.loadNorms(this.norms, docs, count);
+      if (norms == null) {
+        for (int i = 0; i < count; i++) {
+          scores[i] = this.score(docs[i], freqs[i]);
+        }
+        return;
+      }
+      if (this.table == null) {
+        for (int i = 0; i < count; i++) {
+          final float freq = freqs[i];
+          scores[i] = this.bm25Weight * freq / (freq + this.cache[norms[i]]);
+        }
+        return;
+      }
+      for (int i = 0; i < count; i++) {
+        final int freq = freqs[i];
+        scores[i] =
+            freq < BM25PlusSimilarity.TABLE_FREQS
+                ? this.weightValue * this.table[freq * BatchSimScorer.NORMS + norms[i]]
+                : this.weightValue * BM25PlusSimilarity.this.tfNorm(freq, this.cache[norms[i]]);
+      }
     }
 
     @Override
@@ -303,11 +409,18 @@ public class BM25PlusSimilarity extends Similarity {
     /** pre-computed norm[256] with k1 * ((1 - b) + b * dl / avgdl). */
     private final float[] cache;
 
-    BM25Stats(String field, Explanation idf, float avgdl, float[] cache) {
+    /**
+     * pre-computed tfNorm + delta of the small freqs for each norm (shared by the field, null for
+     * plain BM25).
+     */
+    private final float[] table;
+
+    BM25Stats(String field, Explanation idf, float avgdl, float[] cache, float[] table) {
       this.field = field;
       this.idf = idf;
       this.avgdl = avgdl;
       this.cache = cache;
+      this.table = table;
       this.normalize(1f, 1f);
     }
 
@@ -370,6 +483,9 @@ public class BM25PlusSimilarity extends Similarity {
 
   @Override
   public String toString() {
+    if (this.delta != 0f) {
+      return "BM25+(k1=" + this.k1 + ",b=" + this.bvalue + ",delta=" + this.delta + ")";
+    }
     return "BM25(k1=" + this.k1 + ",b=" + this.bvalue + ")";
   }
 
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query;
+
+import index.ConvertConfig;
+import java.io.IOException;
+import java.util.List;
+import org.apache.lucene.index.LeafReaderContext;
+
+/**
+ * Scores documents by BM25 plus the proximity of each pair of query terms (BM25TP).
+ *
+ * <p>Used by {@link MathScoreQuery} for {@link ConvertConfig#BM25TP_QUERY}.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class BM25TPScoreProvider extends MathScoreQueryProvider {
+  /**
+   * Class constructor.
+   *
+   * @param field the field to search
+   * @param context the context one is searching
+   * @param terms the terms of the query
+   * @param config the config file to use when querying
+   * @param avgDl - average document length
+   * @param numDoc - the number of documents
+   */
+  public BM25TPScoreProvider(
+      String field,
+      LeafReaderContext context,
+      List<TermCountPair> terms,
+      ConvertConfig config,
+      float avgDl,
+      float numDoc) {
+    super(field, context, terms, config, avgDl, numDoc);
+  }
+
+  @Override
+  public float customScore(int doc, float subQueryScore, float[] valSrcScores) throws IOException {
+    return this.bm25tpCustomScore(doc, subQueryScore, valSrcScores);
+  }
+}
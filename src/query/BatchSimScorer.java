@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query;
+
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.similarities.Similarity.SimScorer;
+
+/**
+ * A scorer of a leaf that can also score many documents of a term at once.
+ *
+ * <p>Scoring a batch looks up the norm of every document first and then scores them all in one
+ * loop over arrays, so the loop has no calls and scores from a table instead of dividing.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public abstract class BatchSimScorer extends SimScorer {
+  /** The number of norm values. */
+  public static final int NORMS = 256;
+
+  /** The norm of each document in the batch. */
+  private int[] normBuffer = new int[0];
+
+  /**
+   * Scores documents of the leaf.
+   *
+   * @param docs the documents
+   * @param freqs the frequency of the term in each document
+   * @param count the number of documents to score
+   * @param scores where the score of each document is written
+   */
+  public abstract void score(int[] docs, int[] freqs, int count, float[] scores);
+
+  /**
+   * Returns the norm of each document in a batch.
+   *
+   * @param norms the norms of the leaf (null if the field omits norms)
+   * @param docs the documents
+   * @param count the number of documents
+   * @return int[] the norm of each document or null if the field omits norms
+   */
+  protected int[] loadNorms(NumericDocValues norms, int[] docs, int count) {
+    if (norms == null) {
+      return null;
+    }
+    if (this.normBuffer.length < count) {
+      this.normBuffer = new int[Math.max(count, docs.length)];
+    }
+    for (int i = 0; i < count; i++) {
+      this.normBuffer[i] = (byte) norms.get(docs[i]) & 0xFF;
+    }
+    return this.normBuffer;
+  }
+}
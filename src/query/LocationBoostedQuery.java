@@ -16,6 +16,7 @@
 package query;
 
 import java.io.IOException;
+import java.util.List;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.PostingsEnum;
@@ -26,7 +27,6 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.util.BytesRef;
 import utilities.Constants;
 import utilities.Payload;
-import utilities.Payload.PayloadException;
 
 /**
  * A query that boost a term if it matches the location of the query term.
@@ -111,6 +111,8 @@ public class LocationBoostedQuery extends CustomScoreQuery {
   /**
    * A Private Class for the Location Boosted Query that calculates the score.
    *
+   * <p>The postings of the term are opened once per leaf and advanced as documents are scored.
+   *
    * @author Dallas Fraser
    * @since 2017-11-14
    */
@@ -119,6 +121,11 @@ public class LocationBoostedQuery extends CustomScoreQuery {
     private final TermCountPair term;
     private final float boost;
     private final String field;
+    // the UTF-8 bytes of the locations of the query term
+    private final BytesRef[] locations;
+    private PostingsEnum postings;
+    private int last = -1;
+
     /**
      * Class Constructor.
      *
@@ -133,6 +140,34 @@ public class LocationBoostedQuery extends CustomScoreQuery {
       this.term = term;
       this.boost = boost;
       this.field = field;
+      final List<String> locations = term.payloadLocations();
+      this.locations = new BytesRef[locations.size()];
+      for (int i = 0; i < this.locations.length; i++) {
+        this.locations[i] = new BytesRef(locations.get(i));
+      }
+    }
+
+    /**
+     * Returns the postings of the term positioned at or after the document.
+     *
+     * @param doc the doc id
+     * @return PostingsEnum the postings or null if the term is not in this leaf
+     * @throws IOException - issue with reading the postings
+     */
+    private PostingsEnum postings(int doc) throws IOException {
+      if (doc < this.last || this.last < 0) {
+        // scoring went back so start the postings again
+        final LeafReader reader = this.context.reader();
+        this.postings =
+            reader == null
+                ? null
+                : reader.postings(new Term(this.field, this.term.getTerm()), PostingsEnum.PAYLOADS);
+      }
+      this.last = doc;
+      if (this.postings != null && this.postings.docID() < doc) {
+        this.postings.advance(doc);
+      }
+      return this.postings;
     }
 
     /**
@@ -140,44 +175,45 @@ public class LocationBoostedQuery extends CustomScoreQuery {
      *
      * @param doc the doc id
      * @return float the factor to boost by
-     * @throws IOException
+     * @throws IOException - issue with reading the postings
      */
     public float determineBoost(int doc) throws IOException {
       float boost = 1f;
-      final LeafReader reader = this.context.reader();
-      System.out.println("Has payloads:" + reader.getFieldInfos().hasPayloads());
+      if (this.locations.length == 0) {
+        // the query term has no location to match
+        return boost;
+      }
+      final PostingsEnum posting = this.postings(doc);
       // loop through each location of the term and boost if location matches the payload
-      if (reader != null) {
-        final PostingsEnum posting =
-            reader.postings(new Term(this.field, this.term.getTerm()), PostingsEnum.POSITIONS);
-        System.out.println("Term: " + this.term.getTerm());
-        if (posting != null) {
-          // move to the document currently looking at
-          posting.advance(doc);
-          int count = 0;
-          while (count < posting.freq()) {
-            final BytesRef load = posting.getPayload();
-            System.out.println(posting);
-            System.out.println(posting.getClass());
-            System.out.println(posting.attributes());
-            System.out.println("Load: " + load);
-            // if the location matches in the term location than boos the term by the boost factor
-            try {
-              if (load != null && this.term.containLocation(new Payload(load))) {
-                boost = boost * this.boost;
-              }
-            } catch (final PayloadException e) {
-              // do not care too much, the payload is unrecognized
-              // this is not going to change the  boost factor
-            }
-            posting.nextPosition();
-            count += 1;
+      if (posting != null && posting.docID() == doc) {
+        final int freq = posting.freq();
+        for (int count = 0; count < freq; count++) {
+          posting.nextPosition();
+          final BytesRef load = posting.getPayload();
+          // if the location matches in the term location than boost the term by the boost factor
+          if (load != null && this.matches(load)) {
+            boost = boost * this.boost;
           }
         }
       }
       return boost;
     }
 
+    /**
+     * Returns whether the payload has one of the locations of the query term.
+     *
+     * @param load the payload of the position
+     * @return boolean True if the location matches
+     */
+    private boolean matches(BytesRef load) {
+      for (final BytesRef location : this.locations) {
+        if (Payload.hasLocation(load, location)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     /**
      * Returns the custom score.
      *
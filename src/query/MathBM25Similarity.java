@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query;
+
+/**
+ * BM25 scored the same as Lucene's BM25Similarity but with the batch scorer of BM25+.
+ *
+ * <p>Lucene's BM25Similarity does not allow its scorer to be replaced, so this is BM25+ without
+ * the delta and with Lucene's idf. It is used for the math and text fields.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class MathBM25Similarity extends BM25PlusSimilarity {
+  /**
+   * BM25 with the supplied parameter values.
+   *
+   * @param k1 Controls non-linear term frequency normalization (saturation).
+   * @param b Controls to what degree document length normalizes tf values.
+   */
+  public MathBM25Similarity(float k1, float b) {
+    super(k1, b, 0f);
+  }
+
+  /** BM25 with k1 = 1.2 and b = 0.75. */
+  public MathBM25Similarity() {
+    this(1.2f, 0.75f);
+  }
+
+  /** Implemented as <code>log(1 + (docCount - docFreq + 0.5)/(docFreq + 0.5))</code>. */
+  @Override
+  protected float idf(long docFreq, long docCount) {
+    return (float) Math.log(1 + (docCount - docFreq + 0.5D) / (docFreq + 0.5D));
+  }
+}
@@ -0,0 +1,701 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.search.similarities.Similarity.SimScorer;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+
+/**
+ * A disjunction of term queries that only scores the documents that could be in the top k.
+ *
+ * <p>This replaces a {@link BooleanQuery} of SHOULD {@link TermQuery} and {@link MathTermQuery}
+ * clauses (optionally boosted) and scores documents the same way. Each term gets an upper bound of
+ * its score in a segment, from its largest possible frequency (capped by the count of a {@link
+ * MathTermQuery}) in the document with the most favourable length. Using the MaxScore method, the
+ * terms whose bounds sum to less than the k-th best score so far can not make a document
+ * competitive on their own, so only the documents of the other terms are visited and a document is
+ * dropped as soon as its bound falls below the k-th best score.
+ *
+ * <p>The top k is the same as scoring every document, but documents that could not be in it are not
+ * matched, so the total hits are only the documents that were scored. The bounds assume the score
+ * of a term only depends on the document through its norm and does not decrease as the frequency
+ * grows, which holds for the BM25 and TF-IDF similarities.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class MathDisjunctionQuery extends Query {
+  // more distinct norms than this in a segment and the segment is scored without pruning
+  private static final int MAX_NORMS = 256;
+  // allows for the rounding of float scores summed in a different order
+  private static final double SLACK = 1.0001d;
+  // a document for each distinct norm of a field in a segment, shared by queries
+  private static final Map<Object, Map<String, int[]>> NORM_DOCS =
+      Collections.synchronizedMap(new WeakHashMap<Object, Map<String, int[]>>());
+  private final BooleanQuery original;
+  private final Term[] terms;
+  private final int[] termCounts;
+  private final float[] boosts;
+  private final int k;
+
+  /**
+   * Class constructor.
+   *
+   * @param original the boolean query being replaced
+   * @param terms the term of each clause
+   * @param termCounts the frequency cap of each clause (0 for none)
+   * @param boosts the boost of each clause
+   * @param k the number of top documents needed
+   */
+  private MathDisjunctionQuery(
+      BooleanQuery original, Term[] terms, int[] termCounts, float[] boosts, int k) {
+    this.original = original;
+    this.terms = terms;
+    this.termCounts = termCounts;
+    this.boosts = boosts;
+    this.k = k;
+  }
+
+  /**
+   * Returns a query that prunes the documents that can not be in the top k when the query is a
+   * disjunction of terms, otherwise the query itself.
+   *
+   * @param query the query to search with
+   * @param k the number of top documents needed
+   * @return Query the query to search with
+   */
+  public static Query create(Query query, int k) {
+    if (!(query instanceof BooleanQuery) || k <= 0) {
+      return query;
+    }
+    final BooleanQuery bq = (BooleanQuery) query;
+    final List<BooleanClause> clauses = bq.clauses();
+    if (bq.getMinimumNumberShouldMatch() > 0 || clauses.size() < 2) {
+      return query;
+    }
+    final Term[] terms = new Term[clauses.size()];
+    final int[] termCounts = new int[clauses.size()];
+    final float[] boosts = new float[clauses.size()];
+    for (int i = 0; i < clauses.size(); i++) {
+      final BooleanClause clause = clauses.get(i);
+      if (clause.getOccur() != BooleanClause.Occur.SHOULD) {
+        return query;
+      }
+      Query inner = clause.getQuery();
+      float boost = 1f;
+      while (inner instanceof BoostQuery) {
+        boost *= ((BoostQuery) inner).getBoost();
+        inner = ((BoostQuery) inner).getQuery();
+      }
+      if (inner instanceof MathTermQuery) {
+        terms[i] = ((MathTermQuery) inner).getTerm();
+        termCounts[i] = ((MathTermQuery) inner).getTermCount();
+      } else if (inner instanceof TermQuery) {
+        terms[i] = ((TermQuery) inner).getTerm();
+      } else {
+        return query;
+      }
+      boosts[i] = boost;
+    }
+    return new MathDisjunctionQuery(bq, terms, termCounts, boosts, k);
+  }
+
+  @Override
+  public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
+    if (!needsScores) {
+      // nothing to prune by
+      return this.original.createWeight(searcher, needsScores);
+    }
+    return new MathDisjunctionWeight(searcher);
+  }
+
+  /**
+   * Returns a document for each distinct norm of the field in the segment.
+   *
+   * @param reader the reader of the segment
+   * @param field the field of the norms
+   * @return int[] the documents or null if there are too many distinct norms
+   * @throws IOException - issue with reading the norms
+   */
+  private static int[] normDocs(LeafReader reader, String field) throws IOException {
+    Map<String, int[]> fields = MathDisjunctionQuery.NORM_DOCS.get(reader.getCoreCacheKey());
+    if (fields == null) {
+      fields = Collections.synchronizedMap(new HashMap<String, int[]>());
+      MathDisjunctionQuery.NORM_DOCS.put(reader.getCoreCacheKey(), fields);
+    }
+    if (fields.containsKey(field)) {
+      return fields.get(field);
+    }
+    int[] docs;
+    final NumericDocValues norms = reader.getNormValues(field);
+    if (norms == null) {
+      // every document scores the same for a frequency
+      docs = new int[] {0};
+    } else {
+      final Map<Long, Integer> seen = new HashMap<Long, Integer>();
+      final int maxDoc = reader.maxDoc();
+      for (int doc = 0; doc < maxDoc && seen.size() <= MathDisjunctionQuery.MAX_NORMS; doc++) {
+        final Long norm = Long.valueOf(norms.get(doc));
+        if (!seen.containsKey(norm)) {
+          seen.put(norm, Integer.valueOf(doc));
+        }
+      }
+      if (seen.size() > MathDisjunctionQuery.MAX_NORMS) {
+        docs = null;
+      } else {
+        docs = new int[seen.size()];
+        int i = 0;
+        for (final Integer doc : seen.values()) {
+          docs[i] = doc.intValue();
+          i++;
+        }
+      }
+    }
+    fields.put(field, docs);
+    return docs;
+  }
+
+  /**
+   * The weight of the disjunction which also keeps the k best scores found so far.
+   *
+   * @author Dallas Fraser
+   * @since 2018-03-01
+   */
+  private final class MathDisjunctionWeight extends Weight {
+    private final Similarity similarity;
+    private final Similarity.SimWeight[] stats;
+    private final TermContext[] states;
+    private final boolean disableCoord;
+    // a min heap of the k best scores
+    private float[] top = new float[16];
+    private int size;
+    private volatile float threshold = Float.NEGATIVE_INFINITY;
+
+    /**
+     * Class constructor.
+     *
+     * @param searcher the searcher the query is for
+     * @throws IOException - issue with reading the term statistics
+     */
+    MathDisjunctionWeight(IndexSearcher searcher) throws IOException {
+      super(MathDisjunctionQuery.this);
+      final Term[] terms = MathDisjunctionQuery.this.terms;
+      this.similarity = searcher.getSimilarity(true);
+      this.disableCoord = MathDisjunctionQuery.this.original.isCoordDisabled();
+      this.stats = new Similarity.SimWeight[terms.length];
+      this.states = new TermContext[terms.length];
+      for (int i = 0; i < terms.length; i++) {
+        this.states[i] = TermContext.build(searcher.getTopReaderContext(), terms[i]);
+        this.stats[i] =
+            this.similarity.computeWeight(
+                searcher.collectionStatistics(terms[i].field()),
+                searcher.termStatistics(terms[i], this.states[i]));
+      }
+    }
+
+    /**
+     * Returns the coordination factor of the boolean query for the number of matching clauses.
+     *
+     * @param overlap the number of matching clauses
+     * @return float the coordination factor
+     */
+    float coord(int overlap) {
+      final int maxOverlap = MathDisjunctionQuery.this.terms.length;
+      return this.disableCoord ? 1f : this.similarity.coord(overlap, maxOverlap);
+    }
+
+    /**
+     * Returns the largest coordination factor, when every clause matches.
+     *
+     * @return float the coordination factor
+     */
+    float maxCoord() {
+      return this.coord(MathDisjunctionQuery.this.terms.length);
+    }
+
+    /**
+     * Returns the k-th best score so far or negative infinity if there are not k scores yet.
+     *
+     * @return float the smallest score that a document needs to be in the top k
+     */
+    float threshold() {
+      return this.threshold;
+    }
+
+    /**
+     * Adds the score of a document to the k best scores.
+     *
+     * @param score the score of the document
+     */
+    synchronized void offer(float score) {
+      final int k = MathDisjunctionQuery.this.k;
+      if (this.size < k) {
+        if (this.size == this.top.length) {
+          this.top = ArrayUtil.grow(this.top);
+        }
+        // sift up
+        int index = this.size;
+        this.size++;
+        while (index > 0 && this.top[(index - 1) >>> 1] > score) {
+          this.top[index] = this.top[(index - 1) >>> 1];
+          index = (index - 1) >>> 1;
+        }
+        this.top[index] = score;
+      } else if (score > this.top[0]) {
+        // sift down replacing the smallest
+        int index = 0;
+        while (true) {
+          int child = 2 * index + 1;
+          if (child >= this.size) {
+            break;
+          }
+          if (child + 1 < this.size && this.top[child + 1] < this.top[child]) {
+            child++;
+          }
+          if (this.top[child] >= score) {
+            break;
+          }
+          this.top[index] = this.top[child];
+          index = child;
+        }
+        this.top[index] = score;
+      }
+      if (this.size == k) {
+        this.threshold = this.top[0];
+      }
+    }
+
+    @Override
+    public void extractTerms(Set<Term> terms) {
+      Collections.addAll(terms, MathDisjunctionQuery.this.terms);
+    }
+
+    @Override
+    public float getValueForNormalization() {
+      float sum = 0f;
+      for (int i = 0; i < this.stats.length; i++) {
+        final float boost = MathDisjunctionQuery.this.boosts[i];
+        sum += this.stats[i].getValueForNormalization() * boost * boost;
+      }
+      return sum;
+    }
+
+    @Override
+    public void normalize(float norm, float boost) {
+      for (int i = 0; i < this.stats.length; i++) {
+        this.stats[i].normalize(norm, MathDisjunctionQuery.this.boosts[i] * boost);
+      }
+    }
+
+    /**
+     * Returns the postings of a term in the segment.
+     *
+     * @param context the segment
+     * @param i the index of the term
+     * @return TermsEnum positioned on the term or null if the term is not in the segment
+     * @throws IOException - issue with reading the terms
+     */
+    private TermsEnum termsEnum(LeafReaderContext context, int i) throws IOException {
+      final TermState state = this.states[i].get(context.ord);
+      if (state == null) {
+        return null;
+      }
+      final Term term = MathDisjunctionQuery.this.terms[i];
+      final TermsEnum termsEnum = context.reader().terms(term.field()).iterator();
+      termsEnum.seekExact(term.bytes(), state);
+      return termsEnum;
+    }
+
+    /**
+     * Returns the score of a term in a document.
+     *
+     * @param i the index of the term
+     * @param scorer the scorer of the term in the segment
+     * @param doc the document
+     * @param freq the frequency of the term in the document
+     * @return float the score
+     */
+    float score(int i, SimScorer scorer, int doc, int freq) {
+      final int termCount = MathDisjunctionQuery.this.termCounts[i];
+      return scorer.score(doc, termCount > 0 ? Math.min(freq, termCount) : freq);
+    }
+
+    @Override
+    public Scorer scorer(LeafReaderContext context) throws IOException {
+      final int count = MathDisjunctionQuery.this.terms.length;
+      final List<Integer> present = new ArrayList<Integer>();
+      final PostingsEnum[] postings = new PostingsEnum[count];
+      final SimScorer[] scorers = new SimScorer[count];
+      final double[] bounds = new double[count];
+      for (int i = 0; i < count; i++) {
+        final TermsEnum termsEnum = this.termsEnum(context, i);
+        if (termsEnum == null) {
+          continue;
+        }
+        postings[i] = termsEnum.postings(null, PostingsEnum.FREQS);
+        scorers[i] = this.similarity.simScorer(this.stats[i], context);
+        final int[] docs =
+            MathDisjunctionQuery.normDocs(
+                context.reader(), MathDisjunctionQuery.this.terms[i].field());
+        final long maxFreq = termsEnum.totalTermFreq();
+        if (docs == null || maxFreq <= 0) {
+          bounds[i] = Double.POSITIVE_INFINITY;
+        } else {
+          final int freq = (int) Math.min(maxFreq, Integer.MAX_VALUE);
+          float bound = 0f;
+          for (final int doc : docs) {
+            bound = Math.max(bound, this.score(i, scorers[i], doc, freq));
+          }
+          bounds[i] = bound;
+        }
+        present.add(Integer.valueOf(i));
+      }
+      if (present.isEmpty()) {
+        return null;
+      }
+      // order the terms by their bound so the ones that can not make a document competitive are
+      // first
+      Collections.sort(
+          present,
+          (o1, o2) -> Double.compare(bounds[o1.intValue()], bounds[o2.intValue()]));
+      final int[] clauses = new int[present.size()];
+      for (int j = 0; j < clauses.length; j++) {
+        clauses[j] = present.get(j).intValue();
+      }
+      return new MathDisjunctionScorer(
+          this, clauses, postings, scorers, bounds, context.reader().getLiveDocs());
+    }
+
+    @Override
+    public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+      final List<Explanation> details = new ArrayList<Explanation>();
+      double sum = 0d;
+      int overlap = 0;
+      for (int i = 0; i < MathDisjunctionQuery.this.terms.length; i++) {
+        final TermsEnum termsEnum = this.termsEnum(context, i);
+        if (termsEnum == null) {
+          continue;
+        }
+        final PostingsEnum docs = termsEnum.postings(null, PostingsEnum.FREQS);
+        if (docs.advance(doc) == doc) {
+          final SimScorer scorer = this.similarity.simScorer(this.stats[i], context);
+          final float score = this.score(i, scorer, doc, docs.freq());
+          sum += score;
+          overlap++;
+          details.add(
+              Explanation.match(
+                  score, "weight(" + MathDisjunctionQuery.this.terms[i] + " in " + doc + ")"));
+        }
+      }
+      if (overlap == 0) {
+        return Explanation.noMatch("no matching term");
+      }
+      final float coord = this.coord(overlap);
+      final Explanation result = Explanation.match((float) sum, "sum of:", details);
+      return coord == 1f
+          ? result
+          : Explanation.match(
+              (float) sum * coord,
+              "product of:",
+              result,
+              Explanation.match(
+                  coord,
+                  "coord(" + overlap + "/" + MathDisjunctionQuery.this.terms.length + ")"));
+    }
+  }
+
+  /**
+   * Scores the documents of a segment that could be in the top k.
+   *
+   * @author Dallas Fraser
+   * @since 2018-03-01
+   */
+  private static final class MathDisjunctionScorer extends Scorer {
+    private final MathDisjunctionWeight weight;
+    // the terms in the segment ordered by their bound
+    private final int[] clauses;
+    private final PostingsEnum[] postings;
+    private final SimScorer[] scorers;
+    // the sum of the bounds of the clauses up to and including each one
+    private final double[] prefix;
+    private final Bits liveDocs;
+    private final float maxCoord;
+    private final long cost;
+    // clauses before this can not make a document competitive on their own
+    private int essential;
+    // a min heap of the essential clauses by their current document
+    private final int[] heap;
+    private int heapSize;
+    private int doc = -1;
+    private float score;
+    private int freq;
+
+    /**
+     * Class constructor.
+     *
+     * @param weight the weight of the query
+     * @param clauses the terms in the segment ordered by their bound
+     * @param postings the postings of each term
+     * @param scorers the similarity scorer of each term
+     * @param bounds the bound of each term
+     * @param liveDocs the documents not deleted or null if none are
+     */
+    MathDisjunctionScorer(
+        MathDisjunctionWeight weight,
+        int[] clauses,
+        PostingsEnum[] postings,
+        SimScorer[] scorers,
+        double[] bounds,
+        Bits liveDocs) {
+      super(weight);
+      this.weight = weight;
+      this.clauses = clauses;
+      this.postings = postings;
+      this.scorers = scorers;
+      this.liveDocs = liveDocs;
+      this.maxCoord = weight.maxCoord();
+      this.prefix = new double[clauses.length];
+      double sum = 0d;
+      long cost = 0;
+      for (int j = 0; j < clauses.length; j++) {
+        sum += bounds[clauses[j]];
+        this.prefix[j] = sum;
+        cost += postings[clauses[j]].cost();
+      }
+      this.cost = cost;
+      this.heap = new int[clauses.length];
+      this.essential = 0;
+      this.rebuildHeap();
+    }
+
+    /** Puts the essential clauses in the heap. */
+    private void rebuildHeap() {
+      this.heapSize = 0;
+      for (int j = this.essential; j < this.clauses.length; j++) {
+        this.heap[this.heapSize] = this.clauses[j];
+        this.heapSize++;
+      }
+      for (int index = (this.heapSize >>> 1) - 1; index >= 0; index--) {
+        this.siftDown(index);
+      }
+    }
+
+    /**
+     * Moves a clause down the heap until its document is not after its children's.
+     *
+     * @param index the index in the heap
+     */
+    private void siftDown(int index) {
+      final int clause = this.heap[index];
+      final int doc = this.postings[clause].docID();
+      while (true) {
+        int child = 2 * index + 1;
+        if (child >= this.heapSize) {
+          break;
+        }
+        if (child + 1 < this.heapSize
+            && this.postings[this.heap[child + 1]].docID()
+                < this.postings[this.heap[child]].docID()) {
+          child++;
+        }
+        if (this.postings[this.heap[child]].docID() >= doc) {
+          break;
+        }
+        this.heap[index] = this.heap[child];
+        index = child;
+      }
+      this.heap[index] = clause;
+    }
+
+    /**
+     * Returns whether a score bound can not reach the k-th best score.
+     *
+     * @param bound the sum of the bounds
+     * @param threshold the k-th best score
+     * @return boolean True if the document can not be in the top k
+     */
+    private boolean belowThreshold(double bound, float threshold) {
+      return bound * this.maxCoord * MathDisjunctionQuery.SLACK < threshold;
+    }
+
+    /** Moves the clauses that can not make a document competitive out of the heap. */
+    private void updateEssential() {
+      final float threshold = this.weight.threshold();
+      final int before = this.essential;
+      while (this.essential < this.clauses.length
+          && this.belowThreshold(this.prefix[this.essential], threshold)) {
+        this.essential++;
+      }
+      if (this.essential != before) {
+        this.rebuildHeap();
+      }
+    }
+
+    /**
+     * Moves to the first competitive document at or after the target.
+     *
+     * @param target the smallest document to move to
+     * @return int the document or NO_MORE_DOCS
+     * @throws IOException - issue with reading the postings
+     */
+    private int advance(int target) throws IOException {
+      this.updateEssential();
+      while (this.heapSize > 0 && this.postings[this.heap[0]].docID() < target) {
+        this.postings[this.heap[0]].advance(target);
+        this.siftDown(0);
+      }
+      while (this.heapSize > 0) {
+        final int candidate = this.postings[this.heap[0]].docID();
+        if (candidate == DocIdSetIterator.NO_MORE_DOCS) {
+          break;
+        }
+        double sum = 0d;
+        int matches = 0;
+        while (this.heapSize > 0 && this.postings[this.heap[0]].docID() == candidate) {
+          final int clause = this.heap[0];
+          sum += this.clauseScore(clause, candidate);
+          matches++;
+          this.postings[clause].nextDoc();
+          this.siftDown(0);
+        }
+        boolean competitive = this.liveDocs == null || this.liveDocs.get(candidate);
+        final float threshold = this.weight.threshold();
+        for (int j = this.essential - 1; j >= 0 && competitive; j--) {
+          if (this.belowThreshold(sum + this.prefix[j], threshold)) {
+            competitive = false;
+          } else {
+            final PostingsEnum posting = this.postings[this.clauses[j]];
+            if (posting.docID() < candidate) {
+              posting.advance(candidate);
+            }
+            if (posting.docID() == candidate) {
+              sum += this.clauseScore(this.clauses[j], candidate);
+              matches++;
+            }
+          }
+        }
+        if (competitive) {
+          this.doc = candidate;
+          this.freq = matches;
+          this.score = (float) sum * this.weight.coord(matches);
+          this.weight.offer(this.score);
+          return this.doc;
+        }
+        this.updateEssential();
+      }
+      this.doc = DocIdSetIterator.NO_MORE_DOCS;
+      return this.doc;
+    }
+
+    /**
+     * Returns the score of a clause in the document it is on.
+     *
+     * @param clause the clause
+     * @param doc the document
+     * @return float the score
+     * @throws IOException - issue with reading the postings
+     */
+    private float clauseScore(int clause, int doc) throws IOException {
+      return this.weight.score(clause, this.scorers[clause], doc, this.postings[clause].freq());
+    }
+
+    @Override
+    public int docID() {
+      return this.doc;
+    }
+
+    @Override
+    public int freq() throws IOException {
+      return this.freq;
+    }
+
+    @Override
+    public float score() throws IOException {
+      return this.score;
+    }
+
+    @Override
+    public DocIdSetIterator iterator() {
+      return new DocIdSetIterator() {
+        @Override
+        public int docID() {
+          return MathDisjunctionScorer.this.doc;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+          return MathDisjunctionScorer.this.advance(MathDisjunctionScorer.this.doc + 1);
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+          return MathDisjunctionScorer.this.advance(target);
+        }
+
+        @Override
+        public long cost() {
+          return MathDisjunctionScorer.this.cost;
+        }
+      };
+    }
+  }
+
+  @Override
+  public String toString(String field) {
+    return "pruned(" + this.original.toString(field) + ", k=" + this.k + ")";
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return this.sameClassAs(other)
+        && this.k == ((MathDisjunctionQuery) other).k
+        && this.original.equals(((MathDisjunctionQuery) other).original);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * this.classHash() + this.original.hashCode()) + this.k;
+  }
+}
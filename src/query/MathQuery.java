@@ -144,6 +144,15 @@ public class MathQuery {
     return this.phrases;
   }
 
+  /**
+   * Returns a list of the formulas of the query.
+   *
+   * @return a list of formulas
+   */
+  public List<String> getFormulas() {
+    return this.formulas;
+  }
+
   /**
    * Checks where a term is a math tuple or not.
    *
@@ -372,7 +381,7 @@ public class MathQuery {
       bq.add(new TermQuery(new Term(field, "")), BooleanClause.Occur.SHOULD);
     }
     final Query result = bq.build();
-    return (new MathScoreQuery(result, uniqueTerms, field, config, stats));
+    return MathScoreQuery.wrap(result, uniqueTerms, field, config, stats);
   }
 
   /**
@@ -495,7 +504,7 @@ public class MathQuery {
       }
     }
     final Query result = bq.build();
-    return (new MathScoreQuery(result, uniqueTerms, field, config, stats));
+    return MathScoreQuery.wrap(result, uniqueTerms, field, config, stats);
   }
 
   /**
@@ -577,7 +586,7 @@ public class MathQuery {
       bq.add(new TermQuery(new Term(field, "")), BooleanClause.Occur.SHOULD);
     }
     final Query result = bq.build();
-    return (new MathScoreQuery(result, uniqueTerms, field, config, stats));
+    return MathScoreQuery.wrap(result, uniqueTerms, field, config, stats);
   }
 
   /**
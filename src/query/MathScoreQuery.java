@@ -108,7 +108,64 @@ public class MathScoreQuery extends CustomScoreQuery {
   @Override
   protected CustomScoreProvider getCustomScoreProvider(LeafReaderContext context)
       throws IOException {
-    return new MathScoreQueryProvider(
-        this.field, context, this.termCounts, this.config, this.avgDl, this.numDocs);
+    final String queryType = this.config.getQueryType();
+    final CustomScoreProvider provider;
+    if (queryType.equals(ConvertConfig.DICE_QUERY)) {
+      provider =
+          new DiceScoreProvider(
+              this.field, context, this.termCounts, this.config, this.avgDl, this.numDocs);
+    } else if (queryType.equals(ConvertConfig.BM25TP_QUERY)) {
+      provider =
+          new BM25TPScoreProvider(
+              this.field, context, this.termCounts, this.config, this.avgDl, this.numDocs);
+    } else if (queryType.equals(ConvertConfig.BM25_DISTANCE_QUERY)) {
+      provider =
+          new BM25DistanceScoreProvider(
+              this.field, context, this.termCounts, this.config, this.avgDl, this.numDocs);
+    } else {
+      provider =
+          new MathScoreQueryProvider(
+              this.field, context, this.termCounts, this.config, this.avgDl, this.numDocs);
+    }
+    return provider;
+  }
+
+  /**
+   * Returns whether the query type rescores the documents matched by the sub query.
+   *
+   * @param config the config file
+   * @return boolean True if the query type has its own score provider
+   */
+  public static boolean rescores(ConvertConfig config) {
+    final String queryType = config.getQueryType();
+    return queryType.equals(ConvertConfig.DICE_QUERY)
+        || queryType.equals(ConvertConfig.BM25TP_QUERY)
+        || queryType.equals(ConvertConfig.BM25_DISTANCE_QUERY);
+  }
+
+  /**
+   * Returns the query to search with for the query type.
+   *
+   * <p>Query types that keep the score of the sub query get the sub query itself, so Lucene can use
+   * its own scorers for it instead of a custom score query.
+   *
+   * @param subQuery the subQuery of the math terms (usually a BooleanQuery)
+   * @param terms the terms for the query along with the number of times they appear in the query
+   * @param field the field to query
+   * @param config the config file
+   * @param stats statistics about the index collection
+   * @return Query the query to search with
+   */
+  public static Query wrap(
+      Query subQuery,
+      List<TermCountPair> terms,
+      String field,
+      ConvertConfig config,
+      CollectionStatistics stats) {
+    Query query = subQuery;
+    if (MathScoreQuery.rescores(config)) {
+      query = new MathScoreQuery(subQuery, terms, field, config, stats);
+    }
+    return query;
   }
 }
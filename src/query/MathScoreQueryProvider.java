@@ -17,22 +17,25 @@
 package query;
 
 import index.ConvertConfig;
+import index.FormulaSizes;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermState;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.queries.CustomScoreProvider;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import utilities.Constants;
 import utilities.Functions;
@@ -51,6 +54,32 @@ public class MathScoreQueryProvider extends CustomScoreProvider {
   private final ConvertConfig config;
   private final float avgDl;
   private final float numDocs;
+  // the positions of each query term in the current document, reused between documents
+  private int[][] positions;
+  // the number of positions of each query term in the current document (0 if it is not in it)
+  private int[] freqs;
+  private int[] heads;
+  private int[] heap;
+  private int[] merged;
+  // the positions enumerator of each query term in this leaf, advanced as documents are scored
+  private PostingsEnum[] postings;
+  private TermState[] termStates;
+  private BytesRef[] termBytes;
+  private TermsEnum termsEnum;
+  private int target = -1;
+  private int found;
+  private NumericDocValues docLengths;
+  private boolean docLengthsLoaded;
+  private BinaryDocValues formulaSizeValues;
+  private boolean formulaSizesLoaded;
+  private FormulaSizes formulaSizes;
+  // the largest distance of a term pair counted by BM25TP unless every pair is summed
+  private final int window;
+  private final boolean exact;
+  // the term pair instance weight of each distance within the window
+  private float[] tpis;
+  // the query weight of each query term in the current document
+  private float[] weights;
 
   // all are discussed in the papers
   private static final float ALPHA = (float) 0.3;
@@ -83,33 +112,29 @@ public class MathScoreQueryProvider extends CustomScoreProvider {
     this.config = config;
     this.avgDl = avgDl;
     this.numDocs = numDoc;
+    if (config != null) {
+      this.window = config.getProximityWindow();
+      this.exact = config.getExactProximity();
+    } else {
+      this.window = ConvertConfig.DEFAULT_PROXIMITY_WINDOW;
+      this.exact = false;
+    }
   }
 
   /**
    * Returns the Custom Score.
    *
+   * <p>The sub query score is kept as is. Each query type that rescores documents has its own
+   * provider that overrides this, chosen once per leaf by {@link MathScoreQuery}.
+   *
    * @param doc the doc number id
    * @param subQueryScore the score the subquery gave it
    * @param valSrcScores an array of scores from src
-   * @return float a the update custom score which is calculated based upon config
+   * @return float the score of the sub query
    */
   @Override
   public float customScore(int doc, float subQueryScore, float[] valSrcScores) throws IOException {
-    // subQueryScore is term frequency of the term
-    float newScore = 1f;
-    if (this.config.getQueryType().equals(ConvertConfig.DICE_QUERY)) {
-      newScore = this.diceCustomScore(doc, subQueryScore, valSrcScores);
-    } else if (this.config.getQueryType().equals(ConvertConfig.BM25TP_QUERY)) {
-      newScore = this.bm25tpCustomScore(doc, subQueryScore, valSrcScores);
-    } else if (this.config.getQueryType().equals(ConvertConfig.BM25_DISTANCE_QUERY)) {
-      newScore = this.bm25DistanceCustomScore(doc, subQueryScore, valSrcScores);
-    } else if (this.config.getQueryType().equals(ConvertConfig.TERM_QUERY)) {
-      newScore = subQueryScore;
-    } else {
-      // default scoring to use
-      newScore = subQueryScore;
-    }
-    return newScore; // New Score
+    return subQueryScore;
   }
 
   /**
@@ -205,27 +230,128 @@ public class MathScoreQueryProvider extends CustomScoreProvider {
    * @return float the min span measurement
    */
   public int minSpanCalc(List<List<Integer>> positions) {
-    int start = 0;
-    final int end = this.maxValue(positions);
-    int spanStart;
-    int spanEnd;
-    final List<Integer> spans = new ArrayList<Integer>();
-    if (start == end) {
-      spans.add(new Integer(0));
-    }
-    while (start < end) {
-      spanStart = this.minMinValue(positions);
-      spanEnd = this.maxMinValue(positions);
-      spans.add(new Integer(Math.abs(spanEnd - spanStart)));
-      start = spanStart + 1;
-      try {
-        this.removeLowerPositions(positions, start);
-      } catch (final IndexOutOfBoundsException e) {
-        // we are done the one position lists is out of values
-        start = end;
+    final int[][] values = new int[positions.size()][];
+    final int[] lengths = new int[positions.size()];
+    for (int i = 0; i < positions.size(); i++) {
+      final List<Integer> list = positions.get(i);
+      values[i] = new int[list.size()];
+      for (int j = 0; j < list.size(); j++) {
+        values[i][j] = list.get(j).intValue();
+      }
+      lengths[i] = list.size();
+    }
+    return this.minSpanCalc(values, lengths);
+  }
+
+  /**
+   * Calculates the min span from the sorted positions of each term.
+   *
+   * <p>The terms are kept in a heap ordered by their current position. Each step takes the span
+   * from the earliest to the latest current position and then moves the terms at the earliest
+   * position forward, so every position is visited once. Terms with no positions are ignored.
+   *
+   * @param positions the sorted positions of each term
+   * @param lengths the number of positions of each term
+   * @return int the min span measurement
+   */
+  public int minSpanCalc(int[][] positions, int[] lengths) {
+    if (this.heads == null || this.heads.length < positions.length) {
+      this.heads = new int[positions.length];
+      this.heap = new int[positions.length];
+    }
+    final int[] heads = this.heads;
+    final int[] heap = this.heap;
+    int size = 0;
+    int end = 0;
+    int latest = 0;
+    for (int i = 0; i < positions.length; i++) {
+      if (lengths[i] > 0) {
+        heads[i] = 0;
+        end = Math.max(end, positions[i][lengths[i] - 1]);
+        latest = Math.max(latest, positions[i][0]);
+        heap[size] = i;
+        MathScoreQueryProvider.siftUp(heap, size, positions, heads);
+        size += 1;
+      }
+    }
+    if (end == 0) {
+      // every position is the start
+      return 0;
+    }
+    int span = Integer.MAX_VALUE;
+    while (true) {
+      final int earliest = positions[heap[0]][heads[heap[0]]];
+      span = Math.min(span, latest - earliest);
+      final int start = earliest + 1;
+      if (start >= end) {
+        break;
       }
+      // move every term at the earliest position forward
+      while (positions[heap[0]][heads[heap[0]]] < start) {
+        final int term = heap[0];
+        while (heads[term] < lengths[term] && positions[term][heads[term]] < start) {
+          heads[term] += 1;
+        }
+        if (heads[term] == lengths[term]) {
+          // we are done the one position lists is out of values
+          return span;
+        }
+        latest = Math.max(latest, positions[term][heads[term]]);
+        MathScoreQueryProvider.siftDown(heap, size, positions, heads);
+      }
+    }
+    return span;
+  }
+
+  /**
+   * Moves a term up the heap until its parent is not at a later position.
+   *
+   * @param heap the heap of term indexes
+   * @param index the index in the heap of the term to move
+   * @param positions the sorted positions of each term
+   * @param heads the index of the current position of each term
+   */
+  private static void siftUp(int[] heap, int index, int[][] positions, int[] heads) {
+    final int term = heap[index];
+    final int value = positions[term][heads[term]];
+    while (index > 0) {
+      final int parent = (index - 1) >>> 1;
+      if (positions[heap[parent]][heads[heap[parent]]] <= value) {
+        break;
+      }
+      heap[index] = heap[parent];
+      index = parent;
     }
-    return Collections.min(spans).intValue();
+    heap[index] = term;
+  }
+
+  /**
+   * Moves the top term down the heap until its children are not at an earlier position.
+   *
+   * @param heap the heap of term indexes
+   * @param size the number of terms in the heap
+   * @param positions the sorted positions of each term
+   * @param heads the index of the current position of each term
+   */
+  private static void siftDown(int[] heap, int size, int[][] positions, int[] heads) {
+    final int term = heap[0];
+    final int value = positions[term][heads[term]];
+    int index = 0;
+    int child = 1;
+    while (child < size) {
+      if (child + 1 < size
+          && positions[heap[child + 1]][heads[heap[child + 1]]]
+              < positions[heap[child]][heads[heap[child]]]) {
+        child += 1;
+      }
+      if (positions[heap[child]][heads[heap[child]]] >= value) {
+        break;
+      }
+      heap[index] = heap[child];
+      index = child;
+      child = 2 * index + 1;
+    }
+    heap[index] = term;
   }
 
   /**
@@ -237,36 +363,103 @@ public class MathScoreQueryProvider extends CustomScoreProvider {
    */
   public float minSpan(int doc) throws IOException {
     float distance = 0f;
-    final LeafReader reader = this.context.reader();
-    final List<List<Integer>> positions = new ArrayList<List<Integer>>();
-    if (reader != null) {
-      // get a sorted list of positions
-      for (final TermCountPair term : this.terms) {
-        final List<Integer> pos = new ArrayList<Integer>();
-        final PostingsEnum posting =
-            reader.postings(new Term(this.privateField, term.getTerm()), PostingsEnum.POSITIONS);
-        if (posting != null) {
-          // move to the document currently looking at
-          posting.advance(doc);
-          int count = 0;
-          final int freq = posting.freq();
-          // make sure to add them all
-          while (count < freq) {
-            pos.add(new Integer(posting.nextPosition()));
-            count += 1;
-          }
+    if (this.loadPositions(doc) < 2) {
+      distance = this.getDocLength(doc);
+    } else {
+      distance = this.minSpanCalc(this.positions, this.freqs);
+    }
+    return distance;
+  }
+
+  /**
+   * Reads the positions of every query term in a document into the reused buffers.
+   *
+   * <p>The enumerators of the terms are only moved forward, so scoring the documents of a leaf in
+   * order reads each posting list once. Going back to an earlier document starts them over.
+   *
+   * @param doc the doc id number
+   * @return int the number of query terms in the document
+   * @throws IOException - issue with reading/writing to a file
+   */
+  private int loadPositions(int doc) throws IOException {
+    if (this.postings == null) {
+      this.initPostings();
+    }
+    if (doc == this.target) {
+      // the positions can only be read once so keep the ones already read
+      return this.found;
+    }
+    if (doc < this.target) {
+      this.resetPostings();
+    }
+    this.target = doc;
+    this.found = 0;
+    for (int i = 0; i < this.postings.length; i++) {
+      this.freqs[i] = 0;
+      final PostingsEnum posting = this.postings[i];
+      if (posting == null) {
+        continue;
+      }
+      int current = posting.docID();
+      if (current < doc) {
+        current = posting.advance(doc);
+      }
+      // only use the positions if the term is in the document currently looking at
+      if (current == doc) {
+        final int freq = posting.freq();
+        if (this.positions[i] == null || this.positions[i].length < freq) {
+          this.positions[i] = new int[ArrayUtil.oversize(freq, Integer.BYTES)];
         }
-        if (pos.size() > 0) {
-          positions.add(pos);
+        final int[] pos = this.positions[i];
+        for (int count = 0; count < freq; count++) {
+          pos[count] = posting.nextPosition();
         }
+        this.freqs[i] = freq;
+        this.found += 1;
       }
     }
-    if (positions.size() < 2) {
-      distance = this.getDocLength(doc);
-    } else {
-      distance = this.minSpanCalc(positions);
+    return this.found;
+  }
+
+  /**
+   * Seeks each query term once for the leaf and creates its positions enumerator.
+   *
+   * @throws IOException - issue with reading/writing to a file
+   */
+  private void initPostings() throws IOException {
+    final int size = this.terms.size();
+    this.positions = new int[size][];
+    this.freqs = new int[size];
+    this.postings = new PostingsEnum[size];
+    this.termStates = new TermState[size];
+    this.termBytes = new BytesRef[size];
+    final LeafReader reader = this.context.reader();
+    final Terms fieldTerms = reader == null ? null : reader.terms(this.privateField);
+    if (fieldTerms == null) {
+      return;
+    }
+    this.termsEnum = fieldTerms.iterator();
+    for (int i = 0; i < size; i++) {
+      this.termBytes[i] = new BytesRef(this.terms.get(i).getTerm());
+      if (this.termsEnum.seekExact(this.termBytes[i])) {
+        this.termStates[i] = this.termsEnum.termState();
+        this.postings[i] = this.termsEnum.postings(null, PostingsEnum.POSITIONS);
+      }
+    }
+  }
+
+  /**
+   * Starts the enumerators over from the saved term states without seeking the terms again.
+   *
+   * @throws IOException - issue with reading/writing to a file
+   */
+  private void resetPostings() throws IOException {
+    for (int i = 0; i < this.postings.length; i++) {
+      if (this.postings[i] != null) {
+        this.termsEnum.seekExact(this.termBytes[i], this.termStates[i]);
+        this.postings[i] = this.termsEnum.postings(this.postings[i], PostingsEnum.POSITIONS);
+      }
     }
-    return distance;
   }
 
   /**
@@ -278,44 +471,54 @@ public class MathScoreQueryProvider extends CustomScoreProvider {
    */
   public float minDistancePair(int doc) throws IOException {
     float distance = 0f;
-    final SortedSet<Integer> pos = new TreeSet<Integer>();
-    final LeafReader reader = this.context.reader();
-    if (reader != null && this.terms.size() > 1) {
-      // get a sorted list of positions
-      for (final TermCountPair term : this.terms) {
-        final PostingsEnum posting =
-            reader.postings(new Term(this.privateField, term.getTerm()), PostingsEnum.POSITIONS);
-        if (posting != null) {
-          // move to the document currently looking at
-          posting.advance(doc);
-          int count = 0;
-          final int freq = posting.freq();
-          // make sure to add them all
-          while (count < freq) {
-            pos.add(new Integer(posting.nextPosition()));
-            count += 1;
+    if (this.terms.size() > 1) {
+      final int count = this.mergePositions(doc);
+      final int[] pos = this.merged;
+      if (count == 0) {
+        distance = this.getDocLength(doc);
+      } else {
+        // now find the closest pairs of different positions
+        int dist = pos[count - 1] - pos[0];
+        for (int i = 1; i < count; i++) {
+          final int gap = pos[i] - pos[i - 1];
+          if (gap > 0 && gap < dist) {
+            dist = gap;
           }
         }
+        distance = dist;
       }
-      // now find the closest pairs
-      Integer dist = Math.abs(pos.first() - pos.last());
-      final Iterator<Integer> it = pos.iterator();
-      Integer prev = pos.last();
-      Integer current;
-      while (it.hasNext()) {
-        current = it.next();
-        if (Math.abs(current - prev) < dist) {
-          dist = Math.abs(current - prev);
-        }
-        prev = current;
-      }
-      distance = dist.intValue();
-    } else if (this.terms.size() > 1) {
-      distance = this.getDocLength(doc);
     }
     return distance;
   }
 
+  /**
+   * Merges the positions of every query term in the document into one sorted buffer.
+   *
+   * @param doc the doc id number
+   * @return int the number of positions in the buffer
+   * @throws IOException - issue with reading/writing to a file
+   */
+  private int mergePositions(int doc) throws IOException {
+    this.loadPositions(doc);
+    int total = 0;
+    for (int i = 0; i < this.freqs.length; i++) {
+      total += this.freqs[i];
+    }
+    if (this.merged == null || this.merged.length < total) {
+      this.merged = new int[ArrayUtil.oversize(total, Integer.BYTES)];
+    }
+    int count = 0;
+    for (int i = 0; i < this.freqs.length; i++) {
+      // a term that was never in a document of this leaf has no positions yet
+      if (this.freqs[i] > 0) {
+        System.arraycopy(this.positions[i], 0, this.merged, count, this.freqs[i]);
+        count += this.freqs[i];
+      }
+    }
+    Arrays.sort(this.merged, 0, count);
+    return count;
+  }
+
   /**
    * Calculate the term pair instance weight.
    *
@@ -336,17 +539,92 @@ public class MathScoreQueryProvider extends CustomScoreProvider {
    * @return float term weight
    */
   public float termWeight(List<Integer> positionsI, List<Integer> positionsJ, float valueK) {
+    final int[] arrayI = new int[positionsI.size()];
+    final int[] arrayJ = new int[positionsJ.size()];
+    for (int i = 0; i < arrayI.length; i++) {
+      arrayI[i] = positionsI.get(i).intValue();
+    }
+    for (int j = 0; j < arrayJ.length; j++) {
+      arrayJ[j] = positionsJ.get(j).intValue();
+    }
+    return this.termWeight(arrayI, arrayI.length, arrayJ, arrayJ.length, valueK);
+  }
+
+  /**
+   * Calculates the weight for a given term pair i and j.
+   *
+   * <p>Only the pairs of positions within the proximity window are summed unless the config asks
+   * for exact scores, in which case every pair is summed.
+   *
+   * @param positionsI The positions that Term i appear in
+   * @param freqI the number of positions of Term i
+   * @param positionsJ The positions that Term j appear in
+   * @param freqJ the number of positions of Term j
+   * @param valueK Okapi document length consideration
+   * @return float term weight
+   */
+  public float termWeight(
+      int[] positionsI, int freqI, int[] positionsJ, int freqJ, float valueK) {
     float sumTpi = 0;
     float weight;
-    for (int i = 0; i < positionsI.size(); i++) {
-      for (int j = 0; j < positionsJ.size(); j++) {
-        sumTpi += this.calculateTpi(positionsI.get(i), positionsJ.get(j));
+    if (this.exact) {
+      for (int i = 0; i < freqI; i++) {
+        for (int j = 0; j < freqJ; j++) {
+          sumTpi += this.calculateTpi(positionsI[i], positionsJ[j]);
+        }
       }
+    } else {
+      sumTpi = this.windowTpi(positionsI, freqI, positionsJ, freqJ);
     }
     weight = (MathScoreQueryProvider.K_1 + 1) * (sumTpi / (valueK + sumTpi));
     return weight;
   }
 
+  /**
+   * Sums the term pair instance weights of the positions within the window of each other.
+   *
+   * <p>Both position lists are sorted so the first position of Term j that can be within the window
+   * only moves forward, making this linear in the number of positions plus the number of pairs
+   * found.
+   *
+   * @param positionsI The positions that Term i appear in
+   * @param freqI the number of positions of Term i
+   * @param positionsJ The positions that Term j appear in
+   * @param freqJ the number of positions of Term j
+   * @return float the sum of the term pair instance weights
+   */
+  public float windowTpi(int[] positionsI, int freqI, int[] positionsJ, int freqJ) {
+    if (this.tpis == null) {
+      this.tpis = MathScoreQueryProvider.tpiTable(this.window);
+    }
+    float sumTpi = 0;
+    int low = 0;
+    for (int i = 0; i < freqI; i++) {
+      final int position = positionsI[i];
+      while (low < freqJ && positionsJ[low] < position - this.window) {
+        low++;
+      }
+      for (int j = low; j < freqJ && positionsJ[j] <= position + this.window; j++) {
+        sumTpi += this.tpis[Math.abs(positionsJ[j] - position)];
+      }
+    }
+    return sumTpi;
+  }
+
+  /**
+   * Returns the term pair instance weight of each distance up to the window.
+   *
+   * @param window the largest distance
+   * @return float[] the weights indexed by distance
+   */
+  private static float[] tpiTable(int window) {
+    final float[] table = new float[window + 1];
+    for (int distance = 0; distance <= window; distance++) {
+      table[distance] = (float) (1f / Math.pow(distance + 1, 2));
+    }
+    return table;
+  }
+
   /**
    * Returns the score using BM25 and min-distance as outlined in.
    *
@@ -360,38 +638,40 @@ public class MathScoreQueryProvider extends CustomScoreProvider {
   public float bm25tpCustomScore(int doc, float subQueryScore, float[] valSrcScores)
       throws IOException {
     final float newScore = subQueryScore;
-    final Map<String, List<Integer>> pos = this.termsPositions(doc);
+    this.loadPositions(doc);
     final float docLength = this.getDocLength(doc);
     final float K =
         MathScoreQueryProvider.K
             * ((1 - MathScoreQueryProvider.B)
                 + MathScoreQueryProvider.B * (docLength / this.avgDl));
-    int qtfi;
-    int qtfj;
-    List<Integer> positionsI;
-    List<Integer> positionsJ;
-    float qwi;
-    float qwj;
+    int qtf;
+    int freqI;
+    int freqJ;
     float score = 0;
     float termWeight;
-    for (int i = 0; i < this.terms.size(); i++) {
-      positionsI = pos.get(this.terms.get(i).getTerm());
-      if (positionsI != null) {
-        qtfi = (int) this.terms.get(i).getCount();
-        qwi =
+    final int size = this.terms.size();
+    if (this.weights == null) {
+      this.weights = new float[size];
+    }
+    // the query weight of a term does not depend on its pair so only compute it once
+    for (int i = 0; i < size; i++) {
+      freqI = this.freqs[i];
+      if (freqI > 0) {
+        qtf = (int) this.terms.get(i).getCount();
+        this.weights[i] =
             (float)
-                ((qtfi / (MathScoreQueryProvider.K_3 + qtfi))
-                    * Math.log((this.numDocs - positionsI.size()) / positionsI.size()));
-        for (int j = i + 1; j < this.terms.size(); j++) {
-          positionsJ = pos.get(this.terms.get(j).getTerm());
-          if (positionsJ != null) {
-            qtfj = (int) this.terms.get(j).getCount();
-            qwj =
-                (float)
-                    ((qtfj / (MathScoreQueryProvider.K_3 + qtfj))
-                        * Math.log((this.numDocs - positionsJ.size()) / positionsJ.size()));
-            termWeight = this.termWeight(positionsI, positionsJ, K);
-            score += termWeight * Math.min(qwi, qwj);
+                ((qtf / (MathScoreQueryProvider.K_3 + qtf))
+                    * Math.log((this.numDocs - freqI) / freqI));
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      freqI = this.freqs[i];
+      if (freqI > 0) {
+        for (int j = i + 1; j < size; j++) {
+          freqJ = this.freqs[j];
+          if (freqJ > 0) {
+            termWeight = this.termWeight(this.positions[i], freqI, this.positions[j], freqJ, K);
+            score += termWeight * Math.min(this.weights[i], this.weights[j]);
           }
         }
       }
@@ -410,8 +690,16 @@ public class MathScoreQueryProvider extends CustomScoreProvider {
     long docLength = 1;
     final LeafReader reader = this.context.reader();
     if (reader != null) {
-      docLength = Long.parseLong(reader.document(doc).get(Constants.DOCUMENT_LENGTH));
-      // docLength = reader.getNumericDocValues(Constants.DOCUMENT_LENGTH).get(doc);
+      if (!this.docLengthsLoaded) {
+        this.docLengths = reader.getNumericDocValues(Constants.DOCUMENT_LENGTH);
+        this.docLengthsLoaded = true;
+      }
+      if (this.docLengths != null) {
+        docLength = this.docLengths.get(doc);
+      } else {
+        // indexes built before the length was a doc value only have it stored
+        docLength = Long.parseLong(reader.document(doc).get(Constants.DOCUMENT_LENGTH));
+      }
     }
     return docLength;
   }
@@ -424,25 +712,15 @@ public class MathScoreQueryProvider extends CustomScoreProvider {
    * @throws IOException - issue with reading/writing to a file
    */
   public Map<String, List<Integer>> termsPositions(int doc) throws IOException {
-    final LeafReader reader = this.context.reader();
     final Map<String, List<Integer>> positions = new HashMap<String, List<Integer>>();
-    if (reader != null) {
-      // get a list of map and their pairs
-      for (final TermCountPair term : this.terms) {
-        final PostingsEnum posting =
-            reader.postings(new Term(this.privateField, term.getTerm()), PostingsEnum.POSITIONS);
-        if (posting != null) {
-          // move to the document currently looking at
-          posting.advance(doc);
-          int count = 0;
-          final int freq = posting.freq();
-          final List<Integer> pos = new ArrayList<Integer>();
-          while (count < freq) {
-            pos.add(new Integer(posting.nextPosition()));
-            count += 1;
-          }
-          positions.put(term.getTerm(), pos);
+    this.loadPositions(doc);
+    for (int i = 0; i < this.terms.size(); i++) {
+      if (this.freqs[i] > 0) {
+        final List<Integer> pos = new ArrayList<Integer>(this.freqs[i]);
+        for (int count = 0; count < this.freqs[i]; count++) {
+          pos.add(Integer.valueOf(this.positions[i][count]));
         }
+        positions.put(this.terms.get(i).getTerm(), pos);
       }
     }
     return positions;
@@ -520,6 +798,9 @@ public class MathScoreQueryProvider extends CustomScoreProvider {
   /**
    * Returns the score using the Dice Coefficient.
    *
+   * <p>The size of each formula is read from the doc values written when indexing. Indexes built
+   * before then fall back to counting them from the term vector of the document.
+   *
    * @param doc the doc id number
    * @param subQueryScore the sub query scores
    * @param valSrcScores a list of scores for each value
@@ -528,53 +809,51 @@ public class MathScoreQueryProvider extends CustomScoreProvider {
    */
   public float diceCustomScore(int doc, float subQueryScore, float[] valSrcScores)
       throws IOException {
-    // this is very slow at the moment+
     // subQueryScore is term frequency of the term
     final LeafReader reader = this.context.reader();
     float score = 0f;
-    float querySize = 0f;
-    final Map<Float, Float> queryLookup = new HashMap<Float, Float>();
-    Map<Float, Float> formulaSizes = new HashMap<Float, Float>();
     if (reader != null) {
-      // find a list of formulas and their positions
-      Float bestFormula = new Float(0);
+      float querySize = 0f;
       for (final TermCountPair term : this.terms) {
         querySize += term.getCount();
-        final PostingsEnum posting =
-            reader.postings(new Term(this.privateField, term.getTerm()), PostingsEnum.POSITIONS);
-        if (posting != null) {
-          // move to the document currently looking at
-          posting.advance(doc);
-          // get a dictionary of the each potential formula to match to and total number of matches
-          int count = 0;
-          while (count < posting.freq()) {
-            final Float position = new Float(posting.nextPosition());
-            Float positionCount = queryLookup.get(position);
-            if (positionCount != null) {
-              // already in lookup, update and add one
-              positionCount = positionCount + new Float(1);
-              queryLookup.put(position, positionCount);
-            } else {
-              // add to lookup and formula size
-              queryLookup.put(position, new Float(1));
-              formulaSizes.put(position, new Float(0));
-            }
-            count += 1;
-          }
-          // calculate the formula sizes
-          formulaSizes = this.calculateFormulaSizes(reader, doc, formulaSizes);
-          // now calculate the best formula that was matched
-          for (final Map.Entry<Float, Float> entry : queryLookup.entrySet()) {
-            // calculate the intersection
-            final Float temp =
-                (new Float(2) * entry.getValue()) / (querySize + formulaSizes.get(entry.getKey()));
-            if (temp > bestFormula) {
-              bestFormula = temp;
-            }
-          }
+      }
+      // every query term at a position is a match with the formula at that position
+      final int count = this.mergePositions(doc);
+      final int[] pos = this.merged;
+      Map<Float, Float> formulaSizes = null;
+      if (!this.formulaSizesLoaded) {
+        this.formulaSizeValues = reader.getBinaryDocValues(Constants.FORMULA_SIZES);
+        this.formulaSizesLoaded = true;
+      }
+      if (this.formulaSizeValues != null) {
+        if (this.formulaSizes == null) {
+          this.formulaSizes = new FormulaSizes();
+        }
+        this.formulaSizes.read(this.formulaSizeValues.get(doc));
+      } else {
+        formulaSizes = new HashMap<Float, Float>();
+        for (int i = 0; i < count; i++) {
+          formulaSizes.put(new Float(pos[i]), new Float(0));
         }
+        formulaSizes = this.calculateFormulaSizes(reader, doc, formulaSizes);
+      }
+      // now calculate the best formula that was matched
+      int start = 0;
+      while (start < count) {
+        int end = start + 1;
+        while (end < count && pos[end] == pos[start]) {
+          end++;
+        }
+        final float size =
+            formulaSizes == null
+                ? this.formulaSizes.getSize(pos[start])
+                : formulaSizes.get(new Float(pos[start])).floatValue();
+        final float dice = (2f * (end - start)) / (querySize + size);
+        if (dice > score) {
+          score = dice;
+        }
+        start = end;
       }
-      score = bestFormula.floatValue();
     } else {
       System.err.println("Unable to find LeafReader for Dice Query");
     }
@@ -51,10 +51,9 @@ public class MathSimilarity {
     } else if (type == MathSimilarity.BOOLEAN) {
       sim = new BooleanSimilarity();
     } else if (type == MathSimilarity.MATH) {
-      final BM25Similarity temp = new BM25Similarity();
-      sim = temp;
+      sim = new MathBM25Similarity();
     } else if (type == MathSimilarity.TEXT) {
-      sim = new BM25Similarity();
+      sim = new MathBM25Similarity();
     } else if (type == MathSimilarity.ADJUSTED_BM25) {
       sim = new AdjustedBM25Similarity();
     } else if (type == MathSimilarity.BM25_PLUS) {
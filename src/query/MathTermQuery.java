@@ -226,6 +226,11 @@ public class MathTermQuery extends Query {
     return this.term;
   }
 
+  /** Returns the number of times the term is in the query, which caps its frequency. */
+  public int getTermCount() {
+    return this.termCount;
+  }
+
   @Override
   public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
     final IndexReaderContext context = searcher.getTopReaderContext();
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * A searcher that searches slices of segments on an executor, with the slices balanced by size.
+ *
+ * <p>Lucene's searcher makes a slice of every segment, so a merged index with one large segment
+ * and a few small ones waits on the large one. The segments are instead split, in order, into one
+ * slice per thread with about the same number of documents in each. Keeping the segments in order
+ * means documents with the same score are returned in the same order as searching one segment
+ * after another.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class BalancedIndexSearcher extends IndexSearcher {
+  // the number of slices for the searcher being constructed on this thread
+  private static final ThreadLocal<Integer> SLICES = new ThreadLocal<Integer>();
+
+  /**
+   * Class constructor.
+   *
+   * @param reader the reader of the index
+   * @param executor the executor to search the slices on (null to search one after another)
+   * @param threads the number of threads of the executor, which is the number of slices made
+   */
+  public BalancedIndexSearcher(IndexReader reader, ExecutorService executor, int threads) {
+    super(reader, BalancedIndexSearcher.withSlices(executor, threads));
+  }
+
+  /**
+   * Remembers the number of slices until the constructor of the searcher asks for the slices.
+   *
+   * <p>Lucene makes the slices from inside its constructor, before any field of this class is
+   * set, so the number is passed through the thread constructing the searcher.
+   *
+   * @param executor the executor to search the slices on
+   * @param threads the number of slices to make
+   * @return ExecutorService the executor
+   */
+  private static ExecutorService withSlices(ExecutorService executor, int threads) {
+    if (executor != null) {
+      // Lucene only asks for the slices when there is an executor
+      BalancedIndexSearcher.SLICES.set(Integer.valueOf(threads));
+    }
+    return executor;
+  }
+
+  @Override
+  protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+    final Integer threads = BalancedIndexSearcher.SLICES.get();
+    BalancedIndexSearcher.SLICES.remove();
+    final int count = threads == null ? Runtime.getRuntime().availableProcessors() : threads;
+    final List<List<LeafReaderContext>> partition = BalancedIndexSearcher.partition(leaves, count);
+    final LeafSlice[] slices = new LeafSlice[partition.size()];
+    for (int i = 0; i < slices.length; i++) {
+      final List<LeafReaderContext> slice = partition.get(i);
+      slices[i] = new LeafSlice(slice.toArray(new LeafReaderContext[slice.size()]));
+    }
+    return slices;
+  }
+
+  /**
+   * Splits the segments in order into slices with about the same number of documents.
+   *
+   * @param leaves the segments of the index
+   * @param count the most slices to make
+   * @return List the segments of each slice
+   */
+  public static List<List<LeafReaderContext>> partition(List<LeafReaderContext> leaves, int count) {
+    final List<List<LeafReaderContext>> result = new ArrayList<List<LeafReaderContext>>();
+    if (leaves.isEmpty()) {
+      return result;
+    }
+    final int slices = Math.max(1, Math.min(count, leaves.size()));
+    long total = 0;
+    for (final LeafReaderContext leaf : leaves) {
+      total += leaf.reader().maxDoc();
+    }
+    List<LeafReaderContext> current = new ArrayList<LeafReaderContext>();
+    long seen = 0;
+    for (int i = 0; i < leaves.size(); i++) {
+      final long size = leaves.get(i).reader().maxDoc();
+      final int after = slices - result.size() - 1;
+      // close the slice before the segment if that ends it closer to its share of the documents
+      // or the segments left are needed for the slices after it
+      if (!current.isEmpty()
+          && after > 0
+          && (leaves.size() - i <= after
+              || (2 * seen + size) * slices > 2 * total * (result.size() + 1))) {
+        result.add(current);
+        current = new ArrayList<LeafReaderContext>();
+      }
+      current.add(leaves.get(i));
+      seen += size;
+    }
+    result.add(current);
+    return result;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package search;
+
+import java.io.IOException;
+import java.util.Collection;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+
+/**
+ * Collects the top documents of a query until a deadline passes.
+ *
+ * <p>The collectors check the time as they collect and stop their segment once the deadline has
+ * passed, so a search that runs too long ends by itself rather than being interrupted (which can
+ * close the channels of the index's files). The segments after the deadline are skipped, so the
+ * results of a search that timed out are only partial.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class DeadlineCollectorManager
+    implements CollectorManager<DeadlineCollectorManager.DeadlineCollector, TopDocs> {
+  // checking the time for every document would cost more than scoring it
+  private static final int CHECK_INTERVAL = 256;
+  private final int n;
+  private final long deadline;
+  private volatile boolean timedOut;
+
+  /**
+   * Class constructor.
+   *
+   * @param n the number of documents to return
+   * @param deadline when to stop collecting, as a {@link System#nanoTime()}
+   */
+  public DeadlineCollectorManager(int n, long deadline) {
+    this.n = n;
+    this.deadline = deadline;
+    this.timedOut = false;
+  }
+
+  /**
+   * Returns whether the deadline passed before the search completed.
+   *
+   * @return boolean True if the results are partial
+   */
+  public boolean isTimedOut() {
+    return this.timedOut;
+  }
+
+  /**
+   * Stops collecting the current segment if the deadline has passed.
+   *
+   * @throws CollectionTerminatedException - the deadline has passed
+   */
+  private void checkDeadline() {
+    if (this.timedOut || System.nanoTime() - this.deadline >= 0) {
+      this.timedOut = true;
+      throw new CollectionTerminatedException();
+    }
+  }
+
+  @Override
+  public DeadlineCollector newCollector() throws IOException {
+    return new DeadlineCollector(TopScoreDocCollector.create(this.n));
+  }
+
+  @Override
+  public TopDocs reduce(Collection<DeadlineCollector> collectors) throws IOException {
+    final TopDocs[] topDocs = new TopDocs[collectors.size()];
+    int i = 0;
+    for (final DeadlineCollector collector : collectors) {
+      topDocs[i] = collector.topDocs.topDocs();
+      i += 1;
+    }
+    return TopDocs.merge(this.n, topDocs);
+  }
+
+  /**
+   * Collects the top documents of one slice of the index until the deadline.
+   *
+   * @author Dallas Fraser
+   * @since 2018-03-01
+   */
+  public class DeadlineCollector extends FilterCollector {
+    private final TopScoreDocCollector topDocs;
+
+    /**
+     * Class constructor.
+     *
+     * @param topDocs the collector of the top documents
+     */
+    DeadlineCollector(TopScoreDocCollector topDocs) {
+      super(topDocs);
+      this.topDocs = topDocs;
+    }
+
+    @Override
+    public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+      DeadlineCollectorManager.this.checkDeadline();
+      return new FilterLeafCollector(super.getLeafCollector(context)) {
+        private int collected = 0;
+
+        @Override
+        public void collect(int doc) throws IOException {
+          this.collected += 1;
+          if (this.collected % DeadlineCollectorManager.CHECK_INTERVAL == 0) {
+            DeadlineCollectorManager.this.checkDeadline();
+          }
+          super.collect(doc);
+        }
+      };
+    }
+  }
+}
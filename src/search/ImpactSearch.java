@@ -0,0 +1,403 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package search;
+
+import index.ImpactIndex;
+import index.ImpactIndex.Postings;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Searches the impact index one segment of postings at a time (score-at-a-time).
+ *
+ * <p>The segments of every query term are read from the highest contribution to the score to the
+ * lowest, adding each segment's quantized score to the documents in it. The top k documents are
+ * kept in a heap as they are scored, and the search stops as soon as the scores left to add can
+ * no longer move a document into or out of the top k. The scores returned are the quantized
+ * scores added up to then, so documents in the top k can be ordered slightly differently than if
+ * every segment was read.
+ *
+ * <p>Terms that are not in the impact index (the words of a query), and terms whose frequency is
+ * capped below the largest one the impact index scored, have their postings ordered by impact when
+ * searched.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class ImpactSearch {
+  private final ImpactIndex index;
+  private final IndexSearcher searcher;
+  // the scores are as large as the index so each thread reuses its own between searches
+  private final ThreadLocal<TopScores> topScores;
+
+  /**
+   * Class constructor.
+   *
+   * @param index the impact index
+   * @param searcher the searcher of the index the impact index was built from
+   */
+  public ImpactSearch(ImpactIndex index, IndexSearcher searcher) {
+    this.index = index;
+    this.searcher = searcher;
+    this.topScores = new ThreadLocal<TopScores>();
+  }
+
+  /**
+   * Returns the top documents of a disjunction of weighted terms.
+   *
+   * @param terms the terms of the query
+   * @param boosts how much each term's score is multiplied by
+   * @param k the number of documents to return
+   * @return ImpactTopDocs the top documents, where total hits is the number of documents scored
+   * @throws IOException - issue reading the postings
+   */
+  public ImpactTopDocs search(Term[] terms, float[] boosts, int k) throws IOException {
+    final int[] maxFreqs = new int[terms.length];
+    Arrays.fill(maxFreqs, Integer.MAX_VALUE);
+    return this.search(terms, boosts, maxFreqs, k);
+  }
+
+  /**
+   * Returns the top documents of a disjunction of weighted terms whose frequencies are capped.
+   *
+   * @param terms the terms of the query
+   * @param boosts how much each term's score is multiplied by
+   * @param maxFreqs the largest frequency each term's documents are scored with
+   * @param k the number of documents to return
+   * @return ImpactTopDocs the top documents, where total hits is the number of documents scored
+   * @throws IOException - issue reading the postings
+   */
+  public ImpactTopDocs search(Term[] terms, float[] boosts, int[] maxFreqs, int k)
+      throws IOException {
+    final int maxDoc = this.searcher.getIndexReader().maxDoc();
+    final Postings[] postings = new Postings[terms.length];
+    int total = 0;
+    for (int t = 0; t < terms.length; t++) {
+      if (boosts[t] > 0f) {
+        postings[t] = this.index.postings(terms[t]);
+        if (postings[t] == null || postings[t].maxFreq() > maxFreqs[t]) {
+          // the stored postings were scored without the cap
+          postings[t] = ImpactIndex.postings(this.searcher, terms[t], maxFreqs[t]);
+        }
+        total += postings[t].segments();
+      }
+    }
+    // every segment of every term from the largest contribution to the smallest
+    final long[] order = new long[total];
+    final float[] contributions = new float[total];
+    final float[] next = new float[terms.length];
+    float remaining = 0f;
+    int s = 0;
+    for (int t = 0; t < terms.length; t++) {
+      if (postings[t] == null) {
+        continue;
+      }
+      for (int segment = 0; segment < postings[t].segments(); segment++) {
+        contributions[s] = boosts[t] * postings[t].impact(segment);
+        order[s] = ((long) t << 32) | segment;
+        s += 1;
+      }
+      if (postings[t].segments() > 0) {
+        next[t] = boosts[t] * postings[t].impact(0);
+        remaining += next[t];
+      }
+    }
+    final Integer[] sorted = new Integer[total];
+    for (int i = 0; i < total; i++) {
+      sorted[i] = i;
+    }
+    Arrays.sort(
+        sorted,
+        new Comparator<Integer>() {
+          @Override
+          public int compare(Integer a, Integer b) {
+            final int compare = Float.compare(contributions[b], contributions[a]);
+            // a term's segments have to stay in the order they are stored
+            return compare != 0 ? compare : Long.compare(order[a], order[b]);
+          }
+        });
+    TopScores top = this.topScores.get();
+    if (top == null) {
+      top = new TopScores(maxDoc);
+      this.topScores.set(top);
+    }
+    top.reset(Math.max(1, Math.min(k, maxDoc)));
+    long read = 0;
+    for (final Integer i : sorted) {
+      if (top.isFull() && top.minimum() >= top.getOutside() + remaining) {
+        // the top k can no longer change
+        break;
+      }
+      final int t = (int) (order[i] >>> 32);
+      final int segment = (int) order[i];
+      final float contribution = contributions[i];
+      final int count = postings[t].nextSegment();
+      final int[] docs = postings[t].getDocs();
+      for (int d = 0; d < count; d++) {
+        top.add(docs[d], contribution);
+      }
+      read += count;
+      next[t] =
+          segment + 1 < postings[t].segments()
+              ? boosts[t] * postings[t].impact(segment + 1)
+              : 0f;
+      // summed again rather than updated so rounding never understates what is left
+      remaining = 0f;
+      for (final float value : next) {
+        remaining += value;
+      }
+    }
+    return top.topDocs(read);
+  }
+
+  /**
+   * The top documents of an impact search and how much of the postings it read.
+   *
+   * @author Dallas Fraser
+   * @since 2018-03-01
+   */
+  public static class ImpactTopDocs extends TopDocs {
+    private final long postingsRead;
+
+    /**
+     * Class constructor.
+     *
+     * @param totalHits the number of documents scored
+     * @param scoreDocs the top documents
+     * @param maxScore the highest score
+     * @param postingsRead the number of postings read
+     */
+    public ImpactTopDocs(int totalHits, ScoreDoc[] scoreDocs, float maxScore, long postingsRead) {
+      super(totalHits, scoreDocs, maxScore);
+      this.postingsRead = postingsRead;
+    }
+
+    /**
+     * Returns the number of postings read by the search.
+     *
+     * @return long the number of postings read
+     */
+    public long getPostingsRead() {
+      return this.postingsRead;
+    }
+  }
+
+  /**
+   * The score of every document and a heap of the top documents as the scores are added up.
+   *
+   * <p>A score only grows, so a document in the heap is moved down when its score grows and a
+   * document outside the heap replaces the lowest one once its score is larger.
+   *
+   * <p>The arrays are reused between searches, and only the documents a search scored are cleared
+   * for the next one.
+   */
+  private static class TopScores {
+    private final float[] scores;
+    private final int[] positions;
+    private int[] heap;
+    private int[] scored;
+    private int k;
+    private int size;
+    private int hits;
+    private float outside;
+
+    /**
+     * Class constructor.
+     *
+     * @param maxDoc the number of documents in the index
+     */
+    TopScores(int maxDoc) {
+      this.scores = new float[maxDoc];
+      this.positions = new int[maxDoc];
+      Arrays.fill(this.positions, -1);
+      this.heap = new int[0];
+      this.scored = new int[16];
+      this.k = 0;
+      this.size = 0;
+      this.hits = 0;
+      this.outside = 0f;
+    }
+
+    /**
+     * Clears the scores of the last search to start another.
+     *
+     * @param k the number of top documents to keep
+     */
+    void reset(int k) {
+      for (int i = 0; i < this.hits; i++) {
+        final int doc = this.scored[i];
+        this.scores[doc] = 0f;
+        this.positions[doc] = -1;
+      }
+      if (this.heap.length < k) {
+        this.heap = new int[k];
+      }
+      this.k = k;
+      this.size = 0;
+      this.hits = 0;
+      this.outside = 0f;
+    }
+
+    /**
+     * Adds to the score of a document.
+     *
+     * @param doc the document
+     * @param score the score to add (greater than 0)
+     */
+    void add(int doc, float score) {
+      if (this.scores[doc] == 0f) {
+        if (this.hits == this.scored.length) {
+          this.scored = ArrayUtil.grow(this.scored);
+        }
+        this.scored[this.hits] = doc;
+        this.hits += 1;
+      }
+      this.scores[doc] += score;
+      if (this.positions[doc] >= 0) {
+        this.downHeap(this.positions[doc]);
+      } else if (this.size < this.k) {
+        this.heap[this.size] = doc;
+        this.size += 1;
+        this.upHeap(this.size - 1);
+      } else if (this.lessThan(this.heap[0], doc)) {
+        final int evicted = this.heap[0];
+        this.positions[evicted] = -1;
+        this.outside = Math.max(this.outside, this.scores[evicted]);
+        this.heap[0] = doc;
+        this.downHeap(0);
+      } else {
+        this.outside = Math.max(this.outside, this.scores[doc]);
+      }
+    }
+
+    /**
+     * Returns whether the heap holds k documents.
+     *
+     * @return boolean True if the heap is full
+     */
+    boolean isFull() {
+      return this.size == this.k;
+    }
+
+    /**
+     * Returns the lowest score in the heap.
+     *
+     * @return float the lowest score of the top documents
+     */
+    float minimum() {
+      return this.scores[this.heap[0]];
+    }
+
+    /**
+     * Returns the largest score of a document that is not in the heap.
+     *
+     * <p>A document that left the heap and came back keeps its old score here, which only makes
+     * the bound looser.
+     *
+     * @return float the bound on the scores outside the heap
+     */
+    float getOutside() {
+      return this.outside;
+    }
+
+    /**
+     * Empties the heap into the top documents from the highest score to the lowest.
+     *
+     * @param postingsRead the number of postings the search read
+     * @return ImpactTopDocs the top documents
+     */
+    ImpactTopDocs topDocs(long postingsRead) {
+      final ScoreDoc[] results = new ScoreDoc[this.size];
+      for (int i = this.size - 1; i >= 0; i--) {
+        final int doc = this.heap[0];
+        results[i] = new ScoreDoc(doc, this.scores[doc]);
+        this.size -= 1;
+        if (this.size > 0) {
+          this.heap[0] = this.heap[this.size];
+          this.downHeap(0);
+        }
+      }
+      final float maxScore = results.length > 0 ? results[0].score : Float.NaN;
+      return new ImpactTopDocs(this.hits, results, maxScore, postingsRead);
+    }
+
+    /**
+     * Returns whether a document ranks lower than another, breaking ties by the larger document.
+     *
+     * @param a a document
+     * @param b another document
+     * @return boolean True if a ranks lower than b
+     */
+    private boolean lessThan(int a, int b) {
+      final float scoreA = this.scores[a];
+      final float scoreB = this.scores[b];
+      return scoreA < scoreB || (scoreA == scoreB && a > b);
+    }
+
+    /**
+     * Moves the document at a position of the heap up until its parent ranks lower.
+     *
+     * @param position the position in the heap
+     */
+    private void upHeap(int position) {
+      final int doc = this.heap[position];
+      while (position > 0) {
+        final int parent = (position - 1) >>> 1;
+        if (!this.lessThan(doc, this.heap[parent])) {
+          break;
+        }
+        this.heap[position] = this.heap[parent];
+        this.positions[this.heap[position]] = position;
+        position = parent;
+      }
+      this.heap[position] = doc;
+      this.positions[doc] = position;
+    }
+
+    /**
+     * Moves the document at a position of the heap down until its children rank higher.
+     *
+     * @param position the position in the heap
+     */
+    private void downHeap(int position) {
+      final int doc = this.heap[position];
+      while (true) {
+        int child = 2 * position + 1;
+        if (child >= this.size) {
+          break;
+        }
+        if (child + 1 < this.size && this.lessThan(this.heap[child + 1], this.heap[child])) {
+          child += 1;
+        }
+        if (!this.lessThan(this.heap[child], doc)) {
+          break;
+        }
+        this.heap[position] = this.heap[child];
+        this.positions[this.heap[position]] = position;
+        position = child;
+      }
+      this.heap[position] = doc;
+      this.positions[doc] = position;
+    }
+  }
+}
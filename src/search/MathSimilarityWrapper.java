@@ -28,6 +28,9 @@ import utilities.Constants;
  */
 public class MathSimilarityWrapper extends PerFieldSimilarityWrapper {
   Similarity similarity;
+  // kept so the fields' scoring tables are shared by every query
+  private final Similarity mathSimilarity;
+  private final Similarity textSimilarity;
 
   public MathSimilarityWrapper() {
     this(MathSimilarity.getSimilarity());
@@ -37,15 +40,17 @@ public class MathSimilarityWrapper extends PerFieldSimilarityWrapper {
   public MathSimilarityWrapper(Similarity similarity) {
     // default similarity
     this.similarity = similarity;
+    this.mathSimilarity = MathSimilarity.getSimilarity(MathSimilarity.MATH);
+    this.textSimilarity = MathSimilarity.getSimilarity(MathSimilarity.TEXT);
   }
 
   @Override
   public Similarity get(String field) {
     Similarity result;
     if (field.equals(Constants.MATHFIELD)) {
-      result = MathSimilarity.getSimilarity(MathSimilarity.MATH);
+      result = this.mathSimilarity;
     } else if (field.equals(Constants.TEXTFIELD)) {
-      result = MathSimilarity.getSimilarity(MathSimilarity.TEXT);
+      result = this.textSimilarity;
     } else {
       result = this.similarity;
     }
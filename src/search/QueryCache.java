@@ -0,0 +1,312 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package search;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+/**
+ * A bounded cache of the results of queries, safe to use from many threads.
+ *
+ * <p>The results are only valid for the index they were found in, so they are cached along with a
+ * key of the index's reader and the cache is emptied when asked with a different one.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class QueryCache {
+  /** Which entry is evicted when the cache is full. */
+  public enum Policy {
+    /** The least recently used. */
+    LRU,
+    /** The least frequently used, with ties going to the least recently used. */
+    LFU
+  }
+
+  private final int capacity;
+  private final Policy policy;
+  private final Map<String, Entry> entries;
+  // the entries from the first to be evicted to the last
+  private final TreeSet<Entry> order;
+  private Object readerKey;
+  private long tick;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Class constructor.
+   *
+   * @param capacity the most results to keep
+   * @param policy which result to evict when the cache is full
+   */
+  public QueryCache(int capacity, Policy policy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Cache needs room for at least one result: " + capacity);
+    }
+    this.capacity = capacity;
+    this.policy = policy;
+    this.entries = new HashMap<String, Entry>();
+    this.order = new TreeSet<Entry>();
+    this.readerKey = null;
+    this.tick = 0;
+    this.hits = 0;
+    this.misses = 0;
+    this.evictions = 0;
+  }
+
+  /**
+   * Returns the cached result of a query.
+   *
+   * @param readerKey the key of the reader being searched
+   * @param key the key of the query
+   * @return Result the result or null if it is not cached
+   */
+  public synchronized Result get(Object readerKey, String key) {
+    this.checkReader(readerKey);
+    final Entry entry = this.entries.get(key);
+    if (entry == null) {
+      this.misses += 1;
+      return null;
+    }
+    this.hits += 1;
+    // re-inserted since its place in the eviction order changes
+    this.order.remove(entry);
+    entry.uses += 1;
+    entry.used = this.tick++;
+    this.order.add(entry);
+    return entry.result;
+  }
+
+  /**
+   * Caches the result of a query, evicting another if the cache is full.
+   *
+   * @param readerKey the key of the reader the result was found in
+   * @param key the key of the query
+   * @param result the result
+   */
+  public synchronized void put(Object readerKey, String key, Result result) {
+    this.checkReader(readerKey);
+    Entry entry = this.entries.get(key);
+    if (entry != null) {
+      // another thread searched the same query at the same time
+      this.order.remove(entry);
+    } else {
+      if (this.entries.size() >= this.capacity) {
+        final Entry evicted = this.order.pollFirst();
+        this.entries.remove(evicted.key);
+        this.evictions += 1;
+      }
+      entry = new Entry(key);
+      this.entries.put(key, entry);
+    }
+    entry.result = result;
+    entry.uses += 1;
+    entry.used = this.tick++;
+    this.order.add(entry);
+  }
+
+  /**
+   * Empties the cache if the reader has changed since the results were cached.
+   *
+   * @param readerKey the key of the reader being searched
+   */
+  private void checkReader(Object readerKey) {
+    if (this.readerKey != readerKey) {
+      this.entries.clear();
+      this.order.clear();
+      this.readerKey = readerKey;
+    }
+  }
+
+  /** Empties the cache. */
+  public synchronized void clear() {
+    this.entries.clear();
+    this.order.clear();
+  }
+
+  /**
+   * Returns the number of results cached.
+   *
+   * @return int the number of results
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Returns the most results the cache keeps.
+   *
+   * @return int the capacity
+   */
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  /**
+   * Returns which result is evicted when the cache is full.
+   *
+   * @return Policy the eviction policy
+   */
+  public Policy getPolicy() {
+    return this.policy;
+  }
+
+  /**
+   * Returns the number of queries found in the cache.
+   *
+   * @return long the number of hits
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Returns the number of queries not found in the cache.
+   *
+   * @return long the number of misses
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Returns the number of results evicted to make room for others.
+   *
+   * @return long the number of evictions
+   */
+  public synchronized long getEvictions() {
+    return this.evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "QueryCache(%s, size=%d/%d, hits=%d, misses=%d, evictions=%d)",
+        this.policy,
+        this.entries.size(),
+        this.capacity,
+        this.hits,
+        this.misses,
+        this.evictions);
+  }
+
+  /**
+   * The result of a query without the query it was for, so it can be shared by queries with the
+   * same terms.
+   *
+   * <p>The documents are copied going in and out of the cache since their scores can be changed.
+   *
+   * @author Dallas Fraser
+   * @since 2018-03-01
+   */
+  public static class Result {
+    private final TopDocs results;
+    private final int size;
+    private final Query query;
+
+    /**
+     * Class constructor.
+     *
+     * @param results the documents returned by the query
+     * @param size the number of documents that could be returned by the query
+     * @param query the Lucene query
+     */
+    public Result(TopDocs results, int size, Query query) {
+      this.results = Result.copy(results);
+      this.size = size;
+      this.query = query;
+    }
+
+    /**
+     * Returns a copy of the documents returned by the query.
+     *
+     * @return TopDocs the documents
+     */
+    public TopDocs getResults() {
+      return Result.copy(this.results);
+    }
+
+    /**
+     * Returns a copy of the documents that shares nothing with them.
+     *
+     * @param results the documents (may be null)
+     * @return TopDocs the copy or null if there are no documents
+     */
+    private static TopDocs copy(TopDocs results) {
+      if (results == null) {
+        return null;
+      }
+      final ScoreDoc[] hits = new ScoreDoc[results.scoreDocs.length];
+      for (int i = 0; i < hits.length; i++) {
+        final ScoreDoc hit = results.scoreDocs[i];
+        hits[i] = new ScoreDoc(hit.doc, hit.score, hit.shardIndex);
+      }
+      return new TopDocs(results.totalHits, hits, results.getMaxScore());
+    }
+
+    /**
+     * Returns the number of documents that could be returned by the query.
+     *
+     * @return int the size of the results
+     */
+    public int getSize() {
+      return this.size;
+    }
+
+    /**
+     * Returns the Lucene query.
+     *
+     * @return Query the query
+     */
+    public Query getQuery() {
+      return this.query;
+    }
+  }
+
+  /** A cached result and how it has been used. */
+  private class Entry implements Comparable<Entry> {
+    private final String key;
+    private Result result;
+    private long uses;
+    private long used;
+
+    /**
+     * Class constructor.
+     *
+     * @param key the key of the query
+     */
+    Entry(String key) {
+      this.key = key;
+      this.uses = 0;
+      this.used = 0;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      if (QueryCache.this.policy == Policy.LFU && this.uses != other.uses) {
+        return Long.compare(this.uses, other.uses);
+      }
+      // ticks are unique so no two entries are equal
+      return Long.compare(this.used, other.used);
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package search;
+
+import java.util.Arrays;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+/**
+ * Sums the scores of documents from several searches without boxing.
+ *
+ * <p>The scores are kept in an open addressing table of document to score, sized for the number
+ * of documents expected rather than the whole index, and the top documents are taken with a
+ * bounded heap instead of sorting every document.
+ *
+ * @author Dallas Fraser
+ * @since 2018-03-01
+ */
+public class ScoreAccumulator {
+  private static final int EMPTY = -1;
+  private int[] docs;
+  private double[] scores;
+  private int mask;
+  private int size;
+
+  /**
+   * Class constructor.
+   *
+   * @param expected the number of documents expected
+   */
+  public ScoreAccumulator(int expected) {
+    int capacity = 16;
+    while (capacity < 2 * expected && capacity < (1 << 30)) {
+      capacity <<= 1;
+    }
+    this.allocate(capacity);
+  }
+
+  /**
+   * Allocates an empty table.
+   *
+   * @param capacity the number of slots (a power of two)
+   */
+  private void allocate(int capacity) {
+    this.docs = new int[capacity];
+    Arrays.fill(this.docs, ScoreAccumulator.EMPTY);
+    this.scores = new double[capacity];
+    this.mask = capacity - 1;
+    this.size = 0;
+  }
+
+  /**
+   * Returns the slot of a document, which is empty if the document has no score.
+   *
+   * @param doc the document
+   * @return int the slot
+   */
+  private int slot(int doc) {
+    // spread the bits since document ids are dense
+    final int hash = doc * 0x9E3779B9;
+    int slot = (hash ^ (hash >>> 16)) & this.mask;
+    while (this.docs[slot] != ScoreAccumulator.EMPTY && this.docs[slot] != doc) {
+      slot = (slot + 1) & this.mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Adds to the score of a document.
+   *
+   * @param doc the document
+   * @param score the score to add
+   */
+  public void add(int doc, double score) {
+    int slot = this.slot(doc);
+    if (this.docs[slot] == ScoreAccumulator.EMPTY) {
+      if (2 * (this.size + 1) > this.docs.length) {
+        this.grow();
+        slot = this.slot(doc);
+      }
+      this.docs[slot] = doc;
+      this.size += 1;
+    }
+    this.scores[slot] += score;
+  }
+
+  /**
+   * Returns the score of a document.
+   *
+   * @param doc the document
+   * @return double the score or 0 if the document has no score
+   */
+  public double get(int doc) {
+    final int slot = this.slot(doc);
+    return this.docs[slot] == ScoreAccumulator.EMPTY ? 0d : this.scores[slot];
+  }
+
+  /**
+   * Returns the number of documents with a score.
+   *
+   * @return int the number of documents
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /** Doubles the table. */
+  private void grow() {
+    final int[] oldDocs = this.docs;
+    final double[] oldScores = this.scores;
+    this.allocate(oldDocs.length << 1);
+    for (int i = 0; i < oldDocs.length; i++) {
+      if (oldDocs[i] != ScoreAccumulator.EMPTY) {
+        final int slot = this.slot(oldDocs[i]);
+        this.docs[slot] = oldDocs[i];
+        this.scores[slot] = oldScores[i];
+        this.size += 1;
+      }
+    }
+  }
+
+  /**
+   * Returns the top documents, with ties going to the smaller document.
+   *
+   * @param k the number of documents to return
+   * @return TopDocs the top documents where total hits is the number of documents with a score
+   */
+  public TopDocs topDocs(int k) {
+    final int n = Math.min(k, this.size);
+    // a min heap of slots where the root is the lowest ranked of the top documents
+    final int[] heap = new int[n];
+    int count = 0;
+    for (int slot = 0; slot < this.docs.length && n > 0; slot++) {
+      if (this.docs[slot] == ScoreAccumulator.EMPTY) {
+        continue;
+      }
+      if (count < n) {
+        heap[count] = slot;
+        this.upHeap(heap, count);
+        count += 1;
+      } else if (this.lessThan(heap[0], slot)) {
+        heap[0] = slot;
+        this.downHeap(heap, count);
+      }
+    }
+    final ScoreDoc[] results = new ScoreDoc[n];
+    for (int i = n - 1; i >= 0; i--) {
+      results[i] = new ScoreDoc(this.docs[heap[0]], (float) this.scores[heap[0]]);
+      count -= 1;
+      heap[0] = heap[count];
+      this.downHeap(heap, count);
+    }
+    final float maxScore = n > 0 ? results[0].score : Float.NaN;
+    return new TopDocs(this.size, results, maxScore);
+  }
+
+  /**
+   * Returns whether the document of a slot ranks lower than another.
+   *
+   * @param a a slot
+   * @param b another slot
+   * @return boolean True if a ranks lower than b
+   */
+  private boolean lessThan(int a, int b) {
+    return this.scores[a] < this.scores[b]
+        || (this.scores[a] == this.scores[b] && this.docs[a] > this.docs[b]);
+  }
+
+  /**
+   * Moves the last slot added up the heap.
+   *
+   * @param heap the heap
+   * @param position the position of the slot
+   */
+  private void upHeap(int[] heap, int position) {
+    final int slot = heap[position];
+    while (position > 0) {
+      final int parent = (position - 1) >>> 1;
+      if (!this.lessThan(slot, heap[parent])) {
+        break;
+      }
+      heap[position] = heap[parent];
+      position = parent;
+    }
+    heap[position] = slot;
+  }
+
+  /**
+   * Moves the root of the heap down.
+   *
+   * @param heap the heap
+   * @param size the number of slots in the heap
+   */
+  private void downHeap(int[] heap, int size) {
+    if (size == 0) {
+      return;
+    }
+    final int slot = heap[0];
+    int position = 0;
+    while (true) {
+      int child = 2 * position + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && this.lessThan(heap[child + 1], heap[child])) {
+        child += 1;
+      }
+      if (!this.lessThan(heap[child], slot)) {
+        break;
+      }
+      heap[position] = heap[child];
+      position = child;
+    }
+    heap[position] = slot;
+  }
+}
@@ -18,17 +18,27 @@ package search;
 
 import index.ConvertConfig;
 import index.ConvertConfig.ConvertConfigException;
+import index.ImpactIndex;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.parsers.ParserConfigurationException;
@@ -36,20 +46,30 @@ import javax.xml.xpath.XPathExpressionException;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.CollectionStatistics;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.similarities.PerFieldSimilarityWrapper;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.FSDirectory;
 import org.xml.sax.SAXException;
+import query.MathDisjunctionQuery;
 import query.MathQuery;
 import query.MathSimilarity;
+import query.MathTermQuery;
 import query.ParseQueries;
+import query.TermCountPair;
 import utilities.Constants;
 import utilities.Functions;
 import utilities.ProjectLogger;
@@ -66,9 +86,20 @@ public class Search {
   private ConvertConfig config;
   private final boolean synonym;
   private final IndexReader reader;
+  private final ImpactIndex impacts;
+  private final ImpactSearch impactSearch;
   private float alpha = 1.0f;
   private float beta = 1.0f;
+  private boolean pruning = false;
+  private int parallelism = 1;
+  private volatile QueryCache cache = null;
+  private ExecutorService executor = null;
+  private final ExecutorService searchPool;
+  private final int threads;
+  private long timeout = 0;
   private static final int DEFAULT_K = 100;
+  private static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+  private static final long IDLE_SECONDS = 30;
   private static final int MAX_CLUASES = 4096;
   private static final int TOMPA_SEARCH_LIMIT = 10000;
   private static final float TOMPA_B = 0.75f;
@@ -173,6 +204,28 @@ public class Search {
    */
   public Search(Path index, Logger logger, ConvertConfig config, Similarity similarity)
       throws IOException, SearchConfigException, ConvertConfigException {
+    this(index, logger, config, similarity, Search.DEFAULT_THREADS);
+  }
+
+  /**
+   * Class Constructor.
+   *
+   * @param index path to the index
+   * @param logger the logger to use
+   * @param config the config to convert MathML and determine Query Type
+   * @param similarity the similarity to use when searching
+   * @param threads the number of threads to search the segments of the index with (1 to search
+   *     them one after another on the calling thread)
+   * @throws IOException - issue with reading/writing to a file
+   * @throws SearchConfigException - issue with seach config
+   * @throws ConvertConfigException - issue with converting search queries
+   */
+  public Search(
+      Path index, Logger logger, ConvertConfig config, Similarity similarity, int threads)
+      throws IOException, SearchConfigException, ConvertConfigException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Need at least one thread to search: " + threads);
+    }
     // increase the clause count since formulas can be a slight bit longer
     BooleanQuery.setMaxClauseCount(Search.MAX_CLUASES);
     // remember if synonyms were used when indexing
@@ -189,11 +242,34 @@ public class Search {
       logger.log(Level.WARNING, "Incompatible config files: " + config + " vs " + indexConfig);
       throw new SearchConfigException("Config did not match index");
     }
-    this.reader = DirectoryReader.open(FSDirectory.open(index));
-    this.searcher = new IndexSearcher(this.reader);
+    final DirectoryReader reader = DirectoryReader.open(FSDirectory.open(index));
+    this.reader = reader;
+    this.threads = threads;
+    this.searchPool = threads > 1 ? Search.searchPool(threads) : null;
+    this.searcher = new BalancedIndexSearcher(this.reader, this.searchPool, threads);
     // allows for different fields to use different similarity classes
     final PerFieldSimilarityWrapper wrapper = new MathSimilarityWrapper(similarity);
     this.searcher.setSimilarity(wrapper);
+    ImpactIndex impacts = null;
+    if (ConvertConfig.IMPACT_QUERY.equals(config.getQueryType())) {
+      impacts = ImpactIndex.open(index);
+      if (impacts == null) {
+        logger.log(Level.WARNING, "No impact index was built so searching in document order");
+      } else if (!impacts.isCurrent(reader)) {
+        logger.log(Level.WARNING, "Impact index is out of date so searching in document order");
+        impacts.close();
+        impacts = null;
+      } else if (!impacts.isScoredWith(wrapper)) {
+        // the terms scored at search time would not add up with the stored impacts
+        logger.log(
+            Level.WARNING,
+            "Impact index was built with a different similarity so searching in document order");
+        impacts.close();
+        impacts = null;
+      }
+    }
+    this.impacts = impacts;
+    this.impactSearch = impacts == null ? null : new ImpactSearch(impacts, this.searcher);
     this.config = config;
     this.logger = logger;
     this.alpha = 1.0f;
@@ -201,12 +277,111 @@ public class Search {
   }
 
   /**
-   * Closes the reader of the index.
+   * Returns a pool of daemon threads to search with.
+   *
+   * @param threads the number of threads
+   * @return ExecutorService the pool
+   */
+  private static ExecutorService searchPool(int threads) {
+    final ThreadFactory factory =
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "search-" + this.count.incrementAndGet());
+            // a search that is never closed does not keep the program running
+            thread.setDaemon(true);
+            return thread;
+          }
+        };
+    final ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            Search.IDLE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            factory);
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * Closes the reader of the index and the impact index, and shuts down the threads searching
+   * the segments.
    *
    * @throws IOException - issue with reading/writing to a file
    */
   public void close() throws IOException {
-    this.reader.close();
+    if (this.cache != null) {
+      this.cache.clear();
+    }
+    try {
+      if (this.impacts != null) {
+        this.impacts.close();
+      }
+    } finally {
+      try {
+        this.shutdownSearchPool();
+      } finally {
+        this.reader.close();
+      }
+    }
+  }
+
+  /**
+   * Shuts down the threads searching the segments, waiting for searches already running.
+   *
+   * @throws IOException - interrupted while waiting
+   */
+  private void shutdownSearchPool() throws IOException {
+    if (this.searchPool == null) {
+      return;
+    }
+    this.searchPool.shutdown();
+    try {
+      if (!this.searchPool.awaitTermination(Search.IDLE_SECONDS, TimeUnit.SECONDS)) {
+        this.logger.log(Level.WARNING, "Searches still running when closing, interrupting them");
+        this.searchPool.shutdownNow();
+      }
+    } catch (final InterruptedException e) {
+      this.searchPool.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted closing the search");
+    }
+  }
+
+  /**
+   * Returns the cache of query results.
+   *
+   * @return QueryCache the cache or null if results are not cached
+   */
+  public QueryCache getCache() {
+    return this.cache;
+  }
+
+  /**
+   * Sets the cache of query results, which is off by default.
+   *
+   * <p>Queries with the same terms, including ones from different topics, share results as long
+   * as the query type, weights, pruning and k are the same. The cache is emptied when the index
+   * is reopened (a new reader) or the search is closed, and should be cleared after changing the
+   * config.
+   *
+   * @param cache the cache or null to not cache results
+   */
+  public void setCache(QueryCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Returns the number of threads the segments of the index are searched with.
+   *
+   * @return int the number of threads
+   */
+  public int getThreads() {
+    return this.threads;
   }
 
   /**
@@ -254,6 +429,73 @@ public class Search {
     this.beta = beta;
   }
 
+  /**
+   * Returns whether disjunctions of terms only score the documents that could be in the top k.
+   *
+   * @return boolean True if pruning the documents scored
+   */
+  public boolean getPruning() {
+    return this.pruning;
+  }
+
+  /**
+   * Sets whether disjunctions of terms only score the documents that could be in the top k.
+   *
+   * <p>The top k is the same either way, but the total hits of a pruned search only count the
+   * documents that were scored, so pruning is off by default.
+   *
+   * @param pruning True if to prune the documents scored
+   */
+  public void setPruning(boolean pruning) {
+    this.pruning = pruning;
+  }
+
+  /**
+   * Returns the executor the sub queries of a query are run on.
+   *
+   * @return ExecutorService the executor or null if the sub queries are run one after another
+   */
+  public ExecutorService getExecutor() {
+    return this.executor;
+  }
+
+  /**
+   * Sets the executor to run the sub queries of a query on (the formulas and text of a tompa
+   * search).
+   *
+   * <p>The executor is not shut down when closing the search and bounds how many sub queries run
+   * at once, e.g. Executors.newFixedThreadPool(parallelism).
+   *
+   * @param executor the executor or null to run the sub queries one after another
+   */
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Returns how long a query waits for its sub queries.
+   *
+   * @return long the timeout in milliseconds (0 to wait until they complete)
+   */
+  public long getTimeout() {
+    return this.timeout;
+  }
+
+  /**
+   * Sets how long a query waits for its sub queries when they are run on the executor.
+   *
+   * <p>Sub queries that have not completed by then stop collecting and are left out of the
+   * results.
+   *
+   * @param timeout the timeout in milliseconds (0 to wait until they complete)
+   */
+  public void setTimeout(long timeout) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Timeout cannot be negative: " + timeout);
+    }
+    this.timeout = timeout;
+  }
+
   /**
    * Search using the query and return a list of the documents file paths.
    *
@@ -319,6 +561,94 @@ public class Search {
    * @throws IOException - issue with reading/writing to a file
    */
   public SearchResult searchQuery(MathQuery mathQuery, int k) throws IOException {
+    final QueryCache queryCache = this.cache;
+    if (queryCache == null || !this.cacheable(mathQuery)) {
+      return this.searchUncached(mathQuery, k);
+    }
+    final Object readerKey = this.reader.getCombinedCoreAndDeletesKey();
+    final String key = this.cacheKey(mathQuery, k);
+    final QueryCache.Result cached = queryCache.get(readerKey, key);
+    if (cached != null) {
+      return new SearchResult(cached.getResults(), mathQuery, cached.getSize(), cached.getQuery());
+    }
+    final SearchResult result = this.searchUncached(mathQuery, k);
+    queryCache.put(
+        readerKey,
+        key,
+        new QueryCache.Result(result.getResults(), result.getSize(), result.getQuery()));
+    return result;
+  }
+
+  /**
+   * Returns whether the results of a query can be cached.
+   *
+   * @param mathQuery the query to check
+   * @return boolean True if the results can be cached
+   */
+  private boolean cacheable(MathQuery mathQuery) {
+    if (mathQuery.getTerms().size() <= 0) {
+      return false;
+    }
+    // a tompa search that timed out only has some of its formulas
+    return !(ConvertConfig.TOMPA_QUERY.equals(this.config.getQueryType())
+        && this.executor != null
+        && this.timeout > 0);
+  }
+
+  /**
+   * Returns the key of a query in the cache.
+   *
+   * <p>The terms are counted and sorted so queries with the same terms share results, along with
+   * everything else the search depends on. The config is read for every key since it can be
+   * changed through {@link #getConfig()}.
+   *
+   * @param mathQuery the query
+   * @param k the number of documents to return
+   * @return String the key
+   */
+  private String cacheKey(MathQuery mathQuery, int k) {
+    final List<String> terms = new ArrayList<String>();
+    for (final TermCountPair termPair :
+        mathQuery.uniqueTerms(new ArrayList<String>(mathQuery.getTerms()))) {
+      terms.add(termPair.getTerm() + "^" + termPair.getCount());
+    }
+    Collections.sort(terms);
+    final List<String> phrases = new ArrayList<String>(mathQuery.getPhrases());
+    Collections.sort(phrases);
+    final List<String> formulas = new ArrayList<String>(mathQuery.getFormulas());
+    Collections.sort(formulas);
+    final StringBuilder key = new StringBuilder();
+    key.append(this.config.settings())
+        .append('\n')
+        .append(mathQuery.getFieldName())
+        .append('\n')
+        .append(this.alpha)
+        .append('\n')
+        .append(this.beta)
+        .append('\n')
+        .append(k)
+        .append('\n')
+        .append(this.pruning)
+        .append('\n')
+        .append(MathQuery.WILDCARD_BOOST);
+    for (final List<String> part : Arrays.asList(terms, phrases, formulas)) {
+      key.append('\n').append(part.size());
+      for (final String value : part) {
+        key.append('\n').append(value);
+      }
+    }
+    return key.toString();
+  }
+
+  /**
+   * Returns search results of a query without looking in the cache.
+   *
+   * @param mathQuery the query to search
+   * @param k the number of documents to return
+   * @return SearchResult the results of the search
+   * @throws IOException - issue with reading/writing to a file
+   */
+  private SearchResult searchUncached(MathQuery mathQuery, int k) throws IOException {
     this.logger.log(
         Level.FINER,
         "Query: "
@@ -328,6 +658,8 @@ public class Search {
     SearchResult result = null;
     if (ConvertConfig.TOMPA_QUERY.equals(this.config.getQueryType())) {
       result = this.tompaSearch(mathQuery, k);
+    } else if (this.impactSearch != null && this.impactSearchable(mathQuery)) {
+      result = this.impactSearch(mathQuery, k);
     } else {
       if (mathQuery.getTerms().size() <= 0) {
         this.logger.log(Level.WARNING, "Query has no elements: " + mathQuery.getQueryName());
@@ -358,13 +690,94 @@ public class Search {
 
         this.logger.log(Level.FINEST, "Boolean Query Size:" + mathQuery.getTerms().size());
         this.logger.log(Level.FINEST, "BuildQuery:" + buildQuery);
-        final TopDocs searchResultsWild = this.searcher.search(buildQuery, k);
+        final Query searchQuery =
+            this.pruning ? MathDisjunctionQuery.create(buildQuery, k) : buildQuery;
+        final TopDocs searchResultsWild = this.searcher.search(searchQuery, k);
         result = new SearchResult(searchResultsWild, mathQuery, k, buildQuery);
       }
     }
     return result;
   }
 
+  /**
+   * Returns whether the impact index can answer a query.
+   *
+   * <p>Only the terms of a query are impact ordered, so queries that need wildcard matching,
+   * location boosts or phrases are searched in document order.
+   *
+   * @param mathQuery the query to check
+   * @return boolean True if the query can be searched with the impact index
+   */
+  private boolean impactSearchable(MathQuery mathQuery) {
+    if (mathQuery.getTerms().size() <= 0
+        || this.config.getAttribute(ConvertConfig.BOOST_LOCATION)
+        || (this.config.getAttribute(ConvertConfig.PROXIMITY)
+            && !mathQuery.getPhrases().isEmpty())) {
+      return false;
+    }
+    if (!this.synonym) {
+      for (final String term : mathQuery.getTerms()) {
+        if (Functions.containsWildcard(term)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a SearchResult using the impact ordered postings.
+   *
+   * <p>Each term is scored the same as its query in the document ordered search, boosted by the
+   * number of times it is in the query when boosting queries, but the scores are quantized and the
+   * search stops once the top k can no longer change.
+   *
+   * @param mathQuery mathQuery to run
+   * @param k the number of results to return
+   * @return search result
+   * @throws IOException - issue with reading/writing to a file
+   * @see ImpactSearch
+   */
+  public SearchResult impactSearch(MathQuery mathQuery, int k) throws IOException {
+    final List<TermCountPair> uniqueTerms =
+        mathQuery.uniqueTerms(new ArrayList<String>(mathQuery.getTerms()));
+    final Term[] terms = new Term[uniqueTerms.size()];
+    final float[] boosts = new float[terms.length];
+    final int[] maxFreqs = new int[terms.length];
+    final BooleanQuery.Builder bq = new BooleanQuery.Builder();
+    for (int i = 0; i < terms.length; i++) {
+      final TermCountPair termPair = uniqueTerms.get(i);
+      final String text = termPair.getTerm().trim();
+      String field = mathQuery.getFieldName();
+      if (this.config.getAttribute(ConvertConfig.SEPERATE_MATH_TEXT)) {
+        field = text.startsWith("(") ? Constants.MATHFIELD : Constants.TEXTFIELD;
+      }
+      terms[i] = new Term(field, text);
+      boosts[i] =
+          this.config.getAttribute(ConvertConfig.BOOST_QUERIES) ? termPair.getCount() : 1.0f;
+      // the equivalent query so the results can still be explained
+      Query termQuery = new TermQuery(terms[i]);
+      maxFreqs[i] = Integer.MAX_VALUE;
+      if (text.startsWith("(") && this.config.getMathBM25()) {
+        // math BM25 scores a tuple at most as often as it is in the query
+        maxFreqs[i] = (int) termPair.getCount();
+        termQuery = new MathTermQuery(terms[i], maxFreqs[i]);
+      }
+      bq.add(new BoostQuery(termQuery, boosts[i]), BooleanClause.Occur.SHOULD);
+    }
+    final TopDocs results = this.impactSearch.search(terms, boosts, maxFreqs, k);
+    return new SearchResult(results, mathQuery, k, bq.build());
+  }
+
+  /**
+   * Returns the search over the impact index.
+   *
+   * @return ImpactSearch the impact search or null if the impact index is not used
+   */
+  public ImpactSearch getImpactSearch() {
+    return this.impactSearch;
+  }
+
   /**
    * Returns a SearchResult using tompa search method.
    *
@@ -387,10 +800,12 @@ public class Search {
       final Query textQuery = mathQuery.buildTextQuery(Constants.TEXTFIELD, bq);
       final List<Query> formulaQueries =
           mathQuery.buildFormulaQuery(Constants.MATHFIELD, this.synonym, this.config);
-      final Map<Integer, Double> scoreLookup = new HashMap<Integer, Double>();
-      // score the formulas
-      TopDocs formulaResults;
-      final TopDocs textResults = this.searcher.search(textQuery, Search.TOMPA_SEARCH_LIMIT);
+      // the text and every formula are searched at once when there is an executor
+      final List<Query> subQueries = new ArrayList<Query>(formulaQueries);
+      subQueries.add(textQuery);
+      final List<TopDocs> subResults =
+          this.searchAll(mathQuery, subQueries, Search.TOMPA_SEARCH_LIMIT);
+      final TopDocs textResults = subResults.get(formulaQueries.size());
       final CollectionStatistics stats = this.searcher.collectionStatistics(Constants.MATHFIELD);
       final long sumTotalTermFreq = stats.sumTotalTermFreq();
       final int docCount = (int) (stats.docCount() == -1 ? stats.maxDoc() : stats.docCount());
@@ -398,18 +813,27 @@ public class Search {
       if (sumTotalTermFreq > 0) {
         avgDocLength = sumTotalTermFreq / (double) docCount;
       }
+      final ScoreAccumulator scores =
+          new ScoreAccumulator(
+              Math.min(
+                  this.reader.maxDoc(), (formulaQueries.size() + 1) * Search.TOMPA_SEARCH_LIMIT));
+      final List<LeafReaderContext> leaves = this.reader.leaves();
+      final NumericDocValues[] formulaCounts = new NumericDocValues[leaves.size()];
+      for (final LeafReaderContext leaf : leaves) {
+        formulaCounts[leaf.ord] = leaf.reader().getNumericDocValues(Constants.FORMULA_COUNT);
+      }
       // score all the formulas using the ranking of it is the results
-      for (final Query formula : formulaQueries) {
-        formulaResults = this.searcher.search(formula, Search.TOMPA_SEARCH_LIMIT);
+      for (int f = 0; f < formulaQueries.size(); f++) {
+        final TopDocs formulaResults = subResults.get(f);
+        if (formulaResults == null) {
+          continue;
+        }
         final ScoreDoc[] hits = formulaResults.scoreDocs;
         int rank = 1;
         int pos = 0;
         for (final ScoreDoc hit : hits) {
-          final Integer docId = new Integer(hit.doc);
-          final double docLength =
-              Double.parseDouble(this.searcher.doc(docId.intValue()).get(Constants.FORMULA_COUNT));
-          final Double prevScore = scoreLookup.get(docId);
-          final Double currentScore =
+          final double docLength = this.formulaCount(hit.doc, leaves, formulaCounts);
+          final double currentScore =
               Functions.scoreFormula(
                   docLength,
                   docCount,
@@ -418,11 +842,7 @@ public class Search {
                   Search.TOMPA_K1,
                   Search.TOMPA_B,
                   hit.score);
-          if (prevScore == null) {
-            scoreLookup.put(docId, Search.MATH_WEIGHT * currentScore);
-          } else {
-            scoreLookup.put(docId, prevScore + Search.MATH_WEIGHT * currentScore);
-          }
+          scores.add(hit.doc, Search.MATH_WEIGHT * currentScore);
           if (pos > 0 && hits[pos].score != hits[pos - 1].score) {
             // if the the two scores are equal then rank should be the same
             rank += 1;
@@ -432,47 +852,115 @@ public class Search {
       }
       // add the formula
       // with the text results
-      for (final ScoreDoc hit : textResults.scoreDocs) {
-        final Integer docId = new Integer(hit.doc);
-        final Double prevScore = scoreLookup.get(docId);
-        final Double currentScore = new Double(hit.score);
-        if (prevScore == null) {
-          scoreLookup.put(docId, Search.TEXT_WEIGHT * currentScore);
-        } else {
-          scoreLookup.put(docId, prevScore + Search.TEXT_WEIGHT * currentScore);
+      if (textResults != null) {
+        for (final ScoreDoc hit : textResults.scoreDocs) {
+          scores.add(hit.doc, Search.TEXT_WEIGHT * (double) hit.score);
         }
       }
-      // now have all the scores
-      // build up an array
-
-      ScoreDoc[] results = new ScoreDoc[scoreLookup.size()];
-      int pos = 0;
-      for (final Map.Entry<Integer, Double> entry : scoreLookup.entrySet()) {
-        final Integer docId = entry.getKey();
-        final Double score = entry.getValue();
-        results[pos] = new ScoreDoc(docId.intValue(), score.floatValue());
-        pos++;
+      // now have all the scores so keep the top k
+      final TopDocs finalResults = scores.topDocs(k);
+      k = finalResults.scoreDocs.length;
+      result = new SearchResult(finalResults, mathQuery, k, textQuery);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the top documents of each query, searching them at once when there is an executor.
+   *
+   * @param mathQuery the query the sub queries are from (for logging)
+   * @param queries the sub queries
+   * @param n the number of documents to return for each query
+   * @return List the top documents of each query in the same order (null where a query timed out)
+   * @throws IOException - issue with reading/writing to a file
+   */
+  private List<TopDocs> searchAll(MathQuery mathQuery, List<Query> queries, final int n)
+      throws IOException {
+    final List<TopDocs> results = new ArrayList<TopDocs>(queries.size());
+    final ExecutorService pool = this.executor;
+    if (pool == null || queries.size() <= 1) {
+      for (final Query query : queries) {
+        results.add(this.searcher.search(query, n));
       }
-      // just need to sort
-      Arrays.sort(
-          results,
-          (o1, o2) -> {
-            if (o1.score < o2.score) {
-              return 1;
-            } else if (o1.score > o2.score) {
-              return -1;
-            } else {
-              return 0;
+      return results;
+    }
+    final List<Callable<TopDocs>> tasks = new ArrayList<Callable<TopDocs>>(queries.size());
+    final int hits = Math.min(n, Math.max(1, this.reader.maxDoc()));
+    // the sub queries stop themselves at the deadline since interrupting them can close the index
+    final long deadline =
+        this.timeout > 0
+            ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeout)
+            : Long.MAX_VALUE;
+    for (final Query query : queries) {
+      tasks.add(
+          new Callable<TopDocs>() {
+            @Override
+            public TopDocs call() throws IOException {
+              if (deadline == Long.MAX_VALUE) {
+                return Search.this.searcher.search(query, n);
+              }
+              final DeadlineCollectorManager manager = new DeadlineCollectorManager(hits, deadline);
+              final TopDocs results = Search.this.searcher.search(query, manager);
+              return manager.isTimedOut() ? null : results;
             }
           });
-      if (scoreLookup.size() < k) {
-        k = scoreLookup.size();
+    }
+    final List<Future<TopDocs>> futures;
+    try {
+      futures = pool.invokeAll(tasks);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted searching " + mathQuery.getQueryName());
+    }
+    int timedOut = 0;
+    for (final Future<TopDocs> future : futures) {
+      TopDocs result = null;
+      try {
+        result = future.get();
+        if (result == null) {
+          timedOut += 1;
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted searching " + mathQuery.getQueryName());
+      } catch (final ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
       }
-      results = Arrays.copyOfRange(results, 0, k);
-      final TopDocs finalResults = new TopDocs(k, results, results[0].score);
-      result = new SearchResult(finalResults, mathQuery, k, textQuery);
+      results.add(result);
     }
-    return result;
+    if (timedOut > 0) {
+      this.logger.log(
+          Level.WARNING,
+          timedOut
+              + " of "
+              + queries.size()
+              + " sub queries timed out for "
+              + mathQuery.getQueryName());
+    }
+    return results;
+  }
+
+  /**
+   * Returns the number of formulas in a document.
+   *
+   * @param doc the document
+   * @param leaves the leaves of the index
+   * @param formulaCounts the formula counts of each leaf (null where the leaf does not have them)
+   * @return double the number of formulas
+   * @throws IOException - issue with reading/writing to a file
+   */
+  private double formulaCount(
+      int doc, List<LeafReaderContext> leaves, NumericDocValues[] formulaCounts)
+      throws IOException {
+    final int leaf = ReaderUtil.subIndex(doc, leaves);
+    if (formulaCounts[leaf] != null) {
+      return formulaCounts[leaf].get(doc - leaves.get(leaf).docBase);
+    }
+    // indexes built before the count was a doc value only have it stored
+    return Double.parseDouble(this.searcher.doc(doc).get(Constants.FORMULA_COUNT));
   }
 
   /**
@@ -507,18 +995,140 @@ public class Search {
   public ArrayList<SearchResult> searchQueries(Path queries, int k)
       throws IOException, InterruptedException, XPathExpressionException,
           ParserConfigurationException, SAXException {
-    // init the list of query results
-    final ArrayList<SearchResult> results = new ArrayList<SearchResult>();
-    // parse the query file
+    return this.searchQueries(this.loadQueries(queries), k, this.parallelism);
+  }
+
+  /**
+   * Returns the queries found in a file.
+   *
+   * @param queries the path to the file of queries
+   * @return ArrayList the queries
+   * @throws XPathExpressionException - issue when parsing query
+   * @throws IOException - issue with reading/writing to a file
+   * @throws InterruptedException - issue when converting tuple
+   * @throws ParserConfigurationException - issue with parser
+   * @throws SAXException - issue when parsing query
+   */
+  private ArrayList<MathQuery> loadQueries(Path queries)
+      throws IOException, InterruptedException, XPathExpressionException,
+          ParserConfigurationException, SAXException {
     final ParseQueries queryLoader = new ParseQueries(queries.toFile(), this.config);
     final ArrayList<MathQuery> mathQueries = queryLoader.getQueries();
     queryLoader.deleteFile();
-    for (final MathQuery mq : mathQueries) {
-      results.add(this.searchQuery(mq, k));
+    return mathQueries;
+  }
+
+  /**
+   * Returns the search results of a batch of queries in the same order as the queries.
+   *
+   * @param queries the queries to search
+   * @param k the number of documents to return for each query
+   * @param parallelism the number of queries to search at once
+   * @return ArrayList a list of search results
+   * @throws IOException - issue with reading/writing to a file
+   * @throws InterruptedException - interrupted while waiting for the queries
+   */
+  public ArrayList<SearchResult> searchQueries(List<MathQuery> queries, int k, int parallelism)
+      throws IOException, InterruptedException {
+    return this.searchQueries(queries, k, parallelism, null);
+  }
+
+  /**
+   * Returns the search results of a batch of queries in the same order as the queries.
+   *
+   * <p>The queries share the searcher of the index and are searched on a pool of threads that is
+   * shut down once the batch is done. The listener is called on the calling thread with the
+   * results of each query in the same order as the queries, as soon as the query and all the ones
+   * before it are done.
+   *
+   * @param queries the queries to search
+   * @param k the number of documents to return for each query
+   * @param parallelism the number of queries to search at once (1 to search them one after
+   *     another on the calling thread)
+   * @param listener the listener to pass each result to as it arrives (null for none)
+   * @return ArrayList a list of search results
+   * @throws IOException - issue with reading/writing to a file
+   * @throws InterruptedException - interrupted while waiting for the queries
+   */
+  public ArrayList<SearchResult> searchQueries(
+      List<MathQuery> queries, final int k, int parallelism, ResultListener listener)
+      throws IOException, InterruptedException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Need to search at least one query at once");
+    }
+    final ArrayList<SearchResult> results = new ArrayList<SearchResult>(queries.size());
+    if (parallelism == 1 || queries.size() <= 1) {
+      for (final MathQuery query : queries) {
+        final SearchResult result = this.searchQuery(query, k);
+        results.add(result);
+        if (listener != null) {
+          listener.result(results.size() - 1, result);
+        }
+      }
+      return results;
+    }
+    final ExecutorService pool = Search.searchPool(Math.min(parallelism, queries.size()));
+    try {
+      final List<Future<SearchResult>> futures =
+          new ArrayList<Future<SearchResult>>(queries.size());
+      for (final MathQuery query : queries) {
+        futures.add(
+            pool.submit(
+                new Callable<SearchResult>() {
+                  @Override
+                  public SearchResult call() throws IOException {
+                    return Search.this.searchQuery(query, k);
+                  }
+                }));
+      }
+      for (final Future<SearchResult> future : futures) {
+        final SearchResult result;
+        try {
+          result = future.get();
+        } catch (final ExecutionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new IOException(cause);
+        }
+        results.add(result);
+        if (listener != null) {
+          listener.result(results.size() - 1, result);
+        }
+      }
+    } finally {
+      // stops the queries left when one fails
+      pool.shutdownNow();
     }
     return results;
   }
 
+  /**
+   * Returns the number of queries searched at once when searching a file of queries.
+   *
+   * @return int the number of queries
+   */
+  public int getParallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * Sets the number of queries searched at once when searching a file of queries.
+   *
+   * @param parallelism the number of queries (1 to search them one after another)
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Need to search at least one query at once");
+    }
+    this.parallelism = parallelism;
+  }
+
   /**
    * Explains the queries results and the scoring of each document.
    *
@@ -633,34 +1243,48 @@ public class Search {
    * @throws ParserConfigurationException - issue with parser
    * @throws SAXException - issue when parsing query
    */
-  public void recordQueries(Path queries, BufferedWriter queryWriter, int k)
+  public void recordQueries(Path queries, final BufferedWriter queryWriter, int k)
       throws IOException, XPathExpressionException, InterruptedException,
           ParserConfigurationException, SAXException {
-    final ArrayList<SearchResult> queryResults = this.searchQueries(queries, k);
-    MathQuery query;
-    Document doc;
-    ScoreDoc[] hits;
-    int index;
-    for (final SearchResult queryResult : queryResults) {
-      // loop through each query
-      query = queryResult.getMathQuery();
-      hits = queryResult.getResults().scoreDocs;
-      index = 0;
-      for (final ScoreDoc hit : hits) {
-        // loop through every result of the
-        doc = this.searcher.doc(hit.doc);
-        queryWriter.write(
-            query.getQueryName()
-                + " 2 "
-                + Functions.parseTitle(doc.get("path"))
-                + " "
-                + (index + 1)
-                + " "
-                + hit.score
-                + " UW");
-        queryWriter.newLine();
-        index += 1;
-      }
+    // write the results of each query as they arrive
+    this.searchQueries(
+        this.loadQueries(queries),
+        k,
+        this.parallelism,
+        new ResultListener() {
+          @Override
+          public void result(int index, SearchResult result) throws IOException {
+            Search.this.recordResult(result, queryWriter);
+          }
+        });
+  }
+
+  /**
+   * Records the results of a query.
+   *
+   * @param queryResult the results of the query
+   * @param queryWriter the file to output the query results to
+   * @throws IOException - issue with reading/writing to a file
+   */
+  private void recordResult(SearchResult queryResult, BufferedWriter queryWriter)
+      throws IOException {
+    final MathQuery query = queryResult.getMathQuery();
+    final ScoreDoc[] hits = queryResult.getResults().scoreDocs;
+    int index = 0;
+    for (final ScoreDoc hit : hits) {
+      // loop through every result of the
+      final Document doc = this.searcher.doc(hit.doc);
+      queryWriter.write(
+          query.getQueryName()
+              + " 2 "
+              + Functions.parseTitle(doc.get("path"))
+              + " "
+              + (index + 1)
+              + " "
+              + hit.score
+              + " UW");
+      queryWriter.newLine();
+      index += 1;
     }
   }
 
@@ -1043,6 +1667,23 @@ public class Search {
     return this.searcher;
   }
 
+  /**
+   * Receives the results of a batch of queries as they arrive.
+   *
+   * @author Dallas Fraser
+   * @since 2018-03-01
+   */
+  public interface ResultListener {
+    /**
+     * Called with the results of a query.
+     *
+     * @param index the position of the query in the batch
+     * @param result the results of the query
+     * @throws IOException - issue with reading/writing to a file
+     */
+    void result(int index, SearchResult result) throws IOException;
+  }
+
   /**
    * An Exception that is thrown when the Search Config does not match the Index Config used when
    * indexing.
@@ -1,9 +1,12 @@
 #!/usr/bin/env python
 # -*- coding: utf-8 -*-
 import argparse
+import contextlib
+import io
 import logging
 import sys
 import os
+import traceback
 try:
     from math_extractor import MathExtractor
     from mathdocument import MathDocument
@@ -25,6 +28,14 @@ EDGES = ['n', 'a', 'b', 'c', 'o', 'u', 'd', 'w', 'e']
 WILDCARD_MOCK = "?x"
 WILDCARD = "*"
 WINDOWS = "nt"
+SERVER_CONVERT = "CONVERT"
+SERVER_PING = "PING"
+SERVER_QUIT = "QUIT"
+SERVER_OK = "OK"
+SERVER_PONG = "PONG"
+SERVER_ERROR = "ERROR"
+SERVER_INCOMPLETE = "INCOMPLETE"
+SUPERSET_TAG = "\x1e"
 if os.name == WINDOWS:
     ENCODING = "utf-8"
 else:
@@ -112,6 +123,54 @@ def convert_math_expression(mathml,
         return ""
 
 
+def superset_math_expression(mathml):
+    """Returns every tuple family of a math expression for a Java selector
+
+    The result starts with SUPERSET_TAG and is followed by one group per
+    tuple that some configuration could use, in the order get_pairs would
+    produce them: the family, the location and then for each shape of the
+    tuple the number of nodes it becomes followed by those nodes formatted
+    with their location (0 nodes if check_node removes it; more than one
+    if it expands with synonyms). Unbounded symbol pairs have two shapes,
+    the shortened one and the longer one.
+
+    Parameters:
+        mathml: the math expression (string)
+    Returns:
+        : a string of the tagged math tuples
+    """
+    tokens = MathExtractor.math_tokens(mathml)
+    pmml = MathExtractor.isolate_pmml(tokens[0])
+    tree_root = MathExtractor.convert_to_mathsymbol(pmml)
+    if tree_root is not None:
+        return superset_tuples(tree_root)
+    else:
+        return ""
+
+
+def superset_tuples(tree_root):
+    """Returns the tagged tuples of every tuple family for a symbol tree
+
+    Parameters:
+        tree_root: the root of the symbol tree (MathSymbol)
+    Returns:
+        : a string of the tagged math tuples
+    """
+    eol = tree_root.get_height() <= 2
+    groups = [SUPERSET_TAG]
+    for (family, shapes) in tree_root.get_superset_pairs("", eol=eol):
+        groups.append(family)
+        groups.append(shapes[0][-1])
+        for node in shapes:
+            nodes = []
+            if check_node(node):
+                nodes = [format_body(expanded_node)
+                         for expanded_node in expand_node_with_wildcards(node)]
+            groups.append(str(len(nodes)))
+            groups.extend(nodes)
+    return " ".join(groups)
+
+
 def check_node(node):
     """Returns False if the node is not needed
     """
@@ -195,6 +254,15 @@ def check_wildcard(term):
 def format_node(node, payload=None):
     """Returns the formatted node
     """
+    node = format_body(node)
+    if payload is not None:
+        node = node + PAYLOAD_DELIMITER + payload
+    return "#" + node + "#"
+
+
+def format_body(node):
+    """Returns the formatted node without its surrounding tags
+    """
     new_node = []
     for part in node:
         new_node.append(part)
@@ -204,17 +272,15 @@ def format_node(node, payload=None):
             new_node[-1] = WILDCARD
     node = tuple(new_node)
     node = str(node).lower()
-    if payload is not None:
-        node = node + PAYLOAD_DELIMITER + payload
-    return ("#" + (str(node)
-                   .replace(" ", "")
-                   .replace("&comma;", "comma")
-                   .replace("&lsqb;", "lsqb")
-                   .replace("&rsqb;", "rsqb")
-                   .replace("&quest;", "quest")
-                   .replace("'>'", "'gt'")
-                   .replace("'<'", "'lt'")
-                   ) + "#")
+    return (str(node)
+            .replace(" ", "")
+            .replace("&comma;", "comma")
+            .replace("&lsqb;", "lsqb")
+            .replace("&rsqb;", "rsqb")
+            .replace("&quest;", "quest")
+            .replace("'>'", "'gt'")
+            .replace("'<'", "'lt'")
+            )
 
 
 def determine_node(node):
@@ -353,12 +419,15 @@ def parse_file_to_output(filename,
                          location=False,
                          synonyms=False,
                          query=True,
-                         expand_location=False):
+                         expand_location=False,
+                         superset=False):
     """Parses a file and outputs to standard out
 
     Parameters:
         filename: the name of the file to parse
         file_id: the file id
+        (superset): True to output every tuple family
+                    (see superset_math_expression)
     """
     (ext, content) = MathDocument.read_doc_file(filename)
     while len(content) != 0:
@@ -369,18 +438,21 @@ def parse_file_to_output(filename,
             content = ""
         else:
             paragraph = format_paragraph(content[0:start], query)
-            ex = convert_math_expression(content[start:end],
-                                         window_size=1,
-                                         symbol_pairs=symbol_pairs,
-                                         eol=eol,
-                                         compound_symbols=compound_symbols,
-                                         terminal_symbols=terminal_symbols,
-                                         edge_pairs=edge_pairs,
-                                         unbounded=unbounded,
-                                         shortened=shortened,
-                                         location=location,
-                                         synonyms=synonyms,
-                                         expand_location=expand_location)
+            if superset:
+                ex = superset_math_expression(content[start:end])
+            else:
+                ex = convert_math_expression(content[start:end],
+                                             window_size=1,
+                                             symbol_pairs=symbol_pairs,
+                                             eol=eol,
+                                             compound_symbols=compound_symbols,
+                                             terminal_symbols=terminal_symbols,
+                                             edge_pairs=edge_pairs,
+                                             unbounded=unbounded,
+                                             shortened=shortened,
+                                             location=location,
+                                             synonyms=synonyms,
+                                             expand_location=expand_location)
             print(paragraph.encode(ENCODING))
             print(ex.encode(ENCODING))
             # now move the content further along
@@ -436,20 +508,30 @@ def parse_file(filename,
                 # now move the content further along
                 content = content[end:]
 
-if __name__ == "__main__":
-    logging.basicConfig(filename="convert.log",
-                        level=logging.INFO,
-                        format='%(asctime)s %(message)s')
-    logger = logging.getLogger(__name__)
+def build_parser():
+    """Returns the argument parser used by both the command line and server
+
+    Returns:
+        parser: the argument parser (argparse.ArgumentParser)
+    """
     descp = "Convert - MathML file to file with Tangent Tuples"
     parser = argparse.ArgumentParser(description=descp)
     parser.add_argument('-infile',
                         '--infile',
-                        help='The file to read from',
-                        required=True)
+                        help='The file to read from')
     parser.add_argument('-outfile',
                         '--outfile',
                         help='The file to output to')
+    parser.add_argument("-server",
+                        dest="server",
+                        action="store_true",
+                        help="Keep running and convert requests read from stdin",
+                        default=False)
+    parser.add_argument("-superset",
+                        dest="superset",
+                        action="store_true",
+                        help="Output every tuple family to standard out",
+                        default=False)
     parser.add_argument("-query",
                         dest="query",
                         action="store_true",
@@ -512,7 +594,15 @@ if __name__ == "__main__":
                         type=int,
                         help='The size of the window',
                         nargs='?')
-    args = parser.parse_args()
+    return parser
+
+
+def convert_with_args(args):
+    """Converts the file given by the parsed arguments
+
+    Parameters:
+        args: the parsed arguments (argparse.Namespace)
+    """
     infile = None
     outfile = None
     if args.infile is not None:
@@ -551,5 +641,74 @@ if __name__ == "__main__":
                              location=args.location,
                              synonyms=args.synonyms,
                              query=args.query,
-                             expand_location=args.expand_location)
+                             expand_location=args.expand_location,
+                             superset=args.superset)
+
+
+def write_frame(out, status, payload):
+    """Writes one response frame: a header line then the payload bytes
+
+    Parameters:
+        out: the binary stream to write to
+        status: the status of the response (str)
+        payload: the body of the response (bytes)
+    """
+    out.write((status + " " + str(len(payload)) + "\n").encode(ENCODING))
+    out.write(payload)
+    out.flush()
+
+
+def serve(parser, requests, out):
+    """Converts files requested one per line until told to quit
+
+    Each request is a single line of tab separated fields. The first field
+    is the command: CONVERT (followed by the same arguments as the command
+    line), PING (a health check) or QUIT. Each response is a frame holding
+    exactly what the one-shot command would have printed to stdout. A
+    conversion that raised is answered with INCOMPLETE since its output may
+    be partial.
+
+    Parameters:
+        parser: the argument parser used to parse each request
+        requests: the binary stream to read requests from
+        out: the binary stream to write responses to
+    """
+    for line in requests:
+        fields = line.decode(ENCODING).rstrip("\r\n").split("\t")
+        command = fields[0]
+        if command == SERVER_QUIT:
+            break
+        elif command == SERVER_PING:
+            write_frame(out, SERVER_PONG, b"")
+        elif command == SERVER_CONVERT:
+            buffer = io.StringIO()
+            status = SERVER_OK
+            try:
+                with contextlib.redirect_stdout(buffer):
+                    convert_with_args(parser.parse_args(fields[1:]))
+            except BaseException:
+                # report the problem but keep serving other files
+                traceback.print_exc(file=sys.stderr)
+                sys.stderr.flush()
+                status = SERVER_INCOMPLETE
+            write_frame(out, status, buffer.getvalue().encode(ENCODING))
+        else:
+            write_frame(out,
+                        SERVER_ERROR,
+                        ("Unknown command: " + command).encode(ENCODING))
+
+
+if __name__ == "__main__":
+    logging.basicConfig(filename="convert.log",
+                        level=logging.INFO,
+                        format='%(asctime)s %(message)s')
+    logger = logging.getLogger(__name__)
+    parser = build_parser()
+    args = parser.parse_args()
+    if args.server:
+        serve(parser, sys.stdin.buffer, sys.stdout.buffer)
+    else:
+        if args.infile is None:
+            parser.error("the following arguments are required: -infile")
+        convert_with_args(args)
     logger.info("Done")
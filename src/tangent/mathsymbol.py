@@ -174,6 +174,65 @@ class MathSymbol:
                         if child and label != "w"])
         return ret
 
+    def get_superset_pairs(self, prefix, eol=False):
+        """
+        Return every pair that any combination of get_pairs options could
+        produce (with a window of 1), each tagged with its family
+
+        Families are 'c' compound symbols, 's' symbol pairs between a node
+        and its child, 'u' symbol pairs only found with an unbounded window,
+        't' terminal symbols, 'e' eol symbols and 'p' edge pairs. The shapes
+        of an unbounded pair are the shortened one then the longer one.
+        Terminal and eol symbols are only ever added to leaves so they are
+        tagged on every leaf.
+
+        :param prefix: representing path from the root to self (for location id)
+        :type  prefix: string
+        :param eol: If True will include eol symbols (N, !0, n)
+        :type eol: boolean
+
+        :return list of (family, list of tuples)
+        :rtype list
+        """
+        if len(prefix) == 0:
+            loc = '-'
+        elif len(prefix) > 5:
+            loc = self.rlencode(prefix)
+        else:
+            loc = prefix
+        ret = []
+        children = [(self.next, 'n'), (self.above, 'a'),
+                    (self.below, 'b'), (self.pre_above, 'c'),
+                    (self.over, 'o'), (self.under, 'u'),
+                    (self.pre_below, 'd'), (self.within, 'w'),
+                    (self.element, 'e')]
+        available_edges = [label for child, label in children
+                           if child is not None]
+        if len(available_edges) > 1:
+            ret.append(('c', [(self.tag, str(available_edges), loc)]))
+        for child, label in children:
+            if child:
+                symbols = child.get_symbols(label, 1, unbounded=True)
+                for right, rel_path in symbols:
+                    if len(rel_path) == 1:
+                        ret.append(('s', [(self.tag, right.tag, rel_path, loc)]))
+                    else:
+                        if len(rel_path) > 5:
+                            rel_path = self.rlencode(rel_path)
+                        path = rel_path[0] + rel_path[-1]
+                        ret.append(('u', [(self.tag, right.tag, loc),
+                                          (self.tag, right.tag, path, loc)]))
+                ret.extend(child.get_superset_pairs(prefix+label, eol=eol))
+        if len(available_edges) == 0:
+            ret.append(('t', [(self.tag, "!0", loc)]))
+            if eol:
+                ret.append(('e', [(self.tag, "!0", "n", loc)]))
+        if len(prefix) > 0:
+            ret.extend([('p', [(prefix[-1], label, self.tag, loc)])
+                        for child, label in children
+                        if child and label != "w"])
+        return ret
+
     @classmethod
     def list2matrix(cls, children, separators, parent_element):
         """
@@ -19,11 +19,26 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import java.util.logging.Level;
+import index.ImpactIndex;
+import index.IndexManifest;
+import index.IndexProfile;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
 import search.Search;
 import search.SearchResult;
+import utilities.Constants;
 import utilities.Functions;
 import utilities.ProjectLogger;
 
@@ -45,6 +60,66 @@ public class BaseTest {
         return dir.delete();
     }
 
+    public String[] indexEntries(Path index) {
+        // the files written next to the Lucene index are not part of it
+        List<String> entries = new ArrayList<String>();
+        for (String entry : index.toFile().list()) {
+            if (!entry.equals(IndexProfile.FILENAME)
+                    && !entry.equals(IndexManifest.FILENAME)
+                    && !entry.equals(ImpactIndex.FILE_NAME)) {
+                entries.add(entry);
+            }
+        }
+        return entries.toArray(new String[entries.size()]);
+    }
+
+    public DirectoryReader randomIndex(long seed,
+                                       String[] terms,
+                                       double spread,
+                                       int maxLength,
+                                       int... segmentSizes) throws IOException{
+        return this.randomIndex(new RAMDirectory(), seed, terms, spread, maxLength, segmentSizes);
+    }
+
+    public DirectoryReader randomIndex(Directory directory,
+                                       long seed,
+                                       String[] terms,
+                                       double spread,
+                                       int maxLength,
+                                       int... segmentSizes) throws IOException{
+        // documents of random terms in the contents field, one segment per size
+        // the terms are uniform when spread is 0, otherwise the early terms are more common
+        IndexWriterConfig config = new IndexWriterConfig(new WhitespaceAnalyzer());
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        IndexWriter writer = new IndexWriter(directory, config);
+        Random random = new Random(seed);
+        for (int size : segmentSizes){
+            for (int i = 0; i < size; i++){
+                StringBuilder text = new StringBuilder();
+                int length = 1 + random.nextInt(maxLength);
+                for (int j = 0; j < length; j++){
+                    int index = spread > 0
+                                ? Math.min(terms.length - 1,
+                                           (int) Math.abs(random.nextGaussian() * spread))
+                                : random.nextInt(terms.length);
+                    text.append(terms[index]).append(" ");
+                }
+                Document doc = new Document();
+                doc.add(new TextField(Constants.FIELD, text.toString(), Field.Store.NO));
+                writer.addDocument(doc);
+            }
+            writer.commit();
+        }
+        writer.close();
+        return DirectoryReader.open(directory);
+    }
+
+    public void closeIndex(DirectoryReader reader) throws IOException{
+        Directory directory = reader.directory();
+        reader.close();
+        directory.close();
+    }
+
     public void setupLogger(Path logger) throws SecurityException, IOException{
         ProjectLogger.setLogFile(logger);
         ProjectLogger.setLevel(Level.FINEST);
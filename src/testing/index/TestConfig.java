@@ -297,4 +297,24 @@ public class TestConfig extends BaseTest {
         config.setWindowSize(2);
         assertArrayEquals(config.toCommands(), expect8);
     }
+
+    @Test
+    public void testSettings() {
+        ConvertConfig config = new ConvertConfig();
+        String base = config.settings();
+        assertEquals(config.copy().settings(), base);
+        // settings that toString leaves out still change them
+        config.setBooleanAttribute(ConvertConfig.BOOST_LOCATION, true);
+        assertNotEquals(config.settings(), base);
+        assertEquals(config.toString(), new ConvertConfig().toString());
+        config = new ConvertConfig();
+        config.setMathBM25(true);
+        assertNotEquals(config.settings(), base);
+        config = new ConvertConfig();
+        config.setProximityWindow(ConvertConfig.DEFAULT_PROXIMITY_WINDOW + 1);
+        assertNotEquals(config.settings(), base);
+        config = new ConvertConfig();
+        config.setExactProximity(true);
+        assertNotEquals(config.settings(), base);
+    }
 }
@@ -0,0 +1,93 @@
+package testing.index;
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import index.ConvertCache;
+import index.ConvertConfig;
+import index.ConvertResult;
+import testing.BaseTest;
+
+
+public class TestConvertCache extends BaseTest{
+    Path path;
+    Path folder;
+    @Before
+    public void setUp() throws Exception{
+        this.path = Paths.get(System.getProperty("user.dir"),
+                              "resources",
+                              "test",
+                              "index_test_1",
+                              "documents",
+                              "1301.6848_1_17.xhtml");
+        this.folder = Files.createTempDirectory("convertCache");
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        this.deleteDirectory(this.folder);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception{
+        ConvertCache cache = new ConvertCache(this.folder, 1L << 20);
+        ConvertConfig config = new ConvertConfig();
+        String key = cache.key(this.path, config);
+        assertNull(cache.get(key));
+        String text = "hey #(start)# #('v!x','n!1','n')# #(end)# there\n";
+        cache.put(key, new ConvertResult(text));
+        ConvertResult result = cache.get(key);
+        assertEquals(text, result.getText());
+        assertEquals(1, result.getFormulaCount());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        // the entries outlive the cache object
+        cache = new ConvertCache(this.folder, 1L << 20);
+        assertEquals(text, cache.get(key).getText());
+    }
+
+    @Test
+    public void testKey() throws Exception{
+        ConvertCache cache = new ConvertCache(this.folder, 1L << 20);
+        ConvertConfig config = new ConvertConfig();
+        ConvertConfig other = new ConvertConfig();
+        other.flipBit(ConvertConfig.LOCATION);
+        assertEquals(cache.key(this.path, config), cache.key(this.path, new ConvertConfig()));
+        assertNotEquals(cache.key(this.path, config), cache.key(this.path, other));
+    }
+
+    @Test
+    public void testEviction() throws Exception{
+        ConvertCache cache = new ConvertCache(this.folder, 1L << 20);
+        cache.put("first", new ConvertResult("first"));
+        long entrySize = cache.getSize();
+        cache = new ConvertCache(this.folder, entrySize * 3);
+        cache.put("second", new ConvertResult("second"));
+        // using the first entry makes the second the least recently used
+        assertNotNull(cache.get("first"));
+        cache.put("third", new ConvertResult("third"));
+        assertNotNull(cache.get("first"));
+        assertNull(cache.get("second"));
+        assertNotNull(cache.get("third"));
+        assertTrue(cache.getSize() <= entrySize * 3);
+    }
+
+    @Test
+    public void testConverterHash() throws Exception{
+        Path tangent = Files.createDirectories(this.folder.resolve("tangent"));
+        Files.write(tangent.resolve("convert.py"), "import mathsymbol\n".getBytes("UTF-8"));
+        Files.write(tangent.resolve("mathsymbol.py"), "x = 1\n".getBytes("UTF-8"));
+        byte[] before = ConvertCache.converterHash(tangent);
+        assertArrayEquals(before, ConvertCache.converterHash(tangent));
+        // a module imported by convert.py changes the hash too
+        Files.write(tangent.resolve("mathsymbol.py"), "x = 2\n".getBytes("UTF-8"));
+        assertFalse(Arrays.equals(before, ConvertCache.converterHash(tangent)));
+    }
+}
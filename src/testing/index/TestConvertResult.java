@@ -0,0 +1,43 @@
+package testing.index;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import index.ConvertResult;
+import utilities.Functions;
+
+public class TestConvertResult {
+
+    private void checkCounts(String text){
+        ConvertResult result = new ConvertResult(text);
+        assertEquals(Functions.countTuples(text), result.getFormulaCount());
+        assertEquals(text.split(" ").length, result.getDocLength());
+        assertEquals(text, result.getText());
+    }
+
+    @Test
+    public void testCounts() {
+        this.checkCounts("#(start)# #('/*','!0','n')# #(end)#");
+        this.checkCounts("hey you there #(start)# #('/*','!0','n')# #(end)#\n");
+        this.checkCounts("(start) ('/*','!0','n') ('/*','!0','n') (end)");
+        this.checkCounts("#('/*','!0','n')# #");
+        this.checkCounts("  two  spaces  ");
+        this.checkCounts(" ");
+        this.checkCounts("");
+        this.checkCounts("word");
+    }
+
+    @Test
+    public void testStringWriter() {
+        StringWriter buffer = new StringWriter();
+        buffer.write("hey #(start)# #('/*','!0','n')# #(end)#\n");
+        ConvertResult result = new ConvertResult(buffer);
+        assertEquals(1, result.getFormulaCount());
+        // four terms where only the tuple is a formula, the start and end tags count as words
+        assertEquals(4, result.getDocLength());
+        assertEquals(3, result.getWordCount());
+    }
+}
@@ -0,0 +1,79 @@
+package testing.index;
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import index.ConvertCache;
+import index.ConvertConfig;
+import index.ConvertMathMl;
+import index.ConvertResult;
+import index.ConvertWorkerPool;
+
+
+public class TestConvertWorkerPool {
+    Path path;
+    ConvertWorkerPool pool;
+    @Before
+    public void setUp() throws Exception{
+        this.path = Paths.get(System.getProperty("user.dir"),
+                              "resources",
+                              "test",
+                              "index_test_1",
+                              "documents",
+                              "1301.6848_1_17.xhtml");
+        this.pool = new ConvertWorkerPool(2);
+    }
+
+    @After
+    public void tearDown(){
+        // the pool is not created when the workers fail to start
+        if (this.pool != null){
+            this.pool.close();
+        }
+    }
+
+    @Test
+    public void testSameAsOneShot() throws Exception{
+        ConvertConfig config = new ConvertConfig();
+        config.optimalConfig();
+        ConvertResult expect = new ConvertMathMl(this.path).convert(config);
+        ConvertResult result = this.pool.convert(this.path, config);
+        assertEquals(expect.getText(), result.getText());
+        assertEquals(expect.getFormulaCount(), result.getFormulaCount());
+        assertEquals(expect.getDocLength(), result.getDocLength());
+    }
+
+    @Test
+    public void testHealthCheck() throws Exception{
+        assertEquals(this.pool.size(), 2);
+        assertEquals(this.pool.healthCheck(), 0);
+        ConvertConfig config = new ConvertConfig();
+        ConvertResult expect = new ConvertMathMl(this.path).convert(config);
+        // reusing the workers should not change the output
+        for (int i = 0; i < 3; i++){
+            assertEquals(expect.getText(), this.pool.convert(this.path, config).getText());
+        }
+    }
+
+    @Test
+    public void testIncompleteNotCached() throws Exception{
+        Path folder = Files.createTempDirectory("convertWorkerPool");
+        // not UTF-8 so reading the document raises in the worker
+        Path broken = folder.resolve("broken.xhtml");
+        Files.write(broken, new byte[] {(byte) 0xff, (byte) 0xfe, (byte) 0xfd});
+        ConvertCache cache = new ConvertCache(folder.resolve("cache"), ConvertCache.DEFAULT_MAX_BYTES);
+        ConvertConfig config = new ConvertConfig();
+        ConvertResult result = cache.convert(broken, config, this.pool);
+        assertFalse(result.isComplete());
+        assertNull(cache.get(cache.key(broken, config)));
+        assertEquals(cache.getSize(), 0);
+        // the worker keeps serving after the error
+        assertTrue(this.pool.convert(this.path, config).isComplete());
+    }
+}
@@ -0,0 +1,52 @@
+package testing.index;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+import index.FormulaSizes;
+import index.MathBagsFilter;
+import index.MathRemoveTagsFilter;
+import index.MathTokenizer;
+
+public class TestFormulaSizes {
+
+    private BytesRef collect(String text) throws IOException{
+        MathTokenizer tokenizer = new MathTokenizer();
+        tokenizer.setReader(new StringReader(text));
+        TokenStream stream = new MathRemoveTagsFilter(new MathBagsFilter(tokenizer));
+        BytesRef bytes = FormulaSizes.collect(stream);
+        stream.close();
+        return bytes;
+    }
+
+    @Test
+    public void testSizes() throws IOException{
+        // word is at position 0, the first formula at 1, other at 3 and the second formula at 4
+        BytesRef bytes = this.collect("word #(start)# #('v!x','!0','n')# #('v!y','!0','n')#"
+                                      + " #('*','!0','n')# #(end)# other"
+                                      + " #(start)# #('v!z','!0','n')# #(end)#");
+        FormulaSizes sizes = new FormulaSizes();
+        sizes.read(bytes);
+        assertEquals(sizes.size(), 2);
+        // the wildcard is not part of the size
+        assertEquals(sizes.getSize(1), 2);
+        assertEquals(sizes.getSize(4), 1);
+        // words are on their own
+        assertEquals(sizes.getSize(0), 1);
+        assertEquals(sizes.getSize(3), 1);
+    }
+
+    @Test
+    public void testNoFormulas() throws IOException{
+        FormulaSizes sizes = new FormulaSizes();
+        sizes.read(this.collect("just some words"));
+        assertEquals(sizes.size(), 0);
+        assertEquals(sizes.getSize(2), 1);
+    }
+}
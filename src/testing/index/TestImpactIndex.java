@@ -0,0 +1,193 @@
+package testing.index;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.ClassicSimilarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import index.ImpactIndex;
+import query.MathTermQuery;
+import search.ImpactSearch;
+import search.MathSimilarityWrapper;
+import testing.BaseTest;
+import utilities.Constants;
+
+public class TestImpactIndex extends BaseTest{
+    private static final String[] TUPLES = {"('v!x','+','n')", "('+','n!1','n')",
+                                            "('v!y','=','n')", "('=','n!0','n')"};
+    private Path folder;
+    private Directory directory;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+    private ImpactIndex impacts;
+
+    @Before
+    public void setUp() throws Exception{
+        this.folder = Files.createTempDirectory("impactIndex");
+        this.directory = FSDirectory.open(this.folder);
+        // the first tuple is common, the last is rare and words are rarer
+        String[] terms = Arrays.copyOf(TUPLES, TUPLES.length + 1);
+        terms[TUPLES.length] = "word";
+        this.reader = this.randomIndex(this.directory, 11, terms, 2, 30, 150, 150, 100);
+        this.searcher = new IndexSearcher(this.reader);
+        this.searcher.setSimilarity(new BM25Similarity());
+        ImpactIndex.write(this.directory, this.reader, new BM25Similarity());
+        this.impacts = ImpactIndex.open(this.folder);
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        this.impacts.close();
+        this.closeIndex(this.reader);
+        this.deleteDirectory(this.folder);
+    }
+
+    @Test
+    public void testPostings() throws Exception{
+        assertEquals(this.impacts.maxDoc(), this.reader.maxDoc());
+        assertTrue(this.impacts.contains(new Term(Constants.FIELD, TUPLES[0])));
+        // words are not tuples
+        assertFalse(this.impacts.contains(new Term(Constants.FIELD, "word")));
+        assertNull(this.impacts.postings(new Term(Constants.FIELD, "word")));
+        for (String tuple : TUPLES){
+            Term term = new Term(Constants.FIELD, tuple);
+            ImpactIndex.Postings stored = this.impacts.postings(term);
+            ImpactIndex.Postings built = ImpactIndex.postings(this.searcher, term);
+            assertEquals(stored.segments(), built.segments());
+            Set<Integer> docs = new HashSet<Integer>();
+            for (int s = 0; s < stored.segments(); s++){
+                assertEquals(stored.impact(s), built.impact(s), 0f);
+                if (s > 0){
+                    assertTrue(stored.impact(s) < stored.impact(s - 1));
+                }
+                int count = stored.nextSegment();
+                assertEquals(count, built.nextSegment());
+                for (int d = 0; d < count; d++){
+                    assertEquals(stored.getDocs()[d], built.getDocs()[d]);
+                    if (d > 0){
+                        assertTrue(stored.getDocs()[d] > stored.getDocs()[d - 1]);
+                    }
+                    docs.add(stored.getDocs()[d]);
+                }
+            }
+            assertEquals(docs.size(), this.reader.docFreq(term));
+        }
+    }
+
+    @Test
+    public void testSearch() throws Exception{
+        Term[] terms = new Term[TUPLES.length + 1];
+        float[] boosts = new float[terms.length];
+        BooleanQuery.Builder bq = new BooleanQuery.Builder();
+        float slack = 0f;
+        for (int t = 0; t < terms.length; t++){
+            terms[t] = new Term(Constants.FIELD, t < TUPLES.length ? TUPLES[t] : "word");
+            boosts[t] = 1 + t % 2;
+            bq.add(new BoostQuery(new TermQuery(terms[t]), boosts[t]), BooleanClause.Occur.SHOULD);
+            // the top segment holds the highest level
+            slack += boosts[t] * ImpactIndex.postings(this.searcher, terms[t]).impact(0)
+                     / ImpactIndex.LEVELS;
+        }
+        ImpactSearch search = new ImpactSearch(this.impacts, this.searcher);
+        int k = 10;
+        TopDocs expect = this.searcher.search(bq.build(), k);
+        TopDocs actual = search.search(terms, boosts, k);
+        assertEquals(actual.scoreDocs.length, k);
+        float kth = expect.scoreDocs[k - 1].score;
+        for (int i = 0; i < k; i++){
+            ScoreDoc hit = actual.scoreDocs[i];
+            if (i > 0){
+                assertTrue(hit.score <= actual.scoreDocs[i - 1].score);
+            }
+            // only quantizing can let a document into the top k
+            float exact = this.searcher.explain(bq.build(), hit.doc).getValue();
+            assertTrue(exact >= kth - slack);
+        }
+        // every document is found when k covers all of them
+        TopDocs all = search.search(terms, boosts, this.reader.maxDoc());
+        assertEquals(all.scoreDocs.length, this.searcher.search(bq.build(), 1).totalHits);
+    }
+
+    @Test
+    public void testIsCurrent() throws Exception{
+        assertTrue(this.impacts.isCurrent(this.reader));
+        // deleting keeps the same max doc but is a new commit
+        IndexWriter writer = new IndexWriter(this.directory,
+                                             new IndexWriterConfig(new WhitespaceAnalyzer()));
+        writer.deleteDocuments(new Term(Constants.FIELD, TUPLES[3]));
+        writer.close();
+        DirectoryReader changed = DirectoryReader.open(this.directory);
+        assertEquals(changed.maxDoc(), this.reader.maxDoc());
+        assertFalse(this.impacts.isCurrent(changed));
+        changed.close();
+    }
+
+    @Test
+    public void testMaxFreq() throws Exception{
+        Term[] terms = new Term[TUPLES.length];
+        float[] boosts = new float[terms.length];
+        int[] maxFreqs = new int[terms.length];
+        BooleanQuery.Builder bq = new BooleanQuery.Builder();
+        float slack = 0f;
+        for (int t = 0; t < terms.length; t++){
+            terms[t] = new Term(Constants.FIELD, TUPLES[t]);
+            boosts[t] = 1f;
+            maxFreqs[t] = 1;
+            bq.add(new MathTermQuery(terms[t], maxFreqs[t]), BooleanClause.Occur.SHOULD);
+            slack += ImpactIndex.postings(this.searcher, terms[t], 1).impact(0) / ImpactIndex.LEVELS;
+        }
+        // the stored postings were scored without a cap
+        assertTrue(this.impacts.postings(terms[0]).maxFreq() > 1);
+        ImpactSearch search = new ImpactSearch(this.impacts, this.searcher);
+        int k = 10;
+        TopDocs expect = this.searcher.search(bq.build(), k);
+        ImpactSearch.ImpactTopDocs actual = search.search(terms, boosts, maxFreqs, k);
+        assertTrue(actual.getPostingsRead() > 0);
+        float kth = expect.scoreDocs[k - 1].score;
+        for (ScoreDoc hit : actual.scoreDocs){
+            float exact = this.searcher.explain(bq.build(), hit.doc).getValue();
+            assertTrue(exact >= kth - slack);
+        }
+        // the scores are reused so a second search starts from nothing
+        TopDocs again = search.search(terms, boosts, maxFreqs, k);
+        assertEquals(again.totalHits, actual.totalHits);
+        for (int i = 0; i < k; i++){
+            assertEquals(again.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+            assertEquals(again.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+        }
+    }
+
+    @Test
+    public void testScoredWith() throws Exception{
+        assertTrue(this.impacts.isScoredWith(new BM25Similarity()));
+        assertFalse(this.impacts.isScoredWith(new BM25Similarity(2f, 0.75f)));
+        assertFalse(this.impacts.isScoredWith(new ClassicSimilarity()));
+        // the wrapper scores the math field with its own similarity
+        assertFalse(this.impacts.isScoredWith(new MathSimilarityWrapper(new BM25Similarity())));
+        assertEquals(ImpactIndex.describe(new MathSimilarityWrapper()),
+                     ImpactIndex.describe(new MathSimilarityWrapper()));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package testing.index;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import index.ConvertConfig;
+import index.IndexFiles;
+import index.IndexManifest;
+import testing.BaseTest;
+
+public class TestIndexIncremental extends BaseTest{
+    private Path folder;
+    private Path documents;
+    private Path index;
+    private ConvertConfig config;
+
+    @Before
+    public void setUp() throws Exception{
+        this.folder = Paths.get(System.getProperty("user.dir"), "resources", "test", "index_test_incremental");
+        this.documents = Paths.get(this.folder.toString(), "documents");
+        this.index = Paths.get(this.folder.toString(), "index");
+        Files.createDirectories(this.documents);
+        Files.createDirectories(this.index);
+        // copy the documents so they can be changed
+        Path original = Paths.get(System.getProperty("user.dir"), "resources", "test", "index_test_1", "documents");
+        for (File file : original.toFile().listFiles()){
+            Files.copy(file.toPath(), Paths.get(this.documents.toString(), file.getName()));
+        }
+        this.config = new ConvertConfig();
+        IndexFiles indexer = new IndexFiles();
+        indexer.indexDirectory(this.index, this.documents, true, this.config);
+    }
+
+    @After
+    public void tearDown(){
+        this.deleteDirectory(this.folder);
+    }
+
+    @Test
+    public void testUnchanged() throws Exception{
+        IndexFiles indexer = this.update();
+        assertEquals(0, indexer.getProgress().getIndexed());
+        assertEquals(4, indexer.getProgress().getSkipped());
+        assertEquals(4, this.numDocs());
+    }
+
+    @Test
+    public void testChanges() throws Exception{
+        Path changed = Paths.get(this.documents.toString(), "1301.6848_1_17.xhtml");
+        Path removed = Paths.get(this.documents.toString(), "1303.3122_1_41.xhtml");
+        Files.setLastModifiedTime(changed,
+                                  FileTime.fromMillis(Files.getLastModifiedTime(changed).toMillis() + 10000));
+        Files.delete(removed);
+        IndexFiles indexer = this.update();
+        assertEquals(1, indexer.getProgress().getIndexed());
+        assertEquals(2, indexer.getProgress().getSkipped());
+        assertEquals(3, this.numDocs());
+        IndexManifest manifest = IndexManifest.load(this.index);
+        assertEquals(3, manifest.size());
+        assertEquals(Files.getLastModifiedTime(changed).toMillis(), manifest.getModified(changed).longValue());
+        assertNull(manifest.getModified(removed));
+    }
+
+    @Test
+    public void testManifestFromIndex() throws Exception{
+        // without the saved manifest it is read from the index
+        Files.delete(Paths.get(this.index.toString(), "index.manifest"));
+        assertEquals(4, IndexManifest.load(this.index).size());
+        IndexFiles indexer = this.update();
+        assertEquals(0, indexer.getProgress().getIndexed());
+        assertEquals(4, this.numDocs());
+    }
+
+    private IndexFiles update() throws Exception{
+        IndexFiles indexer = new IndexFiles();
+        indexer.setIncremental(true);
+        indexer.indexDirectory(this.index, this.documents, false, this.config);
+        return indexer;
+    }
+
+    private int numDocs() throws Exception{
+        IndexReader reader = DirectoryReader.open(FSDirectory.open(this.index));
+        int docs = reader.numDocs();
+        reader.close();
+        return docs;
+    }
+}
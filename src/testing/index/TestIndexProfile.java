@@ -0,0 +1,71 @@
+package testing.index;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import index.IndexProfile;
+import testing.BaseTest;
+
+public class TestIndexProfile extends BaseTest{
+    Path folder;
+
+    @Before
+    public void setUp() throws Exception{
+        this.folder = Files.createTempDirectory("indexProfile");
+    }
+
+    @After
+    public void tearDown(){
+        this.deleteDirectory(this.folder);
+    }
+
+    @Test
+    public void testForName() {
+        assertEquals(IndexProfile.BULK_LOAD, IndexProfile.forName("bulk_load"));
+        assertEquals(IndexProfile.LOW_MEMORY, IndexProfile.forName("LOW_MEMORY"));
+        try {
+            IndexProfile.forName("FAST");
+            fail("Unknown profile should raise an exception");
+        } catch (IllegalArgumentException e){
+        }
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception{
+        IndexProfile.BULK_LOAD.save(this.folder);
+        IndexProfile profile = IndexProfile.load(this.folder);
+        assertEquals("BULK_LOAD", profile.getName());
+        assertEquals(512, profile.getRamBufferMB(), 0.0);
+        assertEquals(4, profile.getMergeThreads());
+        assertEquals(20, profile.getSegmentsPerTier(), 0.0);
+        assertEquals(false, profile.getCompoundFiles());
+        assertEquals(0, profile.getForceMergeSegments());
+    }
+
+    @Test
+    public void testApply() {
+        IndexWriterConfig iwc = new IndexWriterConfig(new StandardAnalyzer());
+        IndexProfile.LOW_MEMORY.apply(iwc);
+        assertEquals(8, iwc.getRAMBufferSizeMB(), 0.0);
+        assertEquals(1000, iwc.getMaxBufferedDocs());
+        TieredMergePolicy policy = (TieredMergePolicy) iwc.getMergePolicy();
+        assertEquals(1024, policy.getMaxMergedSegmentMB(), 0.0);
+        // the default profile keeps lucene's defaults
+        IndexWriterConfig defaults = new IndexWriterConfig(new StandardAnalyzer());
+        iwc = new IndexWriterConfig(new StandardAnalyzer());
+        IndexProfile.DEFAULT.apply(iwc);
+        assertEquals(defaults.getRAMBufferSizeMB(), iwc.getRAMBufferSizeMB(), 0.0);
+        assertEquals(defaults.getUseCompoundFile(), iwc.getUseCompoundFile());
+        assertEquals(((TieredMergePolicy) defaults.getMergePolicy()).getSegmentsPerTier(),
+                     ((TieredMergePolicy) iwc.getMergePolicy()).getSegmentsPerTier(), 0.0);
+    }
+}
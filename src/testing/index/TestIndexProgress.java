@@ -0,0 +1,39 @@
+package testing.index;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import index.IndexProgress;
+
+public class TestIndexProgress {
+
+    @Test
+    public void testCounts() throws Exception {
+        final IndexProgress progress = new IndexProgress();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++){
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 1000; j++){
+                    progress.documentIndexed();
+                }
+                progress.documentFailed(Paths.get("failed.xhtml"));
+            }));
+        }
+        for (Thread thread : threads){
+            thread.start();
+        }
+        for (Thread thread : threads){
+            thread.join();
+        }
+        assertEquals(4000, progress.getIndexed());
+        assertEquals(4, progress.getFailed());
+        assertEquals(4, progress.getFailures().size());
+        assertTrue(progress.documentsPerSecond() > 0);
+        assertTrue(progress.toString().startsWith("Indexed 4000 documents (4 failed)"));
+    }
+}
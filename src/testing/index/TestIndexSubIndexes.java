@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Dallas Fraser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package testing.index;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import index.ConvertConfig;
+import index.IndexFiles;
+import search.Search;
+import search.SearchResult;
+import testing.BaseTest;
+
+public class TestIndexSubIndexes extends BaseTest{
+    private Path folder;
+    private Path documents;
+    private Path queries;
+    private Path single;
+    private Path split;
+
+    @Before
+    public void setUp() throws Exception{
+        this.folder = Paths.get(System.getProperty("user.dir"), "resources", "test", "index_test_1");
+        this.documents = Paths.get(this.folder.toString(), "documents");
+        this.queries = Paths.get(this.folder.toString(), "queries", "queries.xml");
+        this.single = Paths.get(this.folder.toString(), "index_single");
+        this.split = Paths.get(this.folder.toString(), "index_split");
+        File dir = this.single.toFile();
+        if (!dir.mkdir() || !this.split.toFile().mkdir()){
+            throw new Exception("Failed to create directory");
+        }
+    }
+
+    @After
+    public void tearDown(){
+        this.deleteDirectory(this.single);
+        this.deleteDirectory(this.split);
+    }
+
+    @Test
+    public void testSameAsSingleWriter() throws Exception{
+        ConvertConfig config = new ConvertConfig();
+        config.optimalConfig();
+        IndexFiles indexer = new IndexFiles();
+        indexer.indexDirectory(this.single, this.documents, true, config);
+        indexer = new IndexFiles();
+        indexer.setSubIndexes(2);
+        indexer.indexDirectory(this.split, this.documents, true, config);
+        // the sub-indexes should be removed once added
+        for (String entry : this.folder.toFile().list()){
+            assertFalse(entry, entry.startsWith("index_split-part"));
+        }
+        IndexReader reader = DirectoryReader.open(FSDirectory.open(this.split));
+        assertEquals(4, reader.numDocs());
+        reader.close();
+        Map<String, Float> expect = this.scores(this.single);
+        Map<String, Float> result = this.scores(this.split);
+        assertEquals(expect.size() > 0, true);
+        assertEquals(expect.keySet(), result.keySet());
+        for (String key : expect.keySet()){
+            assertEquals(key, expect.get(key), result.get(key), 0.0001f);
+        }
+    }
+
+    @Test
+    public void testAppend() throws Exception{
+        ConvertConfig config = new ConvertConfig();
+        IndexFiles indexer = new IndexFiles();
+        indexer.indexDirectory(this.split, this.documents, true, config);
+        // re-indexing the same documents should replace them not add them again
+        indexer = new IndexFiles();
+        indexer.setSubIndexes(2);
+        indexer.indexDirectory(this.split, this.documents, false, config);
+        IndexReader reader = DirectoryReader.open(FSDirectory.open(this.split));
+        assertEquals(4, reader.numDocs());
+        reader.close();
+    }
+
+    private Map<String, Float> scores(Path index) throws Exception{
+        Search searcher = new Search(index);
+        Map<String, Float> scores = new HashMap<String, Float>();
+        ArrayList<SearchResult> results = searcher.searchQueries(this.queries);
+        for (SearchResult result : results){
+            for (ScoreDoc hit : result.getResults().scoreDocs){
+                Document doc = searcher.getSearcher().doc(hit.doc);
+                scores.put(result.getMathQuery().getQueryName() + " " + doc.get("path"), hit.score);
+            }
+        }
+        searcher.close();
+        return scores;
+    }
+}
@@ -70,7 +70,7 @@ public class TestIndexSynonymsSpecialCase extends BaseTest {
             config.setBooleanAttribute(ConvertConfig.SYNONYMS, true);
             indexer.indexDirectory(this.index, this.documents, true, config);
             // make sure some files were created
-            String[]entries = this.index.toFile().list();
+            String[]entries = this.indexEntries(this.index);
             assertEquals(entries.length, 6);
             // try opening the index if no errors are raised should be fine
             IndexReader reader = DirectoryReader.open(FSDirectory.open(this.index));
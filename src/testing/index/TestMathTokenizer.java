@@ -0,0 +1,71 @@
+package testing.index;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.junit.Test;
+
+import index.MathTokenizer;
+
+public class TestMathTokenizer {
+
+    private List<String> tokenize(String text) throws IOException{
+        List<String> tokens = new ArrayList<String>();
+        MathTokenizer tokenizer = new MathTokenizer();
+        CharTermAttribute term = tokenizer.addAttribute(CharTermAttribute.class);
+        OffsetAttribute offset = tokenizer.addAttribute(OffsetAttribute.class);
+        tokenizer.setReader(new StringReader(text));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()){
+            tokens.add(term.toString() + "@" + offset.startOffset() + "-" + offset.endOffset());
+        }
+        tokenizer.end();
+        tokenizer.close();
+        return tokens;
+    }
+
+    @Test
+    public void testWords() throws IOException{
+        List<String> tokens = this.tokenize("Don't re-index, ok?");
+        assertEquals(tokens.size(), 3);
+        assertEquals(tokens.get(0), "Don't@0-5");
+        assertEquals(tokens.get(1), "re-index@6-14");
+        assertEquals(tokens.get(2), "ok@16-18");
+    }
+
+    @Test
+    public void testMathTuples() throws IOException{
+        List<String> tokens = this.tokenize("Hello #('v!x','!0','n')|__|a:3# #(start)#");
+        assertEquals(tokens.size(), 3);
+        assertEquals(tokens.get(0), "Hello@0-5");
+        assertEquals(tokens.get(1), "('v!x','!0','n')|__|a:3@7-30");
+        assertEquals(tokens.get(2), "(start)@33-40");
+    }
+
+    @Test
+    public void testUnclosedPound() throws IOException{
+        // whitespace ends the math tuple so the punctuation is dropped again
+        List<String> tokens = this.tokenize("#a,b c,d");
+        assertEquals(tokens.size(), 3);
+        assertEquals(tokens.get(0), "a,b@1-4");
+        assertEquals(tokens.get(1), "c@5-6");
+        assertEquals(tokens.get(2), "d@7-8");
+    }
+
+    @Test
+    public void testLongToken() throws IOException{
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < MathTokenizer.MAX_TOKEN_LENGTH + 5; i++){
+            text.append('x');
+        }
+        List<String> tokens = this.tokenize(text.toString());
+        assertEquals(tokens.size(), 2);
+        assertEquals(tokens.get(1), "xxxxx@255-260");
+    }
+}
@@ -0,0 +1,87 @@
+package testing.index;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+import index.MathTokenizer;
+import index.PayloadFilter;
+import utilities.Payload;
+import utilities.Payload.PayloadException;
+
+public class TestPayloadFilter {
+
+    private String decode(BytesRef bytes) throws PayloadException{
+        String result = "null";
+        if (bytes != null && Payload.isBinary(bytes)){
+            Payload payload = new Payload(bytes);
+            result = payload.getLocation() + ":" + payload.getFormulaSize();
+        } else if (bytes != null){
+            result = "text " + bytes.utf8ToString();
+        }
+        return result;
+    }
+
+    private List<String> analyze(String text) throws IOException, PayloadException{
+        List<String> tokens = new ArrayList<String>();
+        MathTokenizer tokenizer = new MathTokenizer();
+        tokenizer.setReader(new StringReader(text));
+        TokenStream stream = new PayloadFilter(tokenizer);
+        CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+        PayloadAttribute payload = stream.addAttribute(PayloadAttribute.class);
+        stream.reset();
+        while (stream.incrementToken()){
+            BytesRef bytes = payload.getPayload();
+            tokens.add(term.toString() + " " + this.decode(bytes));
+        }
+        stream.end();
+        stream.close();
+        return tokens;
+    }
+
+    @Test
+    public void testPayload() throws IOException, PayloadException{
+        List<String> tokens = this.analyze("#('v!x','!0','n')|__|a:3# #('v!y','!0','n')|__|ab:12#");
+        assertEquals(tokens.size(), 2);
+        assertEquals(tokens.get(0), "('v!x','!0','n') a:3");
+        assertEquals(tokens.get(1), "('v!y','!0','n') ab:12");
+    }
+
+    @Test
+    public void testNoPayload() throws IOException, PayloadException{
+        List<String> tokens = this.analyze("word #('v!x','!0','n')# #('v!x','!0','n')|__|#");
+        assertEquals(tokens.size(), 3);
+        assertEquals(tokens.get(0), "word null");
+        assertEquals(tokens.get(1), "('v!x','!0','n') null");
+        // a delimiter with nothing after it is left alone
+        assertEquals(tokens.get(2), "('v!x','!0','n')|__| null");
+    }
+
+    @Test
+    public void testTrailingDelimiters() throws IOException, PayloadException{
+        List<String> tokens = this.analyze("#(a)|__|1:2|__|# #(a)|__|1:2|__|3#");
+        assertEquals(tokens.size(), 2);
+        assertEquals(tokens.get(0), "(a) 1:2");
+        // more than one payload is not split
+        assertEquals(tokens.get(1), "(a)|__|1:2|__|3 null");
+    }
+
+    @Test
+    public void testTextPayload() throws IOException, PayloadException{
+        // payloads that are not a location and size are kept as text
+        List<String> tokens = this.analyze("#(a)|__|nn# #(a)|__|nn:x# #(a)|__|:7::#");
+        assertEquals(tokens.size(), 3);
+        assertEquals(tokens.get(0), "(a) text nn");
+        assertEquals(tokens.get(1), "(a) text nn:x");
+        assertEquals(tokens.get(2), "(a) :7");
+    }
+}
@@ -0,0 +1,72 @@
+package testing.index;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import index.ConvertConfig;
+import index.TupleSelector;
+
+public class TestTupleSelector {
+    // the superset conversion of x + 1
+    private static final String SUPERSET = "b\"\\x1e s - 3 ('v!x','+','n','-') ('*','+','n','-')"
+            + " ('v!x','*','n','-') u - 1 ('v!x','n!1','-') 3 ('v!x','n!1','nn','-')"
+            + " ('*','n!1','nn','-') ('v!x','*','nn','-') s n 3 ('+','n!1','n','n')"
+            + " ('*','n!1','n','n') ('+','*','n','n') t nn 1 ('n!1','!0','nn')"
+            + " p n 2 ('n','n','+','n') ('n','n','*','n')\"";
+
+    private String select(ConvertConfig config){
+        return new TupleSelector(config).select("b'some text'\n" + SUPERSET + "\nb'more text'\n");
+    }
+
+    @Test
+    public void testDefault() {
+        ConvertConfig config = new ConvertConfig();
+        assertEquals("b'some text'\n"
+                     + "b\"#(start)# #('v!x','+','n')|__|-:2# #('+','n!1','n')|__|n:2# #(end)#\"\n"
+                     + "b'more text'\n",
+                     this.select(config));
+    }
+
+    @Test
+    public void testUnboundedLocation() {
+        ConvertConfig config = new ConvertConfig();
+        config.setBooleanAttribute(ConvertConfig.UNBOUNDED, true);
+        config.setBooleanAttribute(ConvertConfig.LOCATION, true);
+        assertEquals("b'some text'\n"
+                     + "b\"#(start)# #('v!x','+','n','-')|__|-:3# #('v!x','n!1','-')|__|-:3#"
+                     + " #('+','n!1','n','n')|__|n:3# #(end)#\"\n"
+                     + "b'more text'\n",
+                     this.select(config));
+    }
+
+    @Test
+    public void testSynonymsTerminalEdges() {
+        ConvertConfig config = new ConvertConfig();
+        config.setBooleanAttribute(ConvertConfig.COMPOUND, true);
+        config.setBooleanAttribute(ConvertConfig.TERMINAL, true);
+        config.setBooleanAttribute(ConvertConfig.EDGE, true);
+        config.setBooleanAttribute(ConvertConfig.LOCATION, true);
+        config.setBooleanAttribute(ConvertConfig.SYNONYMS, true);
+        assertEquals("b'some text'\n"
+                     + "b\"#(start)# #('v!x','+','n','-')|__|-:9# #('*','+','n','-')|__|-:9#"
+                     + " #('v!x','*','n','-')|__|-:9# #('+','n!1','n','n')|__|n:9#"
+                     + " #('*','n!1','n','n')|__|n:9# #('+','*','n','n')|__|n:9#"
+                     + " #('n!1','!0','nn')|__|nn:9# #('n','n','+','n')|__|n:9#"
+                     + " #('n','n','*','n')|__|n:9# #(end)#\"\n"
+                     + "b'more text'\n",
+                     this.select(config));
+    }
+
+    @Test
+    public void testOnlyEol() {
+        ConvertConfig config = new ConvertConfig();
+        config.setBooleanAttribute(ConvertConfig.SYMBOLS, false);
+        config.setBooleanAttribute(ConvertConfig.TERMINAL, true);
+        config.setBooleanAttribute(ConvertConfig.EOL, true);
+        assertEquals("b'some text'\n"
+                     + "b\"#(start)# #('n!1','!0')|__|nn:1# #(end)#\"\n"
+                     + "b'more text'\n",
+                     this.select(config));
+    }
+}
@@ -0,0 +1,103 @@
+package testing.query;
+
+import static org.junit.Assert.*;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.search.similarities.Similarity.SimScorer;
+import org.apache.lucene.search.similarities.Similarity.SimWeight;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import query.AdjustedBM25Similarity;
+import query.BM25PlusSimilarity;
+import query.BatchSimScorer;
+import query.MathBM25Similarity;
+import testing.BaseTest;
+import utilities.Constants;
+
+public class TestBatchSimScorer extends BaseTest {
+    private static final String FIELD = Constants.FIELD;
+    private DirectoryReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        // some documents have the term more often than the table holds
+        String[] terms = {"a", "b", "b", "b"};
+        this.reader = this.randomIndex(3, terms, 0, 200, 300);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.closeIndex(this.reader);
+    }
+
+    private SimWeight weight(Similarity similarity, Term term) throws Exception {
+        IndexSearcher searcher = new IndexSearcher(this.reader);
+        TermContext context = TermContext.build(this.reader.getContext(), term);
+        SimWeight weight = similarity.computeWeight(searcher.collectionStatistics(FIELD),
+                                                    searcher.termStatistics(term, context));
+        weight.normalize(1f, 2f);
+        return weight;
+    }
+
+    private void compareBatch(Similarity similarity) throws Exception {
+        Term term = new Term(FIELD, "a");
+        SimWeight weight = this.weight(similarity, term);
+        for (LeafReaderContext leaf : this.reader.leaves()) {
+            SimScorer scorer = similarity.simScorer(weight, leaf);
+            assertTrue(scorer instanceof BatchSimScorer);
+            PostingsEnum postings = leaf.reader().postings(term, PostingsEnum.FREQS);
+            int[] docs = new int[leaf.reader().maxDoc()];
+            int[] freqs = new int[docs.length];
+            int count = 0;
+            boolean large = false;
+            while (postings.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                docs[count] = postings.docID();
+                freqs[count] = postings.freq();
+                large |= freqs[count] >= BM25PlusSimilarity.TABLE_FREQS;
+                count += 1;
+            }
+            assertTrue(large);
+            float[] scores = new float[count];
+            ((BatchSimScorer) scorer).score(docs, freqs, count, scores);
+            for (int i = 0; i < count; i++) {
+                assertEquals(scores[i], scorer.score(docs[i], freqs[i]), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        this.compareBatch(new BM25PlusSimilarity());
+        this.compareBatch(new MathBM25Similarity());
+        this.compareBatch(new AdjustedBM25Similarity());
+    }
+
+    @Test
+    public void testSameAsLuceneBM25() throws Exception {
+        Term term = new Term(FIELD, "a");
+        Similarity lucene = new BM25Similarity();
+        Similarity math = new MathBM25Similarity();
+        SimWeight luceneWeight = this.weight(lucene, term);
+        SimWeight mathWeight = this.weight(math, term);
+        for (LeafReaderContext leaf : this.reader.leaves()) {
+            SimScorer expect = lucene.simScorer(luceneWeight, leaf);
+            SimScorer actual = math.simScorer(mathWeight, leaf);
+            for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                for (float freq : new float[] {1f, 3f, 40f, 2.5f}) {
+                    float score = expect.score(doc, freq);
+                    assertEquals(actual.score(doc, freq), score, 0f);
+                }
+            }
+        }
+    }
+}
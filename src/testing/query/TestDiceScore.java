@@ -0,0 +1,102 @@
+package testing.query;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.CachingTokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Test;
+
+import index.ConvertConfig;
+import index.FormulaSizes;
+import index.MathAnalyzer;
+import query.DiceScoreProvider;
+import query.TermCountPair;
+import utilities.Constants;
+
+public class TestDiceScore {
+    // a word then one formula of three tuples
+    private static final String TEXT = "word #(start)# #('v!x','!0','n')# #('v!y','!0','n')#"
+                                       + " #('n!1','+','n')# #(end)#";
+    private DirectoryReader reader;
+
+    private void index(boolean storeSizes) throws IOException{
+        ConvertConfig config = new ConvertConfig();
+        config.setBooleanAttribute(ConvertConfig.BAGS_OF_WORDS, true);
+        IndexWriter writer = new IndexWriter(new RAMDirectory(),
+                                             new IndexWriterConfig(new MathAnalyzer(config)));
+        FieldType type = new FieldType();
+        type.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        type.setTokenized(true);
+        type.setStoreTermVectors(true);
+        type.setStoreTermVectorPositions(true);
+        Document doc = new Document();
+        if (storeSizes){
+            TokenStream stream = new CachingTokenFilter(
+                writer.getAnalyzer().tokenStream(Constants.FIELD, new StringReader(TEXT)));
+            doc.add(new BinaryDocValuesField(Constants.FORMULA_SIZES, FormulaSizes.collect(stream)));
+            doc.add(new Field(Constants.FIELD, stream, type));
+        }else{
+            doc.add(new Field(Constants.FIELD, TEXT, type));
+        }
+        writer.addDocument(doc);
+        writer.close();
+        this.reader = DirectoryReader.open(writer.getDirectory());
+    }
+
+    private float score(String... tuples) throws IOException{
+        List<TermCountPair> terms = new ArrayList<TermCountPair>();
+        for (String tuple : tuples){
+            terms.add(new TermCountPair(tuple));
+        }
+        LeafReaderContext context = this.reader.leaves().get(0);
+        DiceScoreProvider provider = new DiceScoreProvider(Constants.FIELD, context, terms, null, 0, 1);
+        return provider.customScore(0, 1f, new float[0]);
+    }
+
+    @After
+    public void tearDown() throws IOException{
+        if (this.reader != null){
+            this.reader.close();
+            this.reader.directory().close();
+        }
+    }
+
+    @Test
+    public void testStoredSizes() throws IOException{
+        this.index(true);
+        // two of the three query tuples match the formula of three tuples: 2 * 2 / (3 + 3)
+        assertEquals(this.score("('v!x','!0','n')", "('v!y','!0','n')", "('v!z','!0','n')"),
+                     2f / 3f, 0f);
+        // the formula matched completely
+        assertEquals(this.score("('v!x','!0','n')", "('v!y','!0','n')", "('n!1','+','n')"),
+                     1f, 0f);
+        // the word is a formula of its own
+        assertEquals(this.score("word", "('v!z','!0','n')"), 2f / 3f, 0f);
+    }
+
+    @Test
+    public void testTermVectorSizes() throws IOException{
+        // indexes without the stored sizes count them from the term vector the same way
+        this.index(false);
+        assertEquals(this.score("('v!x','!0','n')", "('v!y','!0','n')", "('v!z','!0','n')"),
+                     2f / 3f, 0f);
+        assertEquals(this.score("('v!x','!0','n')", "('v!y','!0','n')", "('n!1','+','n')"),
+                     1f, 0f);
+    }
+}
@@ -0,0 +1,86 @@
+package testing.query;
+
+import static org.junit.Assert.*;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import query.MathDisjunctionQuery;
+import query.MathTermQuery;
+import testing.BaseTest;
+import utilities.Constants;
+
+public class TestMathDisjunctionQuery extends BaseTest {
+    private static final String FIELD = Constants.FIELD;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+
+    @Before
+    public void setUp() throws Exception {
+        // the early terms are common and the later ones are rare, in a few segments
+        String[] terms = {"a", "b", "c", "d", "e", "f", "g", "h"};
+        this.reader = this.randomIndex(7, terms, 2.5, 40, 100, 100, 100, 100, 100);
+        this.searcher = new IndexSearcher(this.reader);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.closeIndex(this.reader);
+    }
+
+    private void compare(Query query, int k) throws Exception {
+        Query pruned = MathDisjunctionQuery.create(query, k);
+        assertTrue(pruned instanceof MathDisjunctionQuery);
+        TopDocs expect = this.searcher.search(query, k);
+        TopDocs actual = this.searcher.search(pruned, k);
+        assertEquals(actual.scoreDocs.length, expect.scoreDocs.length);
+        for (int i = 0; i < expect.scoreDocs.length; i++) {
+            assertEquals(actual.scoreDocs[i].doc, expect.scoreDocs[i].doc);
+            assertEquals(actual.scoreDocs[i].score, expect.scoreDocs[i].score, 1e-5f);
+        }
+    }
+
+    @Test
+    public void testTermQueries() throws Exception {
+        BooleanQuery.Builder bq = new BooleanQuery.Builder();
+        bq.add(new TermQuery(new Term(FIELD, "a")), BooleanClause.Occur.SHOULD);
+        bq.add(new TermQuery(new Term(FIELD, "e")), BooleanClause.Occur.SHOULD);
+        bq.add(new TermQuery(new Term(FIELD, "h")), BooleanClause.Occur.SHOULD);
+        this.compare(bq.build(), 10);
+        this.compare(bq.build(), 1);
+    }
+
+    @Test
+    public void testMathTermQueries() throws Exception {
+        BooleanQuery.Builder bq = new BooleanQuery.Builder();
+        bq.add(new MathTermQuery(new Term(FIELD, "b"), 2), BooleanClause.Occur.SHOULD);
+        bq.add(new BoostQuery(new MathTermQuery(new Term(FIELD, "f"), 1), 2f),
+               BooleanClause.Occur.SHOULD);
+        bq.add(new MathTermQuery(new Term(FIELD, "g"), 1), BooleanClause.Occur.SHOULD);
+        bq.add(new MathTermQuery(new Term(FIELD, "a"), 3), BooleanClause.Occur.SHOULD);
+        this.compare(bq.build(), 5);
+        this.compare(bq.build(), 100);
+    }
+
+    @Test
+    public void testNotConverted() {
+        // a single clause or a required clause is left alone
+        BooleanQuery.Builder bq = new BooleanQuery.Builder();
+        bq.add(new TermQuery(new Term(FIELD, "a")), BooleanClause.Occur.SHOULD);
+        Query single = bq.build();
+        assertEquals(MathDisjunctionQuery.create(single, 10), single);
+        bq.add(new TermQuery(new Term(FIELD, "b")), BooleanClause.Occur.MUST);
+        Query required = bq.build();
+        assertEquals(MathDisjunctionQuery.create(required, 10), required);
+    }
+}
@@ -63,9 +63,9 @@ public class TestMathQuery {
         mq.addTerm(" #('m!()1x1','n!1','n')# #('v!t','*','b')#", Constants.FIELD);
         try {
             Query q = mq.buildQuery(Constants.FIELD, new BooleanQuery.Builder(), false, config, stats);
-            assertEquals(q.toString(), "custom(contents:('m!()1x1','n!1','n') (contents:('v!t','*','b'))^"
-                                       + MathQuery.WILDCARD_BOOST
-                                       + ")");
+            // term queries are not wrapped in a custom score query
+            assertEquals(q.toString(), "contents:('m!()1x1','n!1','n') (contents:('v!t','*','b'))^"
+                                       + MathQuery.WILDCARD_BOOST);
         } catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -74,7 +74,7 @@ public class TestMathQuery {
         config.setBooleanAttribute(ConvertConfig.BOOST_QUERIES, true);
         try {
             Query q = mq.buildQuery(Constants.FIELD, new BooleanQuery.Builder(), true, config, stats);
-            assertEquals(q.toString(), "custom((contents:('m!()1x1','n!1','n'))^1.0 (contents:('v!t','*','b'))^1.0)");
+            assertEquals(q.toString(), "(contents:('m!()1x1','n!1','n'))^1.0 (contents:('v!t','*','b'))^1.0");
         } catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -84,7 +84,7 @@ public class TestMathQuery {
         try {
             Query q = mq.buildQuery(Constants.FIELD, new BooleanQuery.Builder(), true, config, stats);
             assertEquals(q.toString(),
-                         "custom(custom((contents:('m!()1x1','n!1','n'))^1.0) custom((contents:('v!t','*','b'))^1.0))");
+                         "custom((contents:('m!()1x1','n!1','n'))^1.0) custom((contents:('v!t','*','b'))^1.0)");
         } catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -99,10 +99,21 @@ public class TestMathQuery {
         CollectionStatistics stats = new CollectionStatistics(Constants.FIELD, 0l, 0l, 0l, 0l);
         try {
             Query q = mq.buildQuery(Constants.FIELD, new BooleanQuery.Builder(), false, config, stats);
-            assertEquals(q.toString(), "custom(contents:)");
+            assertEquals(q.toString(), "contents:");
         } catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
         }
     }
+
+    @Test
+    public void testBuildRescoredQuery() throws Exception{
+        MathQuery mq = new MathQuery("test");
+        ConvertConfig config =  new ConvertConfig();
+        config.setQueryType(ConvertConfig.BM25TP_QUERY);
+        CollectionStatistics stats = new CollectionStatistics(Constants.FIELD, 0l, 0l, 0l, 0l);
+        mq.addTerm(" #('m!()1x1','n!1','n')#", Constants.FIELD);
+        Query q = mq.buildQuery(Constants.FIELD, new BooleanQuery.Builder(), true, config, stats);
+        assertEquals(q.toString(), "custom(contents:('m!()1x1','n!1','n'))");
+    }
 }
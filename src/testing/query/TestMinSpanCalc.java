@@ -9,6 +9,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import index.ConvertConfig;
 import query.MathScoreQueryProvider;
 
 public class TestMinSpanCalc {
@@ -122,4 +123,41 @@ public class TestMinSpanCalc {
         assertEquals(this.mq.minSpanCalc(this.testData(3)), 2);
     }
 
+    @Test
+    public void testMinSpanCalcArrays(){
+        // the buffers can be longer than the positions and terms not in the document are ignored
+        int[][] positions = {{1, 7, 0, 0}, {}, {2, 6, 0}, {3, 4, 5, 0}};
+        int[] lengths = {2, 0, 2, 3};
+        assertEquals(this.mq.minSpanCalc(positions, lengths), 2);
+        int[][] same = {{0, 0}, {0}};
+        int[] sameLengths = {1, 1};
+        assertEquals(this.mq.minSpanCalc(same, sameLengths), 0);
+    }
+
+    @Test
+    public void testTermWeight(){
+        List<List<Integer>> data = this.testData(1);
+        int[] positionsI = {0, 2, 4, 6, 99};
+        int[] positionsJ = {1, 4, 7};
+        assertEquals(this.mq.termWeight(data.get(0), data.get(1), 2f),
+                     this.mq.termWeight(positionsI, 4, positionsJ, 3, 2f), 0f);
+    }
+
+    @Test
+    public void testWindowTpi(){
+        // only the pair one apart is within the window
+        int[] positionsI = {0, 100};
+        int[] positionsJ = {1, 150};
+        assertEquals(this.mq.windowTpi(positionsI, 2, positionsJ, 2), 0.25f, 0f);
+        // every pair is within the window so the exact scores are kept
+        ConvertConfig config = new ConvertConfig();
+        config.setExactProximity(true);
+        MathScoreQueryProvider exact = new MathScoreQueryProvider(null, null, null, config, 0, 0);
+        int[] closeI = {0, 2, 4, 6};
+        int[] closeJ = {1, 4, 7};
+        assertEquals(this.mq.termWeight(closeI, 4, closeJ, 3, 2f),
+                     exact.termWeight(closeI, 4, closeJ, 3, 2f), 0f);
+        assertTrue(exact.termWeight(positionsI, 2, positionsJ, 2, 2f)
+                   > this.mq.termWeight(positionsI, 2, positionsJ, 2, 2f));
+    }
 }
@@ -0,0 +1,90 @@
+package testing.search;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import query.MathDisjunctionQuery;
+import search.BalancedIndexSearcher;
+import testing.BaseTest;
+import utilities.Constants;
+
+public class TestBalancedIndexSearcher extends BaseTest {
+    private static final String FIELD = Constants.FIELD;
+    private DirectoryReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        String[] terms = {"a", "b", "c", "d", "e", "f"};
+        // one large segment followed by smaller ones like a merged index
+        this.reader = this.randomIndex(11, terms, 0, 20, 400, 50, 120, 30, 200, 10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.closeIndex(this.reader);
+    }
+
+    @Test
+    public void testSlices() {
+        List<LeafReaderContext> leaves = this.reader.leaves();
+        assertEquals(leaves.size(), 6);
+        for (int count = 1; count <= 8; count++) {
+            List<List<LeafReaderContext>> slices = BalancedIndexSearcher.partition(leaves, count);
+            assertEquals(slices.size(), Math.min(count, leaves.size()));
+            // every segment is in a slice and in order
+            int ord = 0;
+            for (List<LeafReaderContext> slice : slices) {
+                assertTrue(slice.size() > 0);
+                for (LeafReaderContext leaf : slice) {
+                    assertEquals(leaf.ord, ord);
+                    ord += 1;
+                }
+            }
+            assertEquals(ord, leaves.size());
+        }
+        // the large segment is a slice on its own
+        List<List<LeafReaderContext>> slices = BalancedIndexSearcher.partition(leaves, 2);
+        assertEquals(slices.get(0).size(), 1);
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.add(new TermQuery(new Term(FIELD, "a")), BooleanClause.Occur.SHOULD);
+        builder.add(new TermQuery(new Term(FIELD, "d")), BooleanClause.Occur.SHOULD);
+        builder.add(new TermQuery(new Term(FIELD, "f")), BooleanClause.Occur.SHOULD);
+        Query query = builder.build();
+        IndexSearcher serial = new IndexSearcher(this.reader);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            IndexSearcher parallel = new BalancedIndexSearcher(this.reader, executor, 3);
+            for (Query search : new Query[] {query, MathDisjunctionQuery.create(query, 20)}) {
+                TopDocs expect = serial.search(query, 20);
+                TopDocs actual = parallel.search(search, 20);
+                assertEquals(actual.scoreDocs.length, expect.scoreDocs.length);
+                for (int i = 0; i < expect.scoreDocs.length; i++) {
+                    assertEquals(actual.scoreDocs[i].doc, expect.scoreDocs[i].doc);
+                    assertEquals(actual.scoreDocs[i].score, expect.scoreDocs[i].score, 1e-5f);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package testing.search;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import search.BalancedIndexSearcher;
+import search.DeadlineCollectorManager;
+import testing.BaseTest;
+import utilities.Constants;
+
+public class TestDeadlineCollectorManager extends BaseTest {
+    private static final String FIELD = Constants.FIELD;
+    private DirectoryReader reader;
+    private Query query;
+
+    @Before
+    public void setUp() throws Exception {
+        String[] terms = {"a", "b", "c", "d"};
+        this.reader = this.randomIndex(7, terms, 0, 10, 500, 500, 500, 500);
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.add(new TermQuery(new Term(FIELD, "a")), BooleanClause.Occur.SHOULD);
+        builder.add(new TermQuery(new Term(FIELD, "c")), BooleanClause.Occur.SHOULD);
+        this.query = builder.build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.closeIndex(this.reader);
+    }
+
+    @Test
+    public void testBeforeDeadline() throws Exception {
+        IndexSearcher serial = new IndexSearcher(this.reader);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            IndexSearcher parallel = new BalancedIndexSearcher(this.reader, executor, 2);
+            TopDocs expect = serial.search(this.query, 20);
+            for (IndexSearcher searcher : new IndexSearcher[] {serial, parallel}) {
+                DeadlineCollectorManager manager =
+                    new DeadlineCollectorManager(20, System.nanoTime() + 60000000000L);
+                TopDocs actual = searcher.search(this.query, manager);
+                assertFalse(manager.isTimedOut());
+                assertEquals(actual.totalHits, expect.totalHits);
+                assertEquals(actual.scoreDocs.length, expect.scoreDocs.length);
+                for (int i = 0; i < expect.scoreDocs.length; i++) {
+                    assertEquals(actual.scoreDocs[i].doc, expect.scoreDocs[i].doc);
+                    assertEquals(actual.scoreDocs[i].score, expect.scoreDocs[i].score, 0f);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testAfterDeadline() throws Exception {
+        IndexSearcher searcher = new IndexSearcher(this.reader);
+        DeadlineCollectorManager manager = new DeadlineCollectorManager(20, System.nanoTime() - 1);
+        // the search stops by itself rather than throwing
+        TopDocs actual = searcher.search(this.query, manager);
+        assertTrue(manager.isTimedOut());
+        assertEquals(actual.scoreDocs.length, 0);
+    }
+}
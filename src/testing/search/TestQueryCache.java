@@ -0,0 +1,86 @@
+package testing.search;
+
+import static org.junit.Assert.*;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.junit.Test;
+
+import search.QueryCache;
+
+public class TestQueryCache {
+    private final Object reader = new Object();
+
+    private QueryCache.Result result(int doc) {
+        ScoreDoc[] hits = {new ScoreDoc(doc, 1f)};
+        return new QueryCache.Result(new TopDocs(1, hits, 1f), 10, null);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        QueryCache cache = new QueryCache(2, QueryCache.Policy.LRU);
+        assertNull(cache.get(this.reader, "a"));
+        QueryCache.Result a = this.result(1);
+        cache.put(this.reader, "a", a);
+        assertSame(cache.get(this.reader, "a"), a);
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 1);
+        assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void testLru() {
+        QueryCache cache = new QueryCache(2, QueryCache.Policy.LRU);
+        cache.put(this.reader, "a", this.result(1));
+        cache.put(this.reader, "b", this.result(2));
+        cache.get(this.reader, "a");
+        cache.get(this.reader, "a");
+        cache.get(this.reader, "b");
+        // a was used less recently than b
+        cache.put(this.reader, "c", this.result(3));
+        assertNull(cache.get(this.reader, "a"));
+        assertNotNull(cache.get(this.reader, "b"));
+        assertNotNull(cache.get(this.reader, "c"));
+        assertEquals(cache.getEvictions(), 1);
+    }
+
+    @Test
+    public void testLfu() {
+        QueryCache cache = new QueryCache(2, QueryCache.Policy.LFU);
+        cache.put(this.reader, "a", this.result(1));
+        cache.put(this.reader, "b", this.result(2));
+        cache.get(this.reader, "a");
+        cache.get(this.reader, "a");
+        cache.get(this.reader, "b");
+        // b was used less often than a
+        cache.put(this.reader, "c", this.result(3));
+        assertNotNull(cache.get(this.reader, "a"));
+        assertNull(cache.get(this.reader, "b"));
+        assertNotNull(cache.get(this.reader, "c"));
+    }
+
+    @Test
+    public void testNewReader() {
+        QueryCache cache = new QueryCache(2, QueryCache.Policy.LRU);
+        cache.put(this.reader, "a", this.result(1));
+        // a reopened index has a different reader
+        assertNull(cache.get(new Object(), "a"));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testCopies() {
+        QueryCache cache = new QueryCache(2, QueryCache.Policy.LRU);
+        TopDocs results = new TopDocs(1, new ScoreDoc[] {new ScoreDoc(1, 2f)}, 2f);
+        cache.put(this.reader, "a", new QueryCache.Result(results, 10, null));
+        // changing the documents searched or returned leaves the cached ones alone
+        results.scoreDocs[0].score = 0f;
+        TopDocs hit = cache.get(this.reader, "a").getResults();
+        assertEquals(hit.scoreDocs[0].score, 2f, 0f);
+        hit.scoreDocs[0].doc = 5;
+        hit.scoreDocs[0] = null;
+        TopDocs again = cache.get(this.reader, "a").getResults();
+        assertNotSame(again.scoreDocs, hit.scoreDocs);
+        assertEquals(again.scoreDocs[0].doc, 1);
+    }
+}
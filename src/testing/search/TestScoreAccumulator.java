@@ -0,0 +1,62 @@
+package testing.search;
+
+import static org.junit.Assert.*;
+
+import org.apache.lucene.search.TopDocs;
+import org.junit.Test;
+import search.ScoreAccumulator;
+
+public class TestScoreAccumulator {
+
+    @Test
+    public void testAdd() {
+        ScoreAccumulator scores = new ScoreAccumulator(1);
+        scores.add(5, 1.5d);
+        scores.add(1000, 2d);
+        scores.add(5, 0.5d);
+        assertEquals(scores.size(), 2);
+        assertEquals(scores.get(5), 2d, 0d);
+        assertEquals(scores.get(1000), 2d, 0d);
+        assertEquals(scores.get(7), 0d, 0d);
+    }
+
+    @Test
+    public void testGrow() {
+        ScoreAccumulator scores = new ScoreAccumulator(4);
+        for (int doc = 0; doc < 10000; doc++) {
+            scores.add(doc, doc);
+            scores.add(doc, 1d);
+        }
+        assertEquals(scores.size(), 10000);
+        for (int doc = 0; doc < 10000; doc++) {
+            assertEquals(scores.get(doc), doc + 1d, 0d);
+        }
+    }
+
+    @Test
+    public void testTopDocs() {
+        ScoreAccumulator scores = new ScoreAccumulator(10);
+        scores.add(3, 1d);
+        scores.add(1, 4d);
+        scores.add(2, 2d);
+        scores.add(0, 2d);
+        scores.add(4, 0.5d);
+        TopDocs top = scores.topDocs(3);
+        assertEquals(top.totalHits, 5);
+        assertEquals(top.scoreDocs.length, 3);
+        assertEquals(top.scoreDocs[0].doc, 1);
+        // ties go to the smaller document
+        assertEquals(top.scoreDocs[1].doc, 0);
+        assertEquals(top.scoreDocs[2].doc, 2);
+        assertEquals(top.getMaxScore(), 4f, 0f);
+        assertEquals(scores.topDocs(10).scoreDocs.length, 5);
+    }
+
+    @Test
+    public void testEmpty() {
+        ScoreAccumulator scores = new ScoreAccumulator(0);
+        TopDocs top = scores.topDocs(10);
+        assertEquals(top.totalHits, 0);
+        assertEquals(top.scoreDocs.length, 0);
+    }
+}
@@ -22,6 +22,8 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
@@ -45,6 +47,7 @@ import index.IndexFiles;
 import query.MathQuery;
 import query.ParseQueries;
 import search.Judgments;
+import search.QueryCache;
 import search.Search;
 import search.SearchResult;
 import testing.BaseTest;
@@ -228,6 +231,90 @@ public class TestSearch extends BaseTest{
         }
     }
 
+    @Test
+    public void testTompaSearchExecutor() throws Exception {
+        ParseQueries queryLoader = new ParseQueries(queries.toFile(), searcher.getConfig());
+        ArrayList<MathQuery> mathQueries = queryLoader.getQueries();
+        queryLoader.deleteFile();
+        MathQuery query = mathQueries.get(0);
+        TopDocs expect = this.searcher.tompaSearch(query, 10).getResults();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            this.searcher.setExecutor(executor);
+            this.searcher.setTimeout(60000);
+            TopDocs actual = this.searcher.tompaSearch(query, 10).getResults();
+            assertEquals(actual.scoreDocs.length, expect.scoreDocs.length);
+            for (int i = 0; i < expect.scoreDocs.length; i++) {
+                assertEquals(actual.scoreDocs[i].doc, expect.scoreDocs[i].doc);
+                assertEquals(actual.scoreDocs[i].score, expect.scoreDocs[i].score, 0f);
+            }
+        } finally {
+            this.searcher.setExecutor(null);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSearchQueriesParallel() throws Exception {
+        ParseQueries queryLoader = new ParseQueries(queries.toFile(), searcher.getConfig());
+        ArrayList<MathQuery> mathQueries = queryLoader.getQueries();
+        queryLoader.deleteFile();
+        // the same queries a few times to have more than one running at once
+        ArrayList<MathQuery> batch = new ArrayList<MathQuery>();
+        for (int i = 0; i < 4; i++) {
+            batch.addAll(mathQueries);
+        }
+        ArrayList<SearchResult> expect = this.searcher.searchQueries(batch, 10, 1);
+        final ArrayList<Integer> order = new ArrayList<Integer>();
+        ArrayList<SearchResult> actual = this.searcher.searchQueries(batch, 10, 3,
+            new Search.ResultListener() {
+                @Override
+                public void result(int index, SearchResult result) {
+                    order.add(index);
+                }
+            });
+        assertEquals(actual.size(), batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(order.get(i).intValue(), i);
+            assertEquals(actual.get(i).getMathQuery(), batch.get(i));
+            ScoreDoc[] expectHits = expect.get(i).getResults().scoreDocs;
+            ScoreDoc[] actualHits = actual.get(i).getResults().scoreDocs;
+            assertEquals(actualHits.length, expectHits.length);
+            for (int j = 0; j < expectHits.length; j++) {
+                assertEquals(actualHits[j].doc, expectHits[j].doc);
+            }
+        }
+    }
+
+    @Test
+    public void testSearchQueryCache() throws Exception {
+        ParseQueries queryLoader = new ParseQueries(queries.toFile(), searcher.getConfig());
+        ArrayList<MathQuery> mathQueries = queryLoader.getQueries();
+        queryLoader.deleteFile();
+        MathQuery query = mathQueries.get(0);
+        SearchResult expect = this.searcher.searchQuery(query, 10);
+        QueryCache cache = new QueryCache(10, QueryCache.Policy.LRU);
+        this.searcher.setCache(cache);
+        try {
+            this.searcher.searchQuery(query, 10);
+            SearchResult actual = this.searcher.searchQuery(query, 10);
+            assertEquals(cache.getMisses(), 1);
+            assertEquals(cache.getHits(), 1);
+            assertEquals(actual.getMathQuery(), query);
+            ScoreDoc[] expectHits = expect.getResults().scoreDocs;
+            ScoreDoc[] actualHits = actual.getResults().scoreDocs;
+            assertEquals(actualHits.length, expectHits.length);
+            for (int i = 0; i < expectHits.length; i++) {
+                assertEquals(actualHits[i].doc, expectHits[i].doc);
+            }
+            // a different k is a different search
+            this.searcher.searchQuery(query, 5);
+            assertEquals(cache.getMisses(), 2);
+        } finally {
+            this.searcher.setCache(null);
+        }
+    }
+
     @Test
     public void testSearchQueryFiles() {
         try {
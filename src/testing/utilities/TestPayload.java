@@ -18,6 +18,7 @@ package testing.utilities;
 import static org.junit.Assert.*;
 
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 import org.junit.Test;
 
 import utilities.Payload;
@@ -40,4 +41,25 @@ public class TestPayload {
         
     }
 
+    @Test
+    public void testBinary() throws PayloadException {
+        BytesRefBuilder bytes = new BytesRefBuilder();
+        Payload.encode(bytes, new BytesRef("nna"), 300);
+        assertTrue(Payload.isBinary(bytes.get()));
+        Payload pl = new Payload(bytes.get());
+        assertEquals(pl.getFormulaSize(), 300);
+        assertEquals(pl.getLocation(), "nna");
+        assertTrue(Payload.hasLocation(bytes.get(), new BytesRef("nna")));
+        assertFalse(Payload.hasLocation(bytes.get(), new BytesRef("nn")));
+    }
+
+    @Test
+    public void testHasLocationText() {
+        assertFalse(Payload.isBinary(new BytesRef("nna:5")));
+        assertTrue(Payload.hasLocation(new BytesRef("nna:5"), new BytesRef("nna")));
+        assertTrue(Payload.hasLocation(new BytesRef("nna:5:"), new BytesRef("nna")));
+        assertFalse(Payload.hasLocation(new BytesRef("nna:5"), new BytesRef("nn")));
+        assertFalse(Payload.hasLocation(new BytesRef("nna:5:1"), new BytesRef("nna")));
+        assertFalse(Payload.hasLocation(new BytesRef("nna"), new BytesRef("nna")));
+    }
 }
@@ -30,6 +30,7 @@ public class Constants {
   public static final String TEXTFIELD = "text-contents";
   public static final String DOCUMENT_LENGTH = "documentLength";
   public static final String FORMULA_COUNT = "numberOfFormulas";
+  public static final String FORMULA_SIZES = "formulaSizes";
   public static final String WORD_COUNT = "numberOfWords";
   public static final String MAX_FORMULA_SIZE = "maxFormulaSize";
   public static final String AVERAGE_FORMULA_SIZE = "averageFormulaSize";
@@ -277,9 +277,9 @@ public class Functions {
    * @param valueK1 - the value of the K1
    * @param valueB - the value of B
    * @param docScore - the score of the document
-   * @return Double the formula score
+   * @return double the formula score
    */
-  public static Double scoreFormula(
+  public static double scoreFormula(
       double docLength,
       double totalDoc,
       double avgDocLength,
@@ -291,23 +291,6 @@ public class Functions {
     final double tf =
         ((docScore * (valueK1 + 1))
             / (docScore + valueK1 * (1 - valueB + valueB * (docLength / avgDocLength))));
-    System.out.println(
-        "r(rank="
-            + rank
-            + ", docLength="
-            + docLength
-            + ", totalDoc="
-            + totalDoc
-            + ", avgDL="
-            + avgDocLength
-            + ", docScore="
-            + docScore
-            + ") "
-            + idf
-            + " X "
-            + tf
-            + " = "
-            + (idf * tf));
     return (idf * tf);
   }
 }
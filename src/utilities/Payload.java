@@ -17,14 +17,22 @@
 package utilities;
 
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 
 /**
  * A class that deals with the payload indexed and search with Lucene.
  *
+ * <p>Payloads are indexed in a binary form: a zero byte, the formula size as a variable length int
+ * and then the UTF-8 bytes of the location. The zero byte tells them apart from the text form
+ * <code>location:size</code> of older indexes. The static methods read either form straight from
+ * the payload bytes without allocating.
+ *
  * @author Dallas Fraser
  * @since 2017-11-09
  */
 public class Payload {
+  private static final byte BINARY = 0;
+  private static final byte SEPARATOR = (byte) Constants.PAYLOAD_SEPARATOR.charAt(0);
   private final int formulaSize;
   private final String location;
 
@@ -46,12 +54,126 @@ public class Payload {
    * @throws PayloadException is raised when the payload has a different number of parts
    */
   public Payload(BytesRef bytes) throws PayloadException {
-    final String[] parts = bytes.utf8ToString().split(Constants.PAYLOAD_SEPARATOR);
-    if (parts.length != 2) {
-      throw new PayloadException("Unrecognized Payload");
+    if (Payload.isBinary(bytes)) {
+      final int start = Payload.locationStart(bytes);
+      this.formulaSize = Payload.readVInt(bytes, bytes.offset + 1);
+      this.location =
+          new BytesRef(bytes.bytes, start, bytes.offset + bytes.length - start).utf8ToString();
+    } else {
+      final String[] parts = bytes.utf8ToString().split(Constants.PAYLOAD_SEPARATOR);
+      if (parts.length != 2) {
+        throw new PayloadException("Unrecognized Payload");
+      }
+      this.formulaSize = Integer.parseInt(parts[1]);
+      this.location = parts[0];
+    }
+  }
+
+  /**
+   * Encodes a payload in its binary form.
+   *
+   * @param out the bytes to write the payload to, cleared first
+   * @param location the UTF-8 bytes of the location of the math tuple in the formula
+   * @param formulaSize the size of the formula
+   */
+  public static void encode(BytesRefBuilder out, BytesRef location, int formulaSize) {
+    out.clear();
+    out.append(Payload.BINARY);
+    int value = formulaSize;
+    while ((value & ~0x7F) != 0) {
+      out.append((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.append((byte) value);
+    out.append(location);
+  }
+
+  /**
+   * Returns whether the payload is in the binary form.
+   *
+   * @param bytes the payload
+   * @return boolean True if the payload is binary
+   */
+  public static boolean isBinary(BytesRef bytes) {
+    return bytes.length > 0 && bytes.bytes[bytes.offset] == Payload.BINARY;
+  }
+
+  /**
+   * Returns whether the payload has the given location.
+   *
+   * @param bytes the payload in either form
+   * @param location the UTF-8 bytes of the location
+   * @return boolean True if the location of the payload is the same
+   */
+  public static boolean hasLocation(BytesRef bytes, BytesRef location) {
+    final int end = bytes.offset + bytes.length;
+    int start;
+    int stop;
+    if (Payload.isBinary(bytes)) {
+      start = Payload.locationStart(bytes);
+      stop = end;
+    } else {
+      // like splitting the text form, trailing separators are ignored and there must be two parts
+      start = bytes.offset;
+      int last = end;
+      while (last > start && bytes.bytes[last - 1] == Payload.SEPARATOR) {
+        last--;
+      }
+      stop = -1;
+      for (int i = start; i < last; i++) {
+        if (bytes.bytes[i] == Payload.SEPARATOR) {
+          if (stop >= 0) {
+            return false;
+          }
+          stop = i;
+        }
+      }
+      if (stop < 0) {
+        return false;
+      }
+    }
+    if (stop - start != location.length) {
+      return false;
+    }
+    for (int i = 0; i < location.length; i++) {
+      if (bytes.bytes[start + i] != location.bytes[location.offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the index of the first location byte of a binary payload.
+   *
+   * @param bytes the binary payload
+   * @return int the index of the location in the bytes
+   */
+  private static int locationStart(BytesRef bytes) {
+    int index = bytes.offset + 1;
+    while ((bytes.bytes[index] & 0x80) != 0) {
+      index++;
     }
-    this.formulaSize = Integer.parseInt(parts[1]);
-    this.location = parts[0];
+    return index + 1;
+  }
+
+  /**
+   * Reads a variable length int.
+   *
+   * @param bytes the bytes holding the int
+   * @param index the index of the first byte
+   * @return int the value
+   */
+  private static int readVInt(BytesRef bytes, int index) {
+    int value = 0;
+    int shift = 0;
+    byte current;
+    do {
+      current = bytes.bytes[index++];
+      value |= (current & 0x7F) << shift;
+      shift += 7;
+    } while ((current & 0x80) != 0);
+    return value;
   }
 
   /**